@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.poesys.bs.dto.BsTestNatural;
+
+
+/**
+ * Time to insert and then update a list of TestNatural objects through
+ * process() for a sweep of JDBC batch sizes, plus the adaptive batch policy
+ * (batch size 0 in the sweep). Run the benchmark against a database on the
+ * local host so the numbers show the batching overhead rather than the
+ * network; the benchmark uses the Poesys test subsystem
+ * (com.poesys.db.poesystest.mysql), so it needs the same database setup as the
+ * delegate unit tests.
+ *
+ * @author Robert J. Muller
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchSizeBenchmark {
+  /** The column value for the inserted rows */
+  private static final BigDecimal COL1 = new BigDecimal("1.234");
+  /** The column value for the updated rows */
+  private static final BigDecimal COL1_UPDATED = new BigDecimal("4.321");
+  /** Generator for unique keys */
+  private static final AtomicLong keys = new AtomicLong();
+
+  /** The JDBC batch size, 0 for the adaptive policy */
+  @Param({ "0", "1", "10", "50", "100", "500", "1000", "5000" })
+  public int batchSize;
+
+  /** The number of objects to process in one transaction */
+  @Param({ "10000" })
+  public int rows;
+
+  /** The delegate under test */
+  private TestNaturalDelegate delegate;
+
+  /**
+   * Create the delegate with the batch policy for the benchmark parameter.
+   */
+  @Setup(Level.Trial)
+  public void setUpTrial() {
+    delegate = new TestNaturalDelegate();
+    if (batchSize > 0) {
+      delegate.setBatchPolicy(new BatchPolicy(batchSize));
+    } else {
+      delegate.setBatchPolicy(new BatchPolicy(BatchPolicy.DEFAULT_BATCH_SIZE,
+                                              null,
+                                              0L,
+                                              0,
+                                              true,
+                                              BatchPolicy.DEFAULT_TARGET_MILLIS));
+    }
+  }
+
+  /**
+   * Clear the table so the iterations all start with the same table size.
+   */
+  @Setup(Level.Iteration)
+  public void setUpIteration() {
+    delegate.truncateTable("TestNatural");
+  }
+
+  /**
+   * Insert a list of new objects in one transaction, then update them all in a
+   * second transaction.
+   *
+   * @return the processed list
+   */
+  @Benchmark
+  public List<BsTestNatural> insertThenUpdate() {
+    List<BsTestNatural> list = new ArrayList<BsTestNatural>(rows);
+    for (int i = 0; i < rows; i++) {
+      list.add(new BsTestNatural("batch",
+                                 Long.toString(keys.incrementAndGet()),
+                                 COL1));
+    }
+    delegate.process(list);
+    for (BsTestNatural object : list) {
+      object.setCol1(COL1_UPDATED);
+    }
+    delegate.process(list);
+    return list;
+  }
+}
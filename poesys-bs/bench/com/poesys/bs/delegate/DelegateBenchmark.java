@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.poesys.bs.dto.BsTestNatural;
+import com.poesys.db.dto.IDbDto;
+import com.poesys.db.pk.NaturalPrimaryKey;
+
+
+/**
+ * <p>
+ * Throughput and latency distribution of the data delegate's hot paths,
+ * process(), getObject(), getAllObjects(), and convertDtoList(), for the
+ * TestNatural delegate running against a MemoryDaoManager. With no database,
+ * the numbers show the delegate's own overhead: the transaction thread
+ * handoff, status partitioning, DTO conversion, wrapping, and the caches, so
+ * they are reproducible on a laptop. The process() benchmark updates up to 100
+ * objects in one transaction per operation.
+ * </p>
+ * <p>
+ * The benchmark needs the memory subsystem in the database properties file
+ * (see MemoryContextFactory). Run it with the JMH GC profiler for the
+ * allocation rate and the allocation per operation:
+ * </p>
+ *
+ * <pre>
+ * ant bench -Dbench.args="DelegateBenchmark -prof gc"
+ * </pre>
+ *
+ * @author Robert J. Muller
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DelegateBenchmark {
+  /** The column value for the inserted rows */
+  private static final BigDecimal COL1 = new BigDecimal("1.234");
+  /** The alternate column value for the updated rows */
+  private static final BigDecimal COL1_UPDATED = new BigDecimal("4.321");
+  /** The maximum number of objects process() updates in one transaction */
+  private static final int BATCH = 100;
+
+  /** The number of stored objects */
+  @Param({ "100", "10000" })
+  public int rows;
+
+  /** The delegate under test */
+  private TestNaturalDelegate delegate;
+  /** The stored objects */
+  private List<BsTestNatural> objects;
+  /** The keys of the stored objects */
+  private List<NaturalPrimaryKey> keys;
+  /** The objects that process() updates */
+  private List<BsTestNatural> updates;
+  /** The next key for getObject() */
+  private int next = 0;
+  /** Toggles the updated column value so every update changes the value */
+  private boolean toggle = false;
+
+  /**
+   * Create the delegate against a new in-memory manager and insert the
+   * objects.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    MemoryContextFactory.install();
+    delegate =
+      new TestNaturalDelegate(MemoryContextFactory.SUBSYSTEM,
+                              new MemoryDaoManager());
+    objects = new ArrayList<BsTestNatural>(rows);
+    keys = new ArrayList<NaturalPrimaryKey>(rows);
+    for (int i = 0; i < rows; i++) {
+      BsTestNatural object =
+        new BsTestNatural("bench", String.format("%08d", i), COL1);
+      objects.add(object);
+      keys.add((NaturalPrimaryKey)object.getPrimaryKey());
+    }
+    delegate.process(objects);
+    updates =
+      new ArrayList<BsTestNatural>(objects.subList(0, Math.min(BATCH, rows)));
+  }
+
+  /**
+   * Query one object by key, cycling through the keys.
+   *
+   * @return the object
+   */
+  @Benchmark
+  public BsTestNatural getObject() {
+    if (next == rows) {
+      next = 0;
+    }
+    return delegate.getObject(keys.get(next++));
+  }
+
+  /**
+   * Query and wrap all the objects.
+   *
+   * @return the objects
+   */
+  @Benchmark
+  public List<BsTestNatural> getAllObjects() {
+    return delegate.getAllObjects(rows);
+  }
+
+  /**
+   * Extract the data-access DTOs of all the objects.
+   *
+   * @return the data-access DTOs
+   */
+  @Benchmark
+  public Collection<IDbDto> convertDtoList() {
+    return delegate.convertDtoList(objects);
+  }
+
+  /**
+   * Change the objects in the update list and update them in one
+   * transaction.
+   *
+   * @return the updated objects
+   */
+  @Benchmark
+  public List<BsTestNatural> process() {
+    toggle = !toggle;
+    BigDecimal value = toggle ? COL1_UPDATED : COL1;
+    for (BsTestNatural object : updates) {
+      object.setCol1(value);
+    }
+    delegate.process(updates);
+    return updates;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.poesys.bs.dto.BsTestNatural;
+import com.poesys.db.dao.PoesysTrackingThread;
+import com.poesys.db.dto.IDbDto;
+import com.poesys.db.dto.TestNatural;
+
+
+/**
+ * Time to register a batch of mostly EXISTING TestNatural DTOs with a new
+ * tracking thread, comparing the per-DTO getDto() and addDto() calls with the
+ * one-pass ExistingDtoTracker. Each tracking thread opens a connection to the
+ * Poesys test database (com.poesys.db.poesystest.mysql), so the benchmark
+ * needs the same database setup as the delegate unit tests, but it runs no
+ * SQL.
+ *
+ * @author Robert J. Muller
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExistingDtoTrackerBenchmark {
+  /** The Poesys test subsystem */
+  private static final String SUBSYSTEM = "com.poesys.db.poesystest.mysql";
+  /** The column value for the objects */
+  private static final BigDecimal COL1 = new BigDecimal("1.234");
+
+  /** Number of DTOs in the batch */
+  @Param({ "10000" })
+  public int objects;
+
+  /** Percentage of the DTOs that are CHANGED rather than EXISTING */
+  @Param({ "0", "5" })
+  public int changedPercent;
+
+  /** The batch of DTOs */
+  private List<TestNatural> dtos;
+
+  /** The tracking thread for the next invocation */
+  private PoesysTrackingThread thread;
+
+  /**
+   * Create the batch of DTOs.
+   */
+  @Setup(Level.Trial)
+  public void createObjects() {
+    dtos = new ArrayList<TestNatural>(objects);
+    for (int i = 0; i < objects; i++) {
+      TestNatural dto =
+        new BsTestNatural("bench", Integer.toString(i), COL1).toDto();
+      dto.setExisting();
+      if (i % 100 < changedPercent) {
+        dto.setChanged();
+      }
+      dtos.add(dto);
+    }
+  }
+
+  /**
+   * Create a new tracking thread, which tracks no DTOs.
+   */
+  @Setup(Level.Invocation)
+  public void createThread() {
+    thread = new PoesysTrackingThread((Runnable)null, SUBSYSTEM);
+  }
+
+  /**
+   * Close the tracking thread's connection.
+   */
+  @TearDown(Level.Invocation)
+  public void closeThread() {
+    thread.closeConnection();
+  }
+
+  /**
+   * Register the EXISTING DTOs one at a time, checking each with getDto().
+   *
+   * @return the tracking thread, so JMH does not eliminate the work
+   */
+  @Benchmark
+  public PoesysTrackingThread perDto() {
+    for (TestNatural dto : dtos) {
+      if (dto.getStatus() == IDbDto.Status.EXISTING
+          && thread.getDto(dto.getPrimaryKey()) == null) {
+        thread.addDto(dto);
+      }
+    }
+    return thread;
+  }
+
+  /**
+   * Register the EXISTING DTOs in one pass.
+   *
+   * @return the number of registered DTOs
+   */
+  @Benchmark
+  public int bulk() {
+    return ExistingDtoTracker.track(thread, dtos, true);
+  }
+}
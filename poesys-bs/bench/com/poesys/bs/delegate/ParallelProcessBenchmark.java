@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.poesys.bs.dto.BsTestNatural;
+
+
+/**
+ * Time to process() a large list of new objects, comparing the serial write
+ * (one partition) with parallel partitions that commit together. The benchmark
+ * inserts TestNatural rows into the Poesys test database
+ * (com.poesys.db.poesystest.mysql), so it needs the same database setup as the
+ * delegate unit tests. The test schema has no nested aggregate, so the gain
+ * here comes from the top-level inserts alone; an aggregate with nested
+ * objects gains more, because each partition also writes its objects' nested
+ * objects.
+ *
+ * @author Robert J. Muller
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelProcessBenchmark {
+  /** The Poesys test subsystem */
+  private static final String SUBSYSTEM = "com.poesys.db.poesystest.mysql";
+  /** The column value for the inserted rows */
+  private static final BigDecimal COL1 = new BigDecimal("1.234");
+  /** Generator for unique keys */
+  private static final AtomicLong keys = new AtomicLong();
+
+  /** Number of partitions, 1 for the serial write */
+  @Param({ "1", "2", "4", "8" })
+  public int partitions;
+
+  /** Number of objects per process() call */
+  @Param({ "10000" })
+  public int objects;
+
+  /** The delegate under test */
+  private TestNaturalDelegate delegate;
+
+  /** The list of new objects for the next invocation */
+  private List<BsTestNatural> list;
+
+  /**
+   * Install an unbounded executor, create the delegate, and clear the table.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    TransactionExecutor.setInstance(new TransactionExecutor(SUBSYSTEM, 0, 0L));
+    delegate = new TestNaturalDelegate();
+    delegate.setParallelism(partitions, 1);
+    delegate.truncateTable("TestNatural");
+  }
+
+  /**
+   * Create the list of new objects for the next invocation.
+   */
+  @Setup(Level.Invocation)
+  public void createObjects() {
+    list = new ArrayList<BsTestNatural>(objects);
+    for (int i = 0; i < objects; i++) {
+      long key = keys.incrementAndGet();
+      list.add(new BsTestNatural("bench", Long.toString(key), COL1));
+    }
+  }
+
+  /**
+   * Insert the list of new objects in one process() call.
+   */
+  @Benchmark
+  public void processList() {
+    delegate.process(list);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.poesys.bs.dto.BsTestNatural;
+
+
+/**
+ * Throughput of single-object process() calls from many concurrent callers,
+ * comparing the unbounded thread-per-transaction path (maxTransactions 0) with
+ * the bounded transaction executor. The benchmark inserts TestNatural rows into
+ * the Poesys test database (com.poesys.db.poesystest.mysql), so it needs the
+ * same database setup as the delegate unit tests.
+ *
+ * @author Robert J. Muller
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(32)
+public class TransactionExecutorBenchmark {
+  /** The Poesys test subsystem */
+  private static final String SUBSYSTEM = "com.poesys.db.poesystest.mysql";
+  /** The column value for the inserted rows */
+  private static final BigDecimal COL1 = new BigDecimal("1.234");
+  /** Generator for unique keys */
+  private static final AtomicLong keys = new AtomicLong();
+
+  /**
+   * The shared executor configuration for all the benchmark threads
+   */
+  @State(Scope.Benchmark)
+  public static class Executor {
+    /** Maximum concurrent transactions, 0 for thread-per-call without bound */
+    @Param({ "0", "8", "32" })
+    public int maxTransactions;
+
+    /**
+     * Install the executor for the benchmark parameter and clear the table.
+     */
+    @Setup
+    public void setUp() {
+      TransactionExecutor.setInstance(new TransactionExecutor(SUBSYSTEM,
+                                                              maxTransactions,
+                                                              0L));
+      new TestNaturalDelegate().truncateTable("TestNatural");
+    }
+  }
+
+  /**
+   * A delegate per benchmark thread, built after installing the executor
+   */
+  @State(Scope.Thread)
+  public static class Delegate {
+    /** The delegate under test */
+    TestNaturalDelegate delegate;
+
+    /**
+     * Create the delegate with the installed executor.
+     *
+     * @param executor the executor state, which must be set up first
+     */
+    @Setup
+    public void setUp(Executor executor) {
+      delegate = new TestNaturalDelegate();
+    }
+  }
+
+  /**
+   * Insert one new object in its own transaction.
+   *
+   * @param state the delegate for the benchmark thread
+   */
+  @Benchmark
+  public void insertOne(Delegate state) {
+    long key = keys.incrementAndGet();
+    state.delegate.insert(new BsTestNatural("bench", Long.toString(key), COL1));
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.dto;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * <p>
+ * Time and allocation to convert a list of DTOs with the list and collection
+ * builders, compared with the collections the builders and the delegate's
+ * convertDtoList() method used to build: a CopyOnWriteArrayList filled one
+ * element at a time (the old convertDtoList) and an unsized ArrayList copied
+ * into a CopyOnWriteArrayList (the old builders). The conversion itself is an
+ * identity, so the numbers show the collection overhead alone.
+ * </p>
+ * <p>
+ * Divide the score by the size parameter for the time per element. Run with
+ * the JMH GC profiler for the allocation per operation:
+ * </p>
+ *
+ * <pre>
+ * ant bench -Dbench.args="BuilderBenchmark -prof gc"
+ * </pre>
+ *
+ * @author Robert J. Muller
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BuilderBenchmark {
+  /** The number of elements to convert */
+  @Param({ "100", "5000", "50000" })
+  public int size;
+
+  /** The input list */
+  private List<Object> input;
+
+  /** Identity list builder that returns an ArrayList */
+  private final ListBuilder<Object, Object> listBuilder =
+    new ListBuilder<Object, Object>() {
+      @Override
+      public Object get(Object dto) {
+        return dto;
+      }
+    };
+
+  /** Identity list builder that returns a CopyOnWriteArrayList */
+  private final ListBuilder<Object, Object> threadSafeListBuilder =
+    new ListBuilder<Object, Object>(true) {
+      @Override
+      public Object get(Object dto) {
+        return dto;
+      }
+    };
+
+  /** Identity collection builder that returns an ArrayList */
+  private final CollectionBuilder<Object, Object> collectionBuilder =
+    new CollectionBuilder<Object, Object>() {
+      @Override
+      public Object get(Object dto) {
+        return dto;
+      }
+    };
+
+  /**
+   * Build the input list.
+   */
+  @Setup
+  public void setUp() {
+    input = new ArrayList<Object>(size);
+    for (int i = 0; i < size; i++) {
+      input.add(new Object());
+    }
+  }
+
+  /**
+   * The old convertDtoList(): add each element to a CopyOnWriteArrayList,
+   * which copies the backing array on every add.
+   *
+   * @return the output list
+   */
+  @Benchmark
+  public Collection<Object> beforeCopyOnWriteAdd() {
+    Collection<Object> output = new CopyOnWriteArrayList<Object>();
+    for (Object dto : input) {
+      output.add(dto);
+    }
+    return output;
+  }
+
+  /**
+   * The old builders: fill an unsized ArrayList, then copy it into a
+   * CopyOnWriteArrayList.
+   *
+   * @return the output list
+   */
+  @Benchmark
+  public List<Object> beforeArrayListCopy() {
+    List<Object> temp = new ArrayList<Object>();
+    for (Object dto : input) {
+      temp.add(dto);
+    }
+    return new CopyOnWriteArrayList<Object>(temp);
+  }
+
+  /**
+   * The list builder with its default presized ArrayList output, which is also
+   * what convertDtoList() now builds.
+   *
+   * @return the output list
+   */
+  @Benchmark
+  public List<Object> afterListBuilder() {
+    return listBuilder.getList(input);
+  }
+
+  /**
+   * The list builder with the opt-in thread-safe output.
+   *
+   * @return the output list
+   */
+  @Benchmark
+  public List<Object> afterThreadSafeListBuilder() {
+    return threadSafeListBuilder.getList(input);
+  }
+
+  /**
+   * The collection builder with its default presized ArrayList output.
+   *
+   * @return the output collection
+   */
+  @Benchmark
+  public Collection<Object> afterCollectionBuilder() {
+    return collectionBuilder.getCollection(input);
+  }
+}
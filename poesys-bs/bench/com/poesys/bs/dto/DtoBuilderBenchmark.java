@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.dto;
+
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.poesys.db.dto.TestNatural;
+
+
+/**
+ * <p>
+ * Throughput and latency distribution of the DTO builders on real DTOs:
+ * ListBuilder.getList() and CollectionBuilder.getCollection() wrapping
+ * TestNatural data-access DTOs in BsTestNatural business DTOs, and
+ * DataAccessDtoListBuilder.getList() extracting them again. Unlike
+ * BuilderBenchmark, which converts with an identity function to isolate the
+ * collection overhead, these numbers include the cost of creating the
+ * business DTOs.
+ * </p>
+ * <p>
+ * Run with the JMH GC profiler for the allocation rate and the allocation per
+ * operation:
+ * </p>
+ *
+ * <pre>
+ * ant bench -Dbench.args="DtoBuilderBenchmark -prof gc"
+ * </pre>
+ *
+ * @author Robert J. Muller
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DtoBuilderBenchmark {
+  /** The column value for the DTOs */
+  private static final BigDecimal COL1 = new BigDecimal("1.234");
+
+  /** The number of DTOs to convert */
+  @Param({ "100", "5000" })
+  public int size;
+
+  /** The data-access DTOs */
+  private List<TestNatural> dtos;
+  /** The business DTOs */
+  private List<BsTestNatural> objects;
+
+  /** Wraps data-access DTOs in business DTOs in a list */
+  private final ListBuilder<TestNatural, BsTestNatural> listBuilder =
+    new ListBuilder<TestNatural, BsTestNatural>() {
+      @Override
+      public BsTestNatural get(TestNatural dto) {
+        return new BsTestNatural(dto);
+      }
+    };
+
+  /** Wraps data-access DTOs in business DTOs in a collection */
+  private final CollectionBuilder<TestNatural, BsTestNatural> collectionBuilder =
+    new CollectionBuilder<TestNatural, BsTestNatural>() {
+      @Override
+      public BsTestNatural get(TestNatural dto) {
+        return new BsTestNatural(dto);
+      }
+    };
+
+  /** Extracts the data-access DTOs from business DTOs */
+  private final DataAccessDtoListBuilder<TestNatural, BsTestNatural> dataBuilder =
+    new DataAccessDtoListBuilder<TestNatural, BsTestNatural>();
+
+  /**
+   * Build the input DTOs.
+   */
+  @Setup
+  public void setUp() {
+    dtos = new ArrayList<TestNatural>(size);
+    for (int i = 0; i < size; i++) {
+      dtos.add(new TestNatural("builder", Integer.toString(i), COL1));
+    }
+    objects = listBuilder.getList(dtos);
+  }
+
+  /**
+   * Wrap the data-access DTOs into a list of business DTOs.
+   *
+   * @return the business DTOs
+   */
+  @Benchmark
+  public List<BsTestNatural> listBuilder() {
+    return listBuilder.getList(dtos);
+  }
+
+  /**
+   * Wrap the data-access DTOs into a collection of business DTOs.
+   *
+   * @return the business DTOs
+   */
+  @Benchmark
+  public Collection<BsTestNatural> collectionBuilder() {
+    return collectionBuilder.getCollection(dtos);
+  }
+
+  /**
+   * Extract the data-access DTOs from the business DTOs.
+   *
+   * @return the data-access DTOs
+   */
+  @Benchmark
+  public List<TestNatural> dataAccessDtoListBuilder() {
+    return dataBuilder.getList(objects);
+  }
+}
@@ -19,11 +19,41 @@
 package com.poesys.bs.delegate;
 
 
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+import com.poesys.bs.dto.IDto;
+import com.poesys.db.Message;
+import com.poesys.db.NoPrimaryKeyException;
+import com.poesys.db.col.IColumnValue;
 import com.poesys.db.connection.IConnectionFactory.DBMS;
 import com.poesys.db.dao.DaoManagerFactory;
 import com.poesys.db.dao.IDaoFactory;
 import com.poesys.db.dao.IDaoManager;
+import com.poesys.db.dao.PoesysTrackingThread;
+import com.poesys.db.dao.query.IKeyListQuerySql;
+import com.poesys.db.dao.query.IKeyQuerySql;
+import com.poesys.db.dao.query.IParameterizedCountSql;
+import com.poesys.db.dao.query.IQueryByKey;
+import com.poesys.db.dao.query.IParameterizedQuerySql;
+import com.poesys.db.dao.query.IQueryList;
+import com.poesys.db.dao.query.IQueryListWithParameters;
 import com.poesys.db.dto.IDbDto;
+import com.poesys.db.pk.IPrimaryKey;
 
 
 /**
@@ -38,6 +68,40 @@ import com.poesys.db.dto.IDbDto;
  * @param <S> the database layer DTO type
  */
 public abstract class AbstractDaoDelegate<S extends IDbDto> {
+  static {
+    List<String> names = new ArrayList<String>(1);
+    names.add("com.poesys.bs.PoesysBsBundle");
+    Message.initializePropertiesFiles(names);
+  }
+
+  /** Error message when the delegate has no count SQL */
+  private static final String NO_COUNT_SQL =
+    "com.poesys.bs.delegate.msg.noCountSql";
+  /** Error message when a count query fails */
+  private static final String COUNT_ERROR =
+    "com.poesys.bs.delegate.msg.countError";
+  /** Error message when a count query does not finish in time */
+  private static final String COUNT_TIMEOUT_ERROR =
+    "com.poesys.bs.delegate.msg.countTimeout";
+  /** Error message when the caller is interrupted waiting for a query */
+  private static final String THREAD_ERROR = "com.poesys.db.dao.msg.thread";
+  /** Property suffix for the transaction timeout in milliseconds */
+  private static final String TIMEOUT = "transaction_timeout_millis";
+  /** The default transaction timeout in milliseconds, 10 minutes */
+  private static final long DEFAULT_TIMEOUT = 10L * 60L * 1000L;
+  /** Error message when the delegate has no keyset page SQL */
+  private static final String NO_PAGE_SQL =
+    "com.poesys.bs.delegate.msg.noPageSql";
+  /** Error message when a continuation key does not match the key columns */
+  private static final String PAGE_KEY_ERROR =
+    "com.poesys.bs.delegate.msg.pageKey";
+  /** Property suffix for the number of keys in one key-list query */
+  private static final String KEY_LIST_SIZE = "key_list_size";
+  /** Default number of keys in one key-list query */
+  private static final int DEFAULT_KEY_LIST_SIZE = 500;
+  /** The number of rows to fetch at once when warm-up queries all objects */
+  protected static final int WARM_UP_ROWS = 1000;
+
   /** The database subsystem for the DTOs */
   protected final String subsystem;
   /** The database manager for the subsystem */
@@ -47,6 +111,24 @@ public abstract class AbstractDaoDelegate<S extends IDbDto> {
 
   /** Factory for DAOs the delegate and its subclasses use */
   protected final IDaoFactory<S> factory;
+
+  /** The maximum number of keys in one key-list query */
+  private volatile int keyListSize;
+
+  /** The transaction timeout in milliseconds */
+  private volatile long timeout;
+
+  /** Cache expiration time in milliseconds for the delegate's objects */
+  protected final Integer expiration;
+
+  /** The shared count cache for the DTO class, null if there is none */
+  private final CountCache countCache;
+
+  /** The shared page cache for the DTO class, null if there is none */
+  private final PageCache pageCache;
+
+  /** The shared metrics for the delegate class, null if metrics are off */
+  protected final DelegateMetrics metrics;
   
   /**
    * Create a DAO Delegate. This is a standard constructor that sets the name of
@@ -59,11 +141,7 @@ public abstract class AbstractDaoDelegate<S extends IDbDto> {
    *          this delegate caches in a cache that supports object expiration
    */
   public AbstractDaoDelegate(String subsystem, DBMS dbms, Integer expiration) {
-    // Create the DAO factory with the object's class name.
-    this.subsystem = subsystem;
-    this.dbms = dbms;
-    manager = DaoManagerFactory.getManager(subsystem);
-    factory = manager.getFactory(getClassName(), subsystem, expiration);
+    this(subsystem, dbms, getDaoManager(subsystem), expiration);
   }
 
   /**
@@ -76,11 +154,75 @@ public abstract class AbstractDaoDelegate<S extends IDbDto> {
    *          this delegate caches in a cache that supports object expiration
    */
   public AbstractDaoDelegate(String subsystem, Integer expiration) {
+    this(subsystem, DBMS.JNDI, getDaoManager(subsystem), expiration);
+  }
+
+  /**
+   * Create a DAO Delegate with a specific DAO manager rather than the manager
+   * that DaoManagerFactory has for the subsystem, such as an in-memory manager
+   * for tests and benchmarks. Transactions still get their connections from
+   * the subsystem as a JNDI data source.
+   * 
+   * @param subsystem the JNDI data source subsystem
+   * @param manager the DAO manager that creates the delegate's DAO factory
+   * @param expiration the cache expiration time in milliseconds for objects
+   *          this delegate caches in a cache that supports object expiration
+   */
+  public AbstractDaoDelegate(String subsystem,
+                             IDaoManager manager,
+                             Integer expiration) {
+    this(subsystem, DBMS.JNDI, manager, expiration);
+  }
+
+  /**
+   * Create a DAO Delegate with a subsystem, database type, and DAO manager.
+   * The public constructors call this one.
+   * 
+   * @param subsystem the name of the subsystem
+   * @param dbms the kind of database that implements the subsystem
+   * @param manager the DAO manager that creates the delegate's DAO factory
+   * @param expiration the cache expiration time in milliseconds for objects
+   *          this delegate caches in a cache that supports object expiration
+   */
+  protected AbstractDaoDelegate(String subsystem,
+                                DBMS dbms,
+                                IDaoManager manager,
+                                Integer expiration) {
     this.subsystem = subsystem;
-    this.dbms = DBMS.JNDI;
+    this.dbms = dbms;
+    this.expiration = expiration;
+    this.manager = manager;
     // Create the DAO factory with the object's class name.
-    manager = DaoManagerFactory.getManager(subsystem);
     factory = manager.getFactory(getClassName(), subsystem, expiration);
+    keyListSize =
+      Math.max(1, DelegateProperties.getInt(subsystem,
+                                            KEY_LIST_SIZE,
+                                            DEFAULT_KEY_LIST_SIZE));
+    timeout = DelegateProperties.getLong(subsystem, TIMEOUT, DEFAULT_TIMEOUT);
+    if (timeout <= 0L) {
+      timeout = DEFAULT_TIMEOUT;
+    }
+    countCache = CountCache.getInstance(subsystem, getClassName());
+    pageCache = PageCache.getInstance(subsystem, getClassName());
+    metrics = DelegateMetrics.getInstance(subsystem, getClass().getName());
+  }
+
+  /**
+   * Get the DAO manager for a subsystem: the shared in-memory manager if the
+   * subsystem sets the memory_dao property to true, which only tests and
+   * benchmarks do, otherwise the manager that DaoManagerFactory has for the
+   * subsystem.
+   * 
+   * @param subsystem the subsystem
+   * @return the DAO manager
+   */
+  static IDaoManager getDaoManager(String subsystem) {
+    if (DelegateProperties.getBoolean(subsystem,
+                                      MemoryDaoManager.MEMORY_DAO,
+                                      false)) {
+      return MemoryDaoManager.getInstance(subsystem);
+    }
+    return DaoManagerFactory.getManager(subsystem);
   }
 
   /**
@@ -101,4 +243,686 @@ public abstract class AbstractDaoDelegate<S extends IDbDto> {
    */
   abstract protected String getClassName();
 
+  /**
+   * Run a query operation, recording its latency, result size, and any
+   * exception in the delegate metrics. Call this only when the metrics are
+   * on; with metrics off, call the operation directly so it costs nothing.
+   * 
+   * @param <R> the type of the result
+   * @param operation the metrics operation
+   * @param query the query to run
+   * @param rows counts the objects in a non-null result
+   * @return the result of the query
+   */
+  protected <R> R measure(DelegateMetrics.Operation operation,
+                          Supplier<R> query,
+                          ToIntFunction<? super R> rows) {
+    long start = System.nanoTime();
+    R result = null;
+    boolean failed = true;
+    try {
+      result = query.get();
+      failed = false;
+      return result;
+    } finally {
+      int count = result != null ? rows.applyAsInt(result) : 0;
+      metrics.record(operation, System.nanoTime() - start, count, failed);
+    }
+  }
+
+  /**
+   * Run a write operation, recording its latency, number of objects, and any
+   * exception in the delegate metrics. Call this only when the metrics are
+   * on.
+   * 
+   * @param operation the metrics operation
+   * @param rows the number of objects the operation writes
+   * @param write the write to run
+   */
+  protected void measureWrite(DelegateMetrics.Operation operation,
+                              int rows,
+                              Runnable write) {
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      write.run();
+      failed = false;
+    } finally {
+      metrics.record(operation, System.nanoTime() - start, rows, failed);
+    }
+  }
+
+  /**
+   * Get the metrics for the delegate class.
+   * 
+   * @return the metrics, or null if metrics are off for the subsystem
+   */
+  public DelegateMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Flush a specific DTO from the DAO cache and from any cache the delegate
+   * keeps, so the next query gets the object from the database.
+   * 
+   * @param dto the DTO to flush
+   */
+  public void flush(IDbDto dto) {
+    manager.removeObjectFromCache(dto.getClass().getName(), dto.getPrimaryKey());
+    evict(dto.getPrimaryKey());
+  }
+
+  /**
+   * Remove an object from any cache the delegate keeps in front of the DAO
+   * cache. The default implementation does nothing.
+   * 
+   * @param key the primary key of the object to remove
+   */
+  protected void evict(IPrimaryKey key) {
+  }
+
+  /**
+   * Clear the cached counts and pages for the delegate's DTO class, if there
+   * are count or page caches, so the next count or page queries the database.
+   * The delegates call this method after they write objects.
+   */
+  protected void invalidateQueryCaches() {
+    if (countCache != null) {
+      countCache.clear();
+    }
+    if (pageCache != null) {
+      pageCache.clear();
+    }
+  }
+
+  /**
+   * The concrete subclass overrides this method to provide a SQL statement
+   * object that counts all the objects of the delegate's type, for count().
+   * The statement has no parameters, and its bindParameters() method must
+   * accept null parameters. The default implementation returns null, and
+   * count() then throws an exception.
+   * 
+   * <pre>
+   * <code>
+   * &#064;Override
+   * protected IParameterizedCountSql&lt;IDbDto&gt; getCountSql() {
+   *   return new TestNaturalCountSql();
+   * }
+   * </code>
+   * </pre>
+   * 
+   * @return the count SQL statement object or null
+   */
+  protected IParameterizedCountSql<IDbDto> getCountSql() {
+    return null;
+  }
+
+  /**
+   * Count all the objects of the delegate's type without querying them.
+   * 
+   * @return the number of objects
+   * @throws DelegateException when the delegate has no count SQL or the query
+   *           fails
+   */
+  public BigInteger count() throws DelegateException {
+    IParameterizedCountSql<IDbDto> sql = getCountSql();
+    if (sql == null) {
+      Object[] args = { getClassName() };
+      throw new DelegateException(Message.getMessage(NO_COUNT_SQL, args));
+    }
+    return count(sql, null);
+  }
+
+  /**
+   * Count the objects that a parameterized count query selects without
+   * querying them. If the subsystem has a count cache, the method returns a
+   * cached count for the same SQL and parameters until the count expires or
+   * a delegate writes objects of the delegate's type.
+   * 
+   * @param <P> the type of the DTO that holds the query parameters
+   * @param sql the parameterized count SQL query
+   * @param parameters the DTO that holds the query parameters, null for a
+   *          query with no parameters
+   * @return the number of objects
+   * @throws DelegateException when the query fails
+   */
+  public <P extends IDbDto> BigInteger count(IParameterizedCountSql<P> sql,
+                                             P parameters)
+      throws DelegateException {
+    if (metrics != null) {
+      return measure(DelegateMetrics.Operation.COUNT,
+                     () -> countObjects(sql, parameters),
+                     count -> 0);
+    }
+    return countObjects(sql, parameters);
+  }
+
+  /**
+   * Count the objects through the count cache.
+   * 
+   * @param <P> the type of the parameters
+   * @param sql the count SQL
+   * @param parameters the parameters for the count, null for none
+   * @return the count
+   * @throws DelegateException when there is a problem running the count
+   */
+  private <P extends IDbDto> BigInteger countObjects(IParameterizedCountSql<P> sql,
+                                                     P parameters)
+      throws DelegateException {
+    CountCache.Key key = null;
+    long stamp = 0L;
+    if (countCache != null) {
+      key = CountCache.getKey(sql, parameters);
+      BigInteger count = countCache.get(key);
+      if (count != null) {
+        return count;
+      }
+      stamp = countCache.getStamp();
+    }
+
+    BigInteger count = queryCount(sql, parameters);
+
+    if (countCache != null) {
+      countCache.put(key, count, stamp);
+    }
+    return count;
+  }
+
+  /**
+   * Run a count query in its own tracking thread and connection, which the
+   * subsystem's transaction executor starts and bounds like any other
+   * transaction. The method does the work of QueryCount, which returns its
+   * result through a static field and so cannot run two counts at once in one
+   * JVM, with the result in a local variable, so counts for any delegates run
+   * concurrently. If the query misses the delegate's deadline or the caller is
+   * interrupted, the method aborts the query's connection.
+   * 
+   * @param <P> the type of the parameters
+   * @param sql the count SQL
+   * @param parameters the parameters for the count, null for none
+   * @return the count, or null if the query returned no row
+   * @throws DelegateException when the query fails or does not finish in time
+   */
+  private <P extends IDbDto> BigInteger queryCount(final IParameterizedCountSql<P> sql,
+                                                   final P parameters)
+      throws DelegateException {
+    final BigInteger[] count = new BigInteger[1];
+    Runnable query = new Runnable() {
+      public void run() {
+        PoesysTrackingThread thread =
+          (PoesysTrackingThread)Thread.currentThread();
+        try (PreparedStatement stmt =
+          thread.getConnection().prepareStatement(sql.getSql())) {
+          if (parameters != null) {
+            parameters.validateForQuery();
+          }
+          sql.bindParameters(stmt, parameters);
+          try (ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+              // Read the count by position, so the column needs no alias.
+              count[0] = rs.getBigDecimal(1).toBigInteger();
+            }
+          }
+        } catch (SQLException | RuntimeException e) {
+          thread.setThrowable(e);
+        }
+      }
+    };
+
+    long deadline = getDeadline();
+    TransactionExecutor executor = TransactionExecutor.getInstance(subsystem);
+    PoesysTrackingThread thread = null;
+    try {
+      thread = executor.start(query, deadline);
+      if (!TransactionExecutor.join(thread, deadline)) {
+        TransactionExecutor.abort(thread);
+        Object[] args = { getClassName() };
+        String message = Message.getMessage(COUNT_TIMEOUT_ERROR, args);
+        throw new DelegateTimeoutException(message);
+      }
+    } catch (InterruptedException e) {
+      if (thread != null) {
+        TransactionExecutor.abort(thread);
+      }
+      Thread.currentThread().interrupt();
+      Object[] args = { "count", getClassName() };
+      throw new DelegateException(Message.getMessage(THREAD_ERROR, args), e);
+    }
+    TransactionExecutor.closeConnection(thread);
+    if (thread.getThrowable() != null) {
+      Object[] args = { getClassName() };
+      throw new DelegateException(Message.getMessage(COUNT_ERROR, args),
+                                  thread.getThrowable());
+    }
+    return count[0];
+  }
+
+  /**
+   * The concrete subclass overrides this method to provide a SQL statement
+   * object for keyset pagination with getPage(). The default implementation
+   * returns null, and getPage() then throws an exception.
+   * 
+   * <pre>
+   * <code>
+   * &#064;Override
+   * protected IKeysetQuerySql&lt;TestNatural&gt; getPageSql() {
+   *   return new TestNaturalPageSql();
+   * }
+   * </code>
+   * </pre>
+   * 
+   * @return the keyset SELECT SQL statement object or null
+   */
+  protected IKeysetQuerySql<S> getPageSql() {
+    return null;
+  }
+
+  /**
+   * Query a page of objects in primary-key order starting after a key. The
+   * method queries at most one more row than the page size to find out whether
+   * there is a next page, limiting the rows with the JDBC maximum rows rather
+   * than DBMS-specific LIMIT syntax. If the subsystem has a page cache, the
+   * method caches the keys of the page and puts the objects into the DAO
+   * cache, and a later request for the same page gets the objects from the
+   * caches through the loader instead of querying the page.
+   * 
+   * @param <T> the type of object on the page
+   * @param after the primary key of the last object on the previous page, null
+   *          for the first page
+   * @param pageSize the maximum number of objects on the page
+   * @param loader gets the objects for a list of keys, for page cache hits
+   * @param wrapper builds a page object from a queried DTO
+   * @return the page
+   * @throws DelegateException when the delegate has no page SQL, the key does
+   *           not match the key columns, or the query fails
+   */
+  protected <T> Page<T> queryPage(final IPrimaryKey after,
+                                  int pageSize,
+                                  Function<List<IPrimaryKey>, List<T>> loader,
+                                  Function<S, T> wrapper)
+      throws DelegateException {
+    final IKeysetQuerySql<S> sql = getPageSql();
+    if (sql == null) {
+      Object[] args = { getClassName() };
+      throw new DelegateException(Message.getMessage(NO_PAGE_SQL, args));
+    }
+    final int size = Math.max(1, pageSize);
+    String cacheKey = null;
+    long stamp = 0L;
+    if (pageCache != null) {
+      cacheKey = PageCache.getKey(after, size);
+      PageCache.Entry entry = pageCache.get(cacheKey);
+      if (entry != null) {
+        return new Page<T>(loader.apply(entry.keys), entry.nextKey);
+      }
+      stamp = pageCache.getStamp();
+    }
+
+    List<S> dtos = new ArrayList<S>(size + 1);
+    try (Stream<S> rows =
+      streamQuery(getKeysetSql(sql, after),
+                  stmt -> bindKeyset(stmt,
+                                     after,
+                                     sql.getKeyColumns().size(),
+                                     size + 1),
+                  sql::getData,
+                  0)) {
+      rows.limit(size + 1).forEach(dtos::add);
+    }
+    boolean more = dtos.size() > size;
+    if (more) {
+      dtos.remove(size);
+    }
+
+    int cacheExpiration = (int)getCacheExpiration(-1);
+    List<IPrimaryKey> keys = new ArrayList<IPrimaryKey>(dtos.size());
+    List<T> objects = new ArrayList<T>(dtos.size());
+    for (S dto : dtos) {
+      keys.add(dto.getPrimaryKey());
+      objects.add(wrapper.apply(dto));
+      if (pageCache != null) {
+        manager.putObjectInCache(dto.getClass().getName(),
+                                 cacheExpiration,
+                                 dto);
+      }
+    }
+    IPrimaryKey nextKey = more ? keys.get(keys.size() - 1) : null;
+    if (pageCache != null) {
+      pageCache.put(cacheKey, keys, nextKey, stamp);
+    }
+    return new Page<T>(objects, nextKey);
+  }
+
+  /**
+   * Build the keyset SQL for a page: the page query, then a condition that
+   * selects the keys after the continuation key if there is one, then the
+   * ORDER BY clause. The condition expands the row-value comparison
+   * (k1, k2) &gt; (?, ?) into k1 &gt; ? OR (k1 = ? AND k2 &gt; ?) so it works on
+   * any DBMS.
+   * 
+   * @param sql the keyset SQL statement object
+   * @param after the continuation key, null for the first page
+   * @return the SQL statement
+   */
+  private String getKeysetSql(IKeysetQuerySql<S> sql, IPrimaryKey after) {
+    List<String> columns = sql.getKeyColumns();
+    StringBuilder builder = new StringBuilder(sql.getSql());
+    if (after != null) {
+      builder.append(sql.hasWhereClause() ? " AND (" : " WHERE (");
+      for (int i = 0; i < columns.size(); i++) {
+        if (i > 0) {
+          builder.append(" OR ");
+        }
+        builder.append("(");
+        for (int j = 0; j < i; j++) {
+          builder.append(columns.get(j));
+          builder.append(" = ? AND ");
+        }
+        builder.append(columns.get(i));
+        builder.append(" > ?)");
+      }
+      builder.append(")");
+    }
+    builder.append(" ORDER BY ");
+    String sep = "";
+    for (String column : columns) {
+      builder.append(sep);
+      builder.append(column);
+      sep = ", ";
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Bind the continuation key values to the keyset condition and limit the
+   * rows the statement returns.
+   * 
+   * @param stmt the page query statement
+   * @param after the continuation key, null for the first page
+   * @param keyColumns the number of key columns in the keyset condition
+   * @param maxRows the maximum number of rows to return
+   */
+  private void bindKeyset(PreparedStatement stmt,
+                          IPrimaryKey after,
+                          int keyColumns,
+                          int maxRows) {
+    try {
+      stmt.setMaxRows(maxRows);
+    } catch (SQLException e) {
+      throw new DelegateException(e.getMessage(), e);
+    }
+    if (after == null) {
+      return;
+    }
+    List<IColumnValue> values = new ArrayList<IColumnValue>();
+    for (IColumnValue value : after) {
+      values.add(value);
+    }
+    if (values.size() != keyColumns) {
+      Object[] args = { after.getStringKey(), keyColumns };
+      throw new DelegateException(Message.getMessage(PAGE_KEY_ERROR, args));
+    }
+    int index = 1;
+    for (int i = 0; i < values.size(); i++) {
+      for (int j = 0; j <= i; j++) {
+        index = values.get(j).setParam(stmt, index);
+      }
+    }
+  }
+
+  /**
+   * Get the expiration time for caching an object in the delegate, which is
+   * the expiration for the query if there is one and the delegate's expiration
+   * otherwise.
+   * 
+   * @param expiration the expiration time in milliseconds for the query, or
+   *          -1 for the delegate's expiration
+   * @return the expiration time in milliseconds, or 0 if there is none
+   */
+  protected long getCacheExpiration(int expiration) {
+    if (expiration != -1) {
+      return expiration;
+    }
+    return this.expiration != null ? this.expiration.longValue() : 0L;
+  }
+
+  /**
+   * Put preloaded objects into the DAO manager's cache and a near cache. This
+   * is the second half of the delegates' warmUp() methods.
+   * 
+   * @param <T> the business DTO type
+   * @param objects the preloaded objects; the method skips nulls
+   * @param cache the near cache, or null if the delegate has none
+   * @return the number of objects the method cached
+   */
+  protected <T extends IDto<S>> int cacheObjects(List<T> objects,
+                                                 NearCache<T> cache) {
+    int cacheExpiration = (int)getCacheExpiration(-1);
+    long stamp = cache != null ? cache.getStamp() : 0L;
+    int count = 0;
+    for (T object : objects) {
+      if (object == null) {
+        continue;
+      }
+      S dto = object.toDto();
+      manager.putObjectInCache(dto.getClass().getName(), cacheExpiration, dto);
+      if (cache != null) {
+        cache.put(object, cacheExpiration, stamp);
+      }
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Run a query on a dedicated connection and return the queried DTOs as a
+   * lazy stream. The stream builds each DTO from its row only when the consumer
+   * asks for it, queries the DTO's nested objects, and sets it to EXISTING
+   * status; it does not cache the DTOs. The stream holds the connection open
+   * until it reads the last row or the caller closes it, so close it with
+   * try-with-resources if you might not read all the rows.
+   * 
+   * @param sql the SQL query
+   * @param binder binds any query parameters to the prepared statement; null
+   *          if the query has no parameters
+   * @param reader builds a DTO from the current row of a result set
+   * @param fetchSize the number of rows to fetch at once; 0 means the driver
+   *          default (for MySQL, use Integer.MIN_VALUE to stream rows one by
+   *          one or add useCursorFetch=true to the connection)
+   * @return the stream of DTOs
+   * @throws DelegateException when the query fails
+   */
+  protected Stream<S> streamQuery(String sql,
+                                  Consumer<PreparedStatement> binder,
+                                  Function<ResultSet, S> reader,
+                                  int fetchSize) throws DelegateException {
+    return QueryStream.open(subsystem, dbms, sql, binder, reader, fetchSize);
+  }
+
+  /**
+   * Query the objects that a parameterized query selects, using the
+   * parameterized list DAO from the delegate's DAO factory, so the query
+   * caches the objects when the subsystem uses a cache.
+   * 
+   * @param <P> the type of the DTO that holds the query parameters
+   * @param sql the parameterized SQL query
+   * @param parameters the DTO that holds the query parameters
+   * @param rows the number of rows to fetch at once; 0 means the default
+   * @return the queried objects
+   * @throws DelegateException when the query fails
+   */
+  protected <P extends IDbDto> Collection<S> queryObjects(IParameterizedQuerySql<S, P> sql,
+                                                         P parameters,
+                                                         int rows)
+      throws DelegateException {
+    try {
+      IQueryListWithParameters<S, P, Collection<S>> query =
+        factory.getQueryListWithParameters(sql, subsystem, rows);
+      return query.query(parameters);
+    } catch (DelegateException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      throw new DelegateException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Stream the objects that a parameterized query selects on a dedicated
+   * connection, bypassing the cache.
+   * 
+   * @param <P> the type of the DTO that holds the query parameters
+   * @param sql the parameterized SQL query
+   * @param parameters the DTO that holds the query parameters
+   * @param fetchSize the number of rows to fetch at once; 0 means the driver
+   *          default
+   * @return the stream of objects, which the caller should close
+   * @throws DelegateException when the query fails
+   * @see #streamQuery(String, Consumer, Function, int)
+   */
+  protected <P extends IDbDto> Stream<S> streamObjects(final IParameterizedQuerySql<S, P> sql,
+                                                      final P parameters,
+                                                      int fetchSize)
+      throws DelegateException {
+    return streamQuery(sql.getSql(),
+                       stmt -> sql.bindParameters(stmt, parameters),
+                       sql::getData,
+                       fetchSize);
+  }
+
+  /**
+   * Get the transaction timeout, the time that process() waits for the
+   * transaction of a list of objects, and that a count query runs, before
+   * cancelling it.
+   * 
+   * @return the timeout in milliseconds
+   */
+  public long getTransactionTimeout() {
+    return timeout;
+  }
+
+  /**
+   * Set the transaction timeout, replacing the transaction_timeout_millis
+   * property of the subsystem. When a transaction does not finish in time,
+   * the delegate aborts its connection, which cancels the running statement
+   * and rolls back the transaction, and throws a DelegateTimeoutException.
+   * 
+   * @param timeout the timeout in milliseconds, at least 1
+   */
+  public void setTransactionTimeout(long timeout) {
+    this.timeout = Math.max(1L, timeout);
+  }
+
+  /**
+   * Get the deadline for a transaction that starts now, the delegate's
+   * transaction timeout from now.
+   * 
+   * @return the deadline in System.nanoTime() terms
+   */
+  protected long getDeadline() {
+    return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+  }
+
+  /**
+   * Get the maximum number of keys in one key-list query.
+   * 
+   * @return the key-list size
+   */
+  public int getKeyListSize() {
+    return keyListSize;
+  }
+
+  /**
+   * Set the maximum number of keys in one key-list query, replacing the size
+   * from the subsystem properties.
+   * 
+   * @param keyListSize the key-list size; less than 1 means 1
+   */
+  public void setKeyListSize(int keyListSize) {
+    this.keyListSize = Math.max(1, keyListSize);
+  }
+
+  /**
+   * Query the objects for a collection of primary keys. The method first looks
+   * up all the keys in the cache, then queries the objects it did not find
+   * with key-list (IN) queries of at most key_list_size keys each, which also
+   * cache the queried objects. If there is no key-list SQL, it queries the
+   * missing objects one at a time by key. The returned list has the objects in
+   * the order of the keys, leaving out keys for which there is no object;
+   * duplicate keys yield the same object more than once.
+   * 
+   * @param keys the primary keys of the objects to query
+   * @param keySql the SQL for querying a single object by key
+   * @param keyListSql supplies a new key-list SQL object for each key-list
+   *          query, or null if the delegate has no key-list SQL
+   * @return the list of queried objects in key order
+   * @throws DelegateException when there is a database problem or an invalid
+   *           primary key
+   */
+  protected List<S> queryObjects(Collection<? extends IPrimaryKey> keys,
+                                 IKeyQuerySql<S> keySql,
+                                 Supplier<IKeyListQuerySql<S>> keyListSql)
+      throws DelegateException {
+    List<S> objects = new ArrayList<S>(keys.size());
+    if (keys.isEmpty()) {
+      return objects;
+    }
+
+    // Probe the cache for all the keys, collecting the distinct misses.
+    Map<String, S> found = new HashMap<String, S>(keys.size() * 4 / 3 + 1);
+    Map<String, IPrimaryKey> misses = new LinkedHashMap<String, IPrimaryKey>();
+    try {
+      for (IPrimaryKey key : keys) {
+        String stringKey = key.getStringKey();
+        if (found.containsKey(stringKey) || misses.containsKey(stringKey)) {
+          continue;
+        }
+        S cached = manager.getCachedObject(key, subsystem);
+        if (cached != null) {
+          found.put(stringKey, cached);
+        } else {
+          misses.put(stringKey, key);
+        }
+      }
+      List<IPrimaryKey> missList = new ArrayList<IPrimaryKey>(misses.values());
+
+      // Query the misses from the database.
+      IKeyListQuerySql<S> sql =
+        keyListSql == null || missList.isEmpty() ? null : keyListSql.get();
+      if (sql == null) {
+        IQueryByKey<S> query = factory.getQueryByKey(keySql, subsystem);
+        for (IPrimaryKey key : missList) {
+          S object = query.queryByKey(key);
+          if (object != null) {
+            found.put(key.getStringKey(), object);
+          }
+        }
+      } else {
+        int size = keyListSize;
+        for (int i = 0; i < missList.size(); i += size) {
+          if (i > 0) {
+            sql = keyListSql.get();
+          }
+          List<IPrimaryKey> chunk =
+            missList.subList(i, Math.min(i + size, missList.size()));
+          sql.setKeys(new ArrayList<IPrimaryKey>(chunk));
+          IQueryList<S> query =
+            factory.getQueryListWithKeyList(sql, subsystem, chunk.size());
+          for (S object : query.query()) {
+            found.put(object.getPrimaryKey().getStringKey(), object);
+          }
+        }
+      }
+    } catch (NoPrimaryKeyException e) {
+      throw new DelegateException(e.getMessage(), e);
+    }
+
+    // Assemble the results in key order.
+    for (IPrimaryKey key : keys) {
+      S object = found.get(key.getStringKey());
+      if (object != null) {
+        objects.add(object);
+      }
+    }
+    return objects;
+  }
 }
@@ -20,15 +20,36 @@ package com.poesys.bs.delegate;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import org.apache.log4j.Logger;
 
+import com.poesys.bs.delegate.DelegateMetrics.Operation;
 import com.poesys.bs.dto.IDto;
 import com.poesys.db.Message;
 import com.poesys.db.NoPrimaryKeyException;
 import com.poesys.db.connection.IConnectionFactory.DBMS;
+import com.poesys.db.dao.IDaoManager;
 import com.poesys.db.dao.PoesysTrackingThread;
 import com.poesys.db.dao.ddl.ExecuteSql;
 import com.poesys.db.dao.ddl.IExecuteSql;
@@ -38,7 +59,9 @@ import com.poesys.db.dao.delete.IDeleteBatch;
 import com.poesys.db.dao.delete.IDeleteSql;
 import com.poesys.db.dao.insert.IInsertBatch;
 import com.poesys.db.dao.insert.IInsertSql;
+import com.poesys.db.dao.query.IKeyListQuerySql;
 import com.poesys.db.dao.query.IKeyQuerySql;
+import com.poesys.db.dao.query.IParameterizedQuerySql;
 import com.poesys.db.dao.query.IQueryByKey;
 import com.poesys.db.dao.query.IQueryList;
 import com.poesys.db.dao.query.IQuerySql;
@@ -75,6 +98,13 @@ import com.poesys.db.pk.IPrimaryKey;
  * improve cohesion and maintainability. It also introduces the insert(object)
  * and process(object) methods for single-object inserts.
  * </p>
+ * <p>
+ * A delegate holds no per-call state: each process call passes its list of
+ * DTOs directly to the transaction it runs. A single delegate instance may
+ * therefore serve any number of concurrent callers, and you can keep one
+ * instance per class as a singleton rather than creating a delegate (and
+ * looking up its DAO factory) for each request.
+ * </p>
  * 
  * @author Robert J. Muller
  * @param <T> the business layer DTO type
@@ -82,21 +112,74 @@ import com.poesys.db.pk.IPrimaryKey;
  * @param <K> the primary key type
  */
 abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto, K extends IPrimaryKey>
-    extends AbstractDaoDelegate<S> implements IDataDelegate<T, S, K> {
+    extends AbstractDaoDelegate<S> implements IDataDelegate<T, S, K>,
+    IAsyncDataDelegate<T, S, K>, IWarmUpDelegate {
   /** Logger for this class */
   private static final Logger logger =
     Logger.getLogger(AbstractDataDelegate.class);
 
+  protected final String delegateName;
+
+  /** Executor that runs the transactions for the process method */
+  protected final TransactionExecutor executor;
+
+  /** Executor that runs the asynchronous operations */
+  private volatile Executor asyncExecutor;
+
+  /** Policy that sets the JDBC batch sizes for the process method */
+  private volatile BatchPolicy batchPolicy;
+
+  /** In-process cache of wrapped objects, null if the cache is off */
+  private volatile NearCache<T> nearCache;
+
+  /** Queue for write-behind processing, null for synchronous processing */
+  private volatile WriteBehindQueue<T> writeBehind;
+
+  /** Coalescer for update() and updateBatch(), null for no coalescing */
+  private volatile UpdateCoalescer<T> coalescer;
+
+  /** Whether process() skips CHANGED objects that match their snapshots */
+  private volatile boolean snapshots;
+
+  /** How process() runs its transaction */
+  private volatile TransactionContext.Mode transactionMode;
+
+  /** Number of updates skipped by snapshot comparison, shared by class */
+  private final AtomicLong skippedUpdates;
+
+  /** The skipped-update counters by subsystem and delegate class name */
+  private static final ConcurrentMap<String, AtomicLong> skippedCounters =
+    new ConcurrentHashMap<String, AtomicLong>();
+
+  /** Number of partitions for a parallel write, 1 for a serial write */
+  private volatile int partitions;
+
+  /** Minimum number of objects for a parallel write */
+  private volatile int minPartitionedObjects;
+
   /**
-   * The list of DTOs to process, must be null at end of using method for
-   * reentrancy
+   * The deadline in System.nanoTime() terms that process() with a timeout
+   * sets for the calling thread, null if the thread has no deadline
    */
-  protected List<T> list = null;
+  private static final ThreadLocal<Long> callDeadline = new ThreadLocal<Long>();
 
-  protected final String delegateName;
+  /** Property suffix for the snapshot comparison switch */
+  private static final String SNAPSHOTS = "snapshot_updates";
+  /** Property suffix for the number of partitions of a parallel write */
+  private static final String PARTITIONS = "parallel_partitions";
+  /** Property suffix for the transaction mode, INLINE or HANDOFF */
+  private static final String TRANSACTION_MODE = "transaction_mode";
+  /** Property suffix for the minimum number of objects for a parallel write */
+  private static final String MIN_PARTITIONED = "parallel_min_objects";
+  /** The default minimum number of objects for a parallel write */
+  private static final int DEFAULT_MIN_PARTITIONED = 1000;
 
-  /** timeout for the query thread */
-  private static final int TIMEOUT = 10000 * 60;
+  /** Partition decision: not yet decided */
+  private static final int UNDECIDED = 0;
+  /** Partition decision: all the partitions commit */
+  private static final int COMMIT = 1;
+  /** Partition decision: all the partitions roll back */
+  private static final int ROLLBACK = 2;
 
   static {
     List<String> names = new ArrayList<String>(1);
@@ -109,6 +192,22 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
   /** Error message when tracking thread gets exception */
   private static final String PROCESSING_ERROR =
     "com.poesys.bs.delegate.msg.processing";
+  /** Error message when the asynchronous executor rejects an operation */
+  private static final String ASYNC_REJECTED_ERROR =
+    "com.poesys.bs.delegate.msg.asyncRejected";
+  /** Error message when process() gets a null object in write-behind mode */
+  private static final String NO_OBJECT = "com.poesys.bs.delegate.msg.noObject";
+  /** Error message when getObjectById() has no numeric key to query */
+  private static final String NO_ID_KEY = "com.poesys.bs.delegate.msg.noIdKey";
+  /** Error message when a partition rolls back for another partition */
+  private static final String PARTITION_ROLLBACK =
+    "com.poesys.bs.delegate.msg.partitionRollback";
+  /** Error message when write-behind gets an object it cannot write */
+  private static final String WRITE_BEHIND_STATUS_ERROR =
+    "com.poesys.bs.delegate.msg.writeBehindStatus";
+  /** Error message when a transaction misses its deadline */
+  private static final String TIMEOUT_ERROR =
+    "com.poesys.bs.delegate.msg.timeout";
 
   /**
    * Standard constructor that sets the name of the subsystem and the database
@@ -120,8 +219,10 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
    *          this delegate caches in a cache that supports object expiration
    */
   public AbstractDataDelegate(String subsystem, DBMS dbms, Integer expiration) {
-    super(subsystem, dbms, expiration);
-    delegateName = AbstractDataDelegate.class.getName();
+    this(subsystem,
+         dbms,
+         AbstractDaoDelegate.getDaoManager(subsystem),
+         expiration);
   }
 
   /**
@@ -133,8 +234,79 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
    *          this delegate caches in a cache that supports object expiration
    */
   public AbstractDataDelegate(String subsystem, Integer expiration) {
-    super(subsystem, expiration);
+    this(subsystem,
+         DBMS.JNDI,
+         AbstractDaoDelegate.getDaoManager(subsystem),
+         expiration);
+  }
+
+  /**
+   * Constructor that uses a specific DAO manager rather than the manager that
+   * DaoManagerFactory has for the subsystem, such as an in-memory manager for
+   * tests and benchmarks. Transactions get their connections from the
+   * subsystem as a JNDI data source.
+   * 
+   * @param subsystem the JNDI data source subsystem
+   * @param manager the DAO manager that creates the delegate's DAO factory
+   * @param expiration the cache expiration time in milliseconds for objects
+   *          this delegate caches in a cache that supports object expiration
+   */
+  public AbstractDataDelegate(String subsystem,
+                              IDaoManager manager,
+                              Integer expiration) {
+    this(subsystem, DBMS.JNDI, manager, expiration);
+  }
+
+  /**
+   * Constructor with a subsystem, database type, and DAO manager that the
+   * public constructors call.
+   * 
+   * @param subsystem the name of the subsystem
+   * @param dbms the kind of database that implements the subsystem
+   * @param manager the DAO manager that creates the delegate's DAO factory
+   * @param expiration the cache expiration time in milliseconds for objects
+   *          this delegate caches in a cache that supports object expiration
+   */
+  protected AbstractDataDelegate(String subsystem,
+                                 DBMS dbms,
+                                 IDaoManager manager,
+                                 Integer expiration) {
+    super(subsystem, dbms, manager, expiration);
     delegateName = AbstractDataDelegate.class.getName();
+    executor = TransactionExecutor.getInstance(subsystem);
+    asyncExecutor = AsyncDelegateExecutor.getInstance(subsystem);
+    batchPolicy = BatchPolicy.getInstance(subsystem);
+    nearCache = NearCache.getInstance(subsystem, getClassName());
+    writeBehind =
+      WriteBehindQueue.getInstance(subsystem,
+                                   subsystem + ":" + getClass().getName(),
+                                   this::writeQueued);
+    coalescer =
+      UpdateCoalescer.getInstance(subsystem,
+                                  subsystem + ":" + getClass().getName(),
+                                  this::write,
+                                  this::mergeUpdates);
+    partitions =
+      Math.max(1, DelegateProperties.getInt(subsystem, PARTITIONS, 1));
+    minPartitionedObjects =
+      DelegateProperties.getInt(subsystem,
+                                MIN_PARTITIONED,
+                                DEFAULT_MIN_PARTITIONED);
+    snapshots = DelegateProperties.getBoolean(subsystem, SNAPSHOTS, false);
+    transactionMode = TransactionContext.Mode.INLINE;
+    String mode = DelegateProperties.getString(subsystem, TRANSACTION_MODE);
+    if (mode != null && !mode.isEmpty()) {
+      try {
+        transactionMode = TransactionContext.Mode.valueOf(mode.toUpperCase());
+      } catch (IllegalArgumentException e) {
+        logger.warn("Invalid transaction mode " + mode + " for property "
+                    + subsystem + "." + TRANSACTION_MODE + ", using "
+                    + transactionMode);
+      }
+    }
+    skippedUpdates =
+      skippedCounters.computeIfAbsent(subsystem + ":" + getClass().getName(),
+                                      k -> new AtomicLong());
   }
 
   /**
@@ -162,6 +334,107 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
 
   @Override
   public T getObject(K key, int expiration) throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.GET_OBJECT,
+                     () -> findObject(key, expiration),
+                     object -> 1);
+    }
+    return findObject(key, expiration);
+  }
+
+  /**
+   * Get an object through the near cache, querying it if it is not there.
+   * 
+   * @param key the primary key of the object
+   * @param expiration the cache expiration time in milliseconds, or -1
+   * @return the object, or null if no object matches the key
+   * @throws DelegateException when there is a problem querying the object
+   */
+  private T findObject(K key, int expiration) throws DelegateException {
+    NearCache<T> cache = nearCache;
+    if (cache != null) {
+      T cached = cache.get(key);
+      if (metrics != null) {
+        metrics.recordCache(cached != null);
+      }
+      if (cached != null) {
+        return cached;
+      }
+    }
+    return queryObject(key, expiration, cache);
+  }
+
+  @Override
+  public T getObjectById(long id) throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.GET_OBJECT, () -> findObjectById(id), o -> 1);
+    }
+    return findObjectById(id);
+  }
+
+  /**
+   * Get an object by numeric key through the near cache, querying it if it is
+   * not there.
+   * 
+   * @param id the primary key value
+   * @return the object, or null if no object matches the key
+   * @throws DelegateException when there is a problem querying the object
+   */
+  private T findObjectById(long id) throws DelegateException {
+    NearCache<T> cache = nearCache;
+    if (cache != null) {
+      T cached = cache.get(id);
+      if (metrics != null) {
+        metrics.recordCache(cached != null);
+      }
+      if (cached != null) {
+        return cached;
+      }
+    }
+    K key = createIdKey(id);
+    if (key == null) {
+      Object[] args = { getClass().getName() };
+      throw new DelegateException(Message.getMessage(NO_ID_KEY, args));
+    }
+    return queryObject(key, -1, cache);
+  }
+
+  /**
+   * Create the primary key for a numeric identity or sequence key value, for
+   * getObjectById(). The default implementation returns null, so a delegate
+   * with an identity or sequence key overrides the method:
+   * 
+   * <pre>
+   * <code>
+   * &#064;Override
+   * protected IdentityPrimaryKey createIdKey(long id) {
+   *   return PrimaryKeyFactory.createIdentityKey("id",
+   *                                              BigInteger.valueOf(id),
+   *                                              getClassName());
+   * }
+   * </code>
+   * </pre>
+   * 
+   * @param id the key value
+   * @return the primary key, or null if the delegate has no numeric key
+   */
+  protected K createIdKey(long id) {
+    return null;
+  }
+
+  /**
+   * Query an object that is not in the near cache through the DAO cache and
+   * put it into the near cache.
+   * 
+   * @param key the primary key of the object
+   * @param expiration the cache expiration time in milliseconds, or -1
+   * @param cache the near cache, or null if there is none
+   * @return the object, or null if no object matches the key
+   * @throws DelegateException when there is a problem querying the object
+   */
+  private T queryObject(K key, int expiration, NearCache<T> cache)
+      throws DelegateException {
+    long stamp = cache != null ? cache.getStamp() : 0L;
     T object = null;
 
     try {
@@ -172,15 +445,74 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
       }
       S queriedDto = query.queryByKey(key);
       if (queriedDto != null) {
-        object = wrapData(queriedDto);
+        object = wrap(queriedDto);
       }
     } catch (NoPrimaryKeyException e) {
       throw new DelegateException(e.getMessage(), e);
     }
 
+    if (cache != null) {
+      cache.put(object, getCacheExpiration(expiration), stamp);
+    }
+
     return object;
   }
 
+  @Override
+  public List<T> getObjects(Collection<K> keys) throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.GET_OBJECTS,
+                     () -> getCachedObjects(keys),
+                     List::size);
+    }
+    return getCachedObjects(keys);
+  }
+
+  /**
+   * Get the objects for a collection of keys through the near cache, if there
+   * is one, querying and wrapping the objects that are not in the near cache.
+   * 
+   * @param keys the primary keys of the objects
+   * @return the list of objects in key order
+   */
+  private List<T> getCachedObjects(Collection<? extends IPrimaryKey> keys) {
+    NearCache<T> cache = nearCache;
+    if (cache != null) {
+      return cache.getAll(keys, this::loadObjects, getCacheExpiration(-1));
+    }
+    return loadObjects(keys);
+  }
+
+  @Override
+  public Page<T> getPage(IPrimaryKey after, int pageSize)
+      throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.PAGE,
+                     () -> queryPage(after,
+                                     pageSize,
+                                     this::getCachedObjects,
+                                     this::wrap),
+                     page -> page.getObjects().size());
+    }
+    return queryPage(after, pageSize, this::getCachedObjects, this::wrap);
+  }
+
+  /**
+   * Query and wrap the objects for a collection of keys.
+   * 
+   * @param keys the primary keys of the objects to query
+   * @return the list of objects in key order
+   */
+  private List<T> loadObjects(Collection<? extends IPrimaryKey> keys) {
+    List<S> objects =
+      queryObjects(keys, getQueryByKeySql(), this::getQueryByKeyListSql);
+    List<T> list = new ArrayList<T>(objects.size());
+    for (S object : objects) {
+      list.add(wrap(object));
+    }
+    return list;
+  }
+
   @Override
   public T getDatabaseObject(K key) throws DelegateException {
     return getDatabaseObject(key, -1);
@@ -188,6 +520,27 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
 
   @Override
   public T getDatabaseObject(K key, int expiration) throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.GET_DATABASE_OBJECT,
+                     () -> queryDatabaseObject(key, expiration),
+                     object -> 1);
+    }
+    return queryDatabaseObject(key, expiration);
+  }
+
+  /**
+   * Query an object from the database, bypassing the caches, and put it into
+   * the near cache.
+   * 
+   * @param key the primary key of the object
+   * @param expiration the cache expiration time in milliseconds, or -1
+   * @return the object, or null if no object matches the key
+   * @throws DelegateException when there is a problem querying the object
+   */
+  private T queryDatabaseObject(K key, int expiration)
+      throws DelegateException {
+    NearCache<T> cache = nearCache;
+    long stamp = cache != null ? cache.getStamp() : 0L;
     T object = null;
 
     try {
@@ -198,15 +551,47 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
       }
       S queriedDto = query.queryByKey(key);
       if (queriedDto != null) {
-        object = wrapData(queriedDto);
+        object = wrap(queriedDto);
       }
     } catch (NoPrimaryKeyException e) {
       throw new DelegateException(e.getMessage(), e);
     }
 
+    if (cache != null) {
+      cache.put(object, getCacheExpiration(expiration), stamp);
+    }
+
     return object;
   }
 
+  /**
+   * Get the near cache of wrapped business objects in front of the DAO cache.
+   * 
+   * @return the near cache, or null if the delegate does not use one
+   * @see NearCache
+   */
+  public NearCache<T> getNearCache() {
+    return nearCache;
+  }
+
+  /**
+   * Set the near cache of wrapped business objects for this delegate only,
+   * replacing the cache that the delegates for the class share.
+   * 
+   * @param nearCache the near cache, or null to stop using a near cache
+   */
+  public void setNearCache(NearCache<T> nearCache) {
+    this.nearCache = nearCache;
+  }
+
+  @Override
+  protected void evict(IPrimaryKey key) {
+    NearCache<T> cache = nearCache;
+    if (cache != null && key != null) {
+      cache.remove(key);
+    }
+  }
+
   /**
    * The concrete subclass overrides this abstract method to provide a specific
    * SQL statement object for queries.
@@ -224,6 +609,28 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
    */
   abstract protected IKeyQuerySql<S> getQueryByKeySql();
 
+  /**
+   * The concrete subclass overrides this method to provide a SQL statement
+   * object that queries a list of objects by primary key (an IN-list query),
+   * which lets getObjects() query many keys in one database round trip. The
+   * method must return a new object for each call. The default implementation
+   * returns null, and getObjects() then queries the objects one key at a time.
+   * 
+   * <pre>
+   * <code>
+   * &#064;Override
+   * protected IKeyListQuerySql&lt;TestNatural&gt; getQueryByKeyListSql() {
+   *   return new TestNaturalKeyListQuerySql();
+   * }
+   * </code>
+   * </pre>
+   * 
+   * @return the key-list SELECT SQL statement object or null
+   */
+  protected IKeyListQuerySql<S> getQueryByKeyListSql() {
+    return null;
+  }
+
   /**
    * <p>
    * Wrap a Data Access Data Transfer Object (DTO) inside a Business DTO. This
@@ -246,6 +653,24 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
    */
   abstract protected T wrapData(S dto);
 
+  /**
+   * Wrap a data-access DTO with wrapData() and, if the delegate compares
+   * snapshots, record the snapshot of its column values. The method takes a
+   * snapshot only of an EXISTING DTO, whose values match the database; a
+   * cached DTO that another caller has changed but not yet written has no
+   * snapshot, so process() always writes it.
+   * 
+   * @param dto the data access DTO
+   * @return the business DTO
+   */
+  private T wrap(S dto) {
+    T object = wrapData(dto);
+    if (snapshots && object != null && dto.getStatus() == Status.EXISTING) {
+      object.takeSnapshot();
+    }
+    return object;
+  }
+
   @Override
   public List<T> getAllObjects(int rows) throws DelegateException {
     return getAllObjects(rows, -1);
@@ -254,6 +679,24 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
   @Override
   public List<T> getAllObjects(int rows, int expiration)
       throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.QUERY,
+                     () -> queryAllObjects(rows, expiration),
+                     List::size);
+    }
+    return queryAllObjects(rows, expiration);
+  }
+
+  /**
+   * Query and wrap all the objects.
+   * 
+   * @param rows the number of rows to fetch at once
+   * @param expiration the cache expiration time in milliseconds, or -1
+   * @return the list of objects
+   * @throws DelegateException when there is a problem querying the objects
+   */
+  private List<T> queryAllObjects(int rows, int expiration)
+      throws DelegateException {
     List<T> list = new ArrayList<T>();
 
     try {
@@ -265,7 +708,7 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
       List<S> objects = query.query();
       for (S object : objects) {
         // Unchecked conversion of IDto to type S here
-        T dto = wrapData((S)object);
+        T dto = wrap((S)object);
         list.add(dto);
       }
     } catch (Throwable e) {
@@ -275,6 +718,77 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
     return list;
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The method preloads the objects for the keys that getWarmUpKeys() returns
+   * with getObjects(), which uses the key-list query if the delegate has one,
+   * or all the objects with getAllObjects() if there are no warm-up keys.
+   * </p>
+   */
+  @Override
+  public int warmUp() throws DelegateException {
+    Collection<K> keys = getWarmUpKeys();
+    List<T> objects =
+      keys != null ? getObjects(keys) : getAllObjects(WARM_UP_ROWS);
+    return cacheObjects(objects, nearCache);
+  }
+
+  /**
+   * The concrete subclass overrides this method to limit warmUp() to the
+   * objects with a set of keys, such as the most requested objects. The
+   * default implementation returns null, and warmUp() then preloads all the
+   * objects.
+   * 
+   * @return the keys of the objects to preload, or null for all objects
+   */
+  protected Collection<K> getWarmUpKeys() {
+    return null;
+  }
+
+  @Override
+  public Stream<T> streamAllObjects(int fetchSize) throws DelegateException {
+    IQuerySql<S> sql = getQueryListSql();
+    Stream<S> objects =
+      streamQuery(sql.getSql(), null, sql::getData, fetchSize);
+    return objects.map(this::wrap);
+  }
+
+  @Override
+  public <P extends IDbDto> List<T> getObjectsWithParameters(IParameterizedQuerySql<S, P> sql,
+                                                             P parameters,
+                                                             int rows)
+      throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.QUERY,
+                     () -> wrapObjects(queryObjects(sql, parameters, rows)),
+                     List::size);
+    }
+    return wrapObjects(queryObjects(sql, parameters, rows));
+  }
+
+  /**
+   * Wrap a collection of queried data-access DTOs.
+   * 
+   * @param objects the data-access DTOs
+   * @return the list of business DTOs
+   */
+  private List<T> wrapObjects(Collection<S> objects) {
+    List<T> list = new ArrayList<T>(objects.size());
+    for (S object : objects) {
+      list.add(wrap(object));
+    }
+    return list;
+  }
+
+  @Override
+  public <P extends IDbDto> Stream<T> streamObjectsWithParameters(IParameterizedQuerySql<S, P> sql,
+                                                                  P parameters,
+                                                                  int fetchSize)
+      throws DelegateException {
+    return streamObjects(sql, parameters, fetchSize).map(this::wrap);
+  }
+
   /**
    * The concrete subclass overrides this abstract method to provide a specific
    * SQL statement object for multiple-object queries.
@@ -321,11 +835,89 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
 
   @Override
   public void update(T object) throws DelegateException {
+    UpdateCoalescer<T> updates = getCoalescer(object);
+    if (updates != null) {
+      await(updates.submit(object));
+      return;
+    }
     List<T> list = new ArrayList<T>(1);
     list.add(object);
     process(list);
   }
 
+  /**
+   * Get the update coalescer if it should coalesce an update of an object:
+   * there is a coalescer, the delegate is not in write-behind mode (which
+   * coalesces on its own), the caller is not in a unit of work that the update
+   * must join, and the object is CHANGED.
+   * 
+   * @param object the object to update
+   * @return the coalescer, or null to process the object directly
+   */
+  private UpdateCoalescer<T> getCoalescer(T object) {
+    UpdateCoalescer<T> updates = coalescer;
+    if (updates == null || writeBehind != null || object == null
+        || getInlineContext() != null
+        || object.toDto().getStatus() != Status.CHANGED) {
+      return null;
+    }
+    return updates;
+  }
+
+  /**
+   * Wait for a coalesced update to commit, rethrowing any failure as a
+   * DelegateException.
+   * 
+   * @param future the future for the update
+   * @throws DelegateException when the update fails
+   */
+  private void await(CompletableFuture<?> future) throws DelegateException {
+    try {
+      future.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause() != null ? e.getCause() : e;
+      if (cause instanceof DelegateException) {
+        throw (DelegateException)cause;
+      }
+      throw new DelegateException(cause.getMessage(), cause);
+    }
+  }
+
+  /**
+   * Merge two pending updates to the same object for the update coalescer,
+   * returning the object to write. The default implementation returns the
+   * later object, so the last writer wins. Override the method to combine the
+   * updates, for example to add up counters; the method may return either
+   * object after changing it, or a new object with the same primary key.
+   * 
+   * @param older the earlier pending object
+   * @param newer the later object
+   * @return the object to write
+   */
+  protected T mergeUpdates(T older, T newer) {
+    return newer;
+  }
+
+  /**
+   * Get the coalescer that merges updates to the same key.
+   * 
+   * @return the coalescer, or null if the delegate does not coalesce updates
+   */
+  public UpdateCoalescer<T> getUpdateCoalescer() {
+    return coalescer;
+  }
+
+  /**
+   * Set the coalescer that merges updates to the same key, replacing the
+   * coalescer built from the subsystem properties. The coalescer's writer
+   * should be the write() method of a delegate of the same class.
+   * 
+   * @param coalescer the coalescer, or null to stop coalescing updates
+   */
+  public void setUpdateCoalescer(UpdateCoalescer<T> coalescer) {
+    this.coalescer = coalescer;
+  }
+
   /**
    * The concrete subclass overrides this abstract method to provide a specific
    * SQL statement object for updates.
@@ -345,7 +937,28 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
 
   @Override
   public void updateBatch(List<T> list) throws DelegateException {
-    process(list);
+    if (coalescer == null || writeBehind != null || list == null
+        || getInlineContext() != null) {
+      process(list);
+      return;
+    }
+    // Coalesce the CHANGED objects and process the rest directly.
+    List<T> others = new ArrayList<T>();
+    List<CompletableFuture<Void>> futures =
+      new ArrayList<CompletableFuture<Void>>(list.size());
+    for (T object : list) {
+      UpdateCoalescer<T> updates = getCoalescer(object);
+      if (updates != null) {
+        futures.add(updates.submit(object));
+      } else {
+        others.add(object);
+      }
+    }
+    if (!others.isEmpty()) {
+      process(others);
+    }
+    CompletableFuture<?>[] all = new CompletableFuture<?>[futures.size()];
+    await(CompletableFuture.allOf(futures.toArray(all)));
   }
 
   @Override
@@ -377,68 +990,678 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
     process(list);
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * In write-behind mode, the method checks the status of the objects, puts
+   * the objects into the DAO cache and the near cache (or removes deleted
+   * objects), and queues them for a background write, returning before the
+   * database commits. A failed background write does not reach the caller.
+   * </p>
+   */
   @Override
   public void process(List<T> list) throws DelegateException {
-    // Use a tracking thread to maintain a single transaction for all processing
-    // within this method.
-    Runnable query = getRunnable();
-    PoesysTrackingThread thread = new PoesysTrackingThread(query, subsystem);
-    // Set the instance list member to the incoming list to enable processing.
-    this.list = list;
-    thread.start();
-    // Join the thread, blocking until the thread completes or
-    // until the query times out.
+    if (metrics != null) {
+      measureWrite(Operation.PROCESS,
+                   list != null ? list.size() : 0,
+                   () -> processObjects(list));
+    } else {
+      processObjects(list);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The deadline holds for the calling thread until the method returns, so
+   * the transactions of any delegate that the thread calls process() on in
+   * the meantime share it; a nested call can shorten the deadline but not
+   * extend it. The deadline replaces the delegate's transaction timeout only
+   * when it is earlier. In write-behind mode the method queues the objects,
+   * and the background write uses the delegate's transaction timeout.
+   * </p>
+   */
+  @Override
+  public void process(List<T> list, long timeout) throws DelegateException {
+    Long previous = callDeadline.get();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    if (previous != null && previous - deadline < 0L) {
+      deadline = previous;
+    }
+    callDeadline.set(deadline);
     try {
-      thread.join(TIMEOUT);
-      if (thread.getThrowable() != null) {
-        // If there are any batch errors, throw an exception.
-        List<String> errors = thread.getBatchErrors();
-        StringBuilder builder = new StringBuilder();
-        if (errors.size() > 0) {
-          builder.append("Batch processing failed for these DTOs: ");
-          String sep = "";
-          for (String errorKey : errors) {
-            builder.append(sep);
-            builder.append(errorKey);
-            sep = ", ";
-          }
-          // Note: if there is an exception, this method throws it to the caller,
-          // which should wrap it in a DelegateException.
-        }
-        Object[] args = { builder.toString() };
-        String message = Message.getMessage(PROCESSING_ERROR, args);
-        throw new DelegateException(message, thread.getThrowable());
+      process(list);
+    } finally {
+      if (previous == null) {
+        callDeadline.remove();
+      } else {
+        callDeadline.set(previous);
       }
-    } catch (InterruptedException e) {
-      // Log and ignore this exception.
-      Object[] args = { "process list", delegateName };
-      String message = Message.getMessage(THREAD_ERROR, args);
-      logger.error(message, e);
     }
+  }
 
-    // Set the instance list member to null to make this method reentrant.
-    list = null;
+  /**
+   * Get the transaction mode of process().
+   * 
+   * @return the transaction mode
+   */
+  public TransactionContext.Mode getTransactionMode() {
+    return transactionMode;
   }
 
   /**
-   * Get a Runnable object for the tracking thread to run.
+   * Set the transaction mode of process(), replacing the transaction_mode
+   * property of the subsystem. In INLINE mode, the default, process() called
+   * within a TransactionContext unit of work of the delegate's subsystem
+   * writes the objects on the calling thread in the unit's transaction, which
+   * commits or rolls back when the unit ends; outside a unit of work it runs
+   * its own transaction as in HANDOFF mode. In HANDOFF mode, process() always
+   * writes in a new tracking thread and a transaction of its own.
    * 
-   * @return the Runnable object
+   * @param transactionMode the transaction mode
    */
-  private Runnable getRunnable() {
-    Runnable runnable = new Runnable() {
-      public void run() {
-        // Get the tracking thread.
-        PoesysTrackingThread thread =
-          (PoesysTrackingThread)Thread.currentThread();
-        try {
-          doProcessing(thread);
-        } catch (Throwable e) {
+  public void setTransactionMode(TransactionContext.Mode transactionMode) {
+    this.transactionMode = transactionMode;
+  }
+
+  /**
+   * Get the transaction context in which process() writes inline: the context
+   * of the calling thread if the delegate is in INLINE mode and the context
+   * has the delegate's subsystem.
+   * 
+   * @return the context, or null if process() runs its own transaction
+   */
+  private ITransactionContext getInlineContext() {
+    if (transactionMode != TransactionContext.Mode.INLINE) {
+      return null;
+    }
+    ITransactionContext context = TransactionContext.getCurrent();
+    return context != null && context.getSubsystem().equals(subsystem)
+      ? context : null;
+  }
+
+  /**
+   * Get the deadline for a transaction that starts now: the delegate's
+   * transaction timeout from now, or the deadline of the calling thread if
+   * that is earlier.
+   * 
+   * @return the deadline in System.nanoTime() terms
+   */
+  @Override
+  protected long getDeadline() {
+    long deadline = super.getDeadline();
+    Long call = callDeadline.get();
+    return call != null && call - deadline < 0L ? call : deadline;
+  }
+
+  /**
+   * Write the objects synchronously or queue them for a background write.
+   * 
+   * @param list the objects to process
+   * @throws DelegateException when there is a problem processing the objects
+   */
+  private void processObjects(List<T> list) throws DelegateException {
+    WriteBehindQueue<T> queue = writeBehind;
+    // Objects written within a unit of work belong to its transaction.
+    if (queue != null && list != null && getInlineContext() == null) {
+      enqueue(queue, list);
+    } else {
+      write(list);
+    }
+  }
+
+  /**
+   * Check, cache, and queue a list of objects for a background write.
+   * 
+   * @param queue the write-behind queue
+   * @param list the objects to write
+   * @throws DelegateException when an object is null or has a status that
+   *           process() cannot write, or when the queue rejects the objects
+   */
+  private void enqueue(WriteBehindQueue<T> queue, List<T> list)
+      throws DelegateException {
+    for (T object : list) {
+      if (object == null) {
+        throw new DelegateException(Message.getMessage(NO_OBJECT, null));
+      }
+      Status status = object.toDto().getStatus();
+      if (status == Status.FAILED || status == Status.DELETED_FROM_DATABASE) {
+        Object[] args = { object.getPrimaryKey().getStringKey(), status };
+        String message = Message.getMessage(WRITE_BEHIND_STATUS_ERROR, args);
+        throw new DelegateException(message);
+      }
+    }
+
+    // Update the caches now so readers see the queued state.
+    int cacheExpiration = (int)getCacheExpiration(-1);
+    NearCache<T> cache = nearCache;
+    for (T object : list) {
+      S dto = object.toDto();
+      Status status = dto.getStatus();
+      if (status == Status.DELETED || status == Status.CASCADE_DELETED) {
+        manager.removeObjectFromCache(dto.getClass().getName(),
+                                      dto.getPrimaryKey());
+        evict(object.getPrimaryKey());
+      } else {
+        manager.putObjectInCache(dto.getClass().getName(),
+                                 cacheExpiration,
+                                 dto);
+        if (cache != null) {
+          cache.put(object, cacheExpiration, cache.getStamp());
+        }
+      }
+    }
+    invalidateQueryCaches();
+    queue.enqueue(list);
+  }
+
+  /**
+   * Write a list of objects to the database in one transaction, deleting,
+   * inserting, and updating them according to their status. This is the
+   * synchronous process() and the writer for write-behind mode. If the
+   * delegate has more than one partition and the list has at least the
+   * minimum number of objects, the method writes the list in parallel
+   * partitions (see setParallelism()). Within a unit of work in INLINE mode,
+   * the method writes the list on the calling thread in the unit's
+   * transaction.
+   * 
+   * @param list the objects to write
+   * @throws DelegateException when there is a problem processing the objects
+   */
+  protected void write(List<T> list) throws DelegateException {
+    skipUnchangedObjects(list);
+    ITransactionContext context = getInlineContext();
+    if (context != null) {
+      writeInline(list, context);
+      return;
+    }
+    int n = partitions;
+    if (n > 1 && list != null && list.size() >= minPartitionedObjects
+        && list.size() > 1) {
+      writePartitioned(list, n);
+      return;
+    }
+    long deadline = getDeadline();
+    // Use a tracking thread to maintain a single transaction for all processing
+    // within this method.
+    AtomicInteger decision = new AtomicInteger(UNDECIDED);
+    Runnable query = getRunnable(list, decision);
+    // Run the thread through the subsystem's transaction executor, blocking
+    // until the thread completes or until the deadline passes.
+    List<PoesysTrackingThread> threads = new ArrayList<PoesysTrackingThread>(1);
+    try {
+      PoesysTrackingThread thread = executor.start(query, deadline);
+      threads.add(thread);
+      if (!TransactionExecutor.join(thread, deadline)) {
+        awaitOrCancel(threads, decision, list.size());
+      }
+      if (thread.getThrowable() != null) {
+        // If there are any batch errors, throw an exception.
+        throw new DelegateException(getProcessingMessage(thread),
+                                    thread.getThrowable());
+      }
+      clearChangedProperties(list);
+    } catch (InterruptedException e) {
+      throw interrupted(threads, decision, e);
+    } finally {
+      // The objects may have changed whether or not the transaction succeeded.
+      evictObjects(list);
+      invalidateQueryCaches();
+    }
+  }
+
+  /**
+   * Write a batch of objects from the write-behind queue in one transaction.
+   * The enqueue() method put the objects in the DAO cache when it queued
+   * them, so if the write fails, the method removes them from the cache to
+   * keep readers from seeing changes that the database does not have.
+   * 
+   * @param list the queued objects to write
+   * @throws DelegateException when there is a problem processing the objects
+   */
+  protected void writeQueued(List<T> list) throws DelegateException {
+    try {
+      write(list);
+    } catch (RuntimeException e) {
+      for (T object : list) {
+        if (object != null) {
+          S dto = object.toDto();
+          manager.removeObjectFromCache(dto.getClass().getName(),
+                                        dto.getPrimaryKey());
+        }
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Write a list of objects on the calling thread in the transaction of a
+   * unit of work. The unit's transaction commits or rolls back the objects
+   * later, so the method defers clearing their changed properties and
+   * evicting them from the caches until it completes; a failure marks the
+   * transaction to roll back.
+   * 
+   * @param list the objects to write
+   * @param context the transaction context of the unit of work
+   * @throws DelegateException when there is a problem processing the objects
+   */
+  private void writeInline(final List<T> list,
+                           final ITransactionContext context)
+      throws DelegateException {
+    context.afterCompletion(() -> {
+      if (!context.isRollbackOnly()) {
+        clearChangedProperties(list);
+      }
+      // The objects may have changed whether or not the transaction committed.
+      evictObjects(list);
+      invalidateQueryCaches();
+    });
+    PoesysTrackingThread thread = context.getTrackingThread();
+    try {
+      doProcessing(thread, list, false);
+    } catch (RuntimeException e) {
+      context.setRollbackOnly();
+      throw new DelegateException(getProcessingMessage(thread), e);
+    }
+  }
+
+  /**
+   * Get the error message for a failed transaction with the batch errors of
+   * its tracking thread.
+   * 
+   * @param thread the tracking thread
+   * @return the message
+   */
+  private String getProcessingMessage(PoesysTrackingThread thread) {
+    List<String> errors = thread.getBatchErrors();
+    StringBuilder builder = new StringBuilder();
+    if (errors.size() > 0) {
+      builder.append("Batch processing failed for these DTOs: ");
+      builder.append(String.join(", ", errors));
+    }
+    Object[] args = { builder.toString() };
+    return Message.getMessage(PROCESSING_ERROR, args);
+  }
+
+  /**
+   * Write a list of objects in parallel partitions. Each partition is a
+   * contiguous run of top-level objects that the method writes with their
+   * nested objects in its own tracking thread and connection, so a parent and
+   * its children always share a connection and never wait on each other's
+   * locks. The partitions do not commit as they finish; each waits until all
+   * the partitions have written, then all of them commit if every partition
+   * succeeded or all of them roll back if any failed or the wait timed out.
+   * The executor starts the partitions together once it has a permit for
+   * every one of them, so concurrent parallel writes never each hold some of
+   * the permits while their started partitions wait for the rest.
+   * 
+   * @param list the objects to write
+   * @param n the number of partitions
+   * @throws DelegateException when there is a problem processing the objects
+   */
+  private void writePartitioned(List<T> list, int n) throws DelegateException {
+    long deadline = getDeadline();
+    // A bounded executor cannot start more partitions than it has permits.
+    int max = executor.getMaxTransactions();
+    if (max > 0) {
+      n = Math.min(n, max);
+    }
+    int size = (list.size() + n - 1) / n;
+    int count = (list.size() + size - 1) / size;
+    CountDownLatch written = new CountDownLatch(count);
+    AtomicBoolean failed = new AtomicBoolean(false);
+    AtomicInteger decision = new AtomicInteger(UNDECIDED);
+    List<Runnable> runnables = new ArrayList<Runnable>(count);
+    for (int i = 0; i < list.size(); i += size) {
+      List<T> partition = list.subList(i, Math.min(i + size, list.size()));
+      runnables.add(getPartitionRunnable(partition,
+                                         written,
+                                         failed,
+                                         decision,
+                                         deadline));
+    }
+    List<PoesysTrackingThread> threads =
+      new ArrayList<PoesysTrackingThread>(count);
+    try {
+      boolean started = false;
+      try {
+        threads = executor.start(runnables, deadline);
+        started = true;
+      } finally {
+        if (!started) {
+          // Report the partitions as failed so any that did start roll back
+          // rather than wait for the rest.
+          failed.set(true);
+          for (int i = 0; i < count; i++) {
+            written.countDown();
+          }
+        }
+      }
+
+      for (PoesysTrackingThread thread : threads) {
+        if (!TransactionExecutor.join(thread, deadline)) {
+          awaitOrCancel(threads, decision, list.size());
+          break;
+        }
+      }
+      Throwable throwable = null;
+      List<String> errors = new ArrayList<String>();
+      for (PoesysTrackingThread thread : threads) {
+        if (thread.getThrowable() != null) {
+          if (throwable == null) {
+            throwable = thread.getThrowable();
+          }
+          errors.addAll(thread.getBatchErrors());
+        }
+      }
+      if (throwable != null) {
+        StringBuilder builder = new StringBuilder();
+        if (errors.size() > 0) {
+          builder.append("Batch processing failed for these DTOs: ");
+          builder.append(String.join(", ", errors));
+        }
+        Object[] args = { builder.toString() };
+        String message = Message.getMessage(PROCESSING_ERROR, args);
+        throw new DelegateException(message, throwable);
+      }
+      clearChangedProperties(list);
+    } catch (InterruptedException e) {
+      throw interrupted(threads, decision, e);
+    } finally {
+      evictObjects(list);
+      invalidateQueryCaches();
+    }
+  }
+
+  /**
+   * Get a Runnable object that writes one partition of a parallel write, then
+   * waits for the other partitions and commits or rolls back with them. The
+   * first partition to decide sets the outcome for all of them.
+   * 
+   * @param partition the objects to write in the partition
+   * @param written counts down as each partition finishes writing
+   * @param failed set when any partition fails
+   * @param decision the shared commit or rollback decision
+   * @param deadline the time in System.nanoTime() terms after which the
+   *          partitions stop waiting for each other and roll back
+   * @return the Runnable object
+   */
+  private Runnable getPartitionRunnable(final List<T> partition,
+                                        final CountDownLatch written,
+                                        final AtomicBoolean failed,
+                                        final AtomicInteger decision,
+                                        final long deadline) {
+    Runnable runnable = new Runnable() {
+      public void run() {
+        PoesysTrackingThread thread =
+          (PoesysTrackingThread)Thread.currentThread();
+        try {
+          try {
+            doProcessing(thread, partition, true);
+          } catch (Throwable e) {
+            thread.setThrowable(e);
+            failed.set(true);
+          }
+          written.countDown();
+          boolean complete = false;
+          try {
+            complete =
+              written.await(deadline - System.nanoTime(),
+                            TimeUnit.NANOSECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          int outcome = complete && !failed.get() ? COMMIT : ROLLBACK;
+          decision.compareAndSet(UNDECIDED, outcome);
+          if (decision.get() != COMMIT) {
+            thread.rollback();
+            if (thread.getThrowable() == null) {
+              Object[] args = { partition.size() };
+              String message = Message.getMessage(PARTITION_ROLLBACK, args);
+              thread.setThrowable(new DelegateException(message));
+            }
+          }
+        } catch (Throwable e) {
+          if (thread.getThrowable() == null) {
+            thread.setThrowable(e);
+          }
+        } finally {
+          TransactionExecutor.closeConnection(thread);
+        }
+      }
+    };
+    return runnable;
+  }
+
+  /**
+   * Handle a transaction that missed its deadline. If the transaction has
+   * already decided to commit, the method waits for the commit, which is
+   * underway; otherwise it cancels the transaction and throws a timeout
+   * exception.
+   * 
+   * @param threads the tracking threads of the transaction
+   * @param decision the commit or rollback decision of the transaction
+   * @param size the number of objects in the transaction
+   * @throws DelegateTimeoutException when the method cancels the transaction
+   * @throws InterruptedException when the calling thread is interrupted while
+   *           waiting for the commit
+   */
+  private void awaitOrCancel(List<PoesysTrackingThread> threads,
+                             AtomicInteger decision,
+                             int size) throws InterruptedException {
+    if (!cancel(threads, decision)) {
+      for (PoesysTrackingThread thread : threads) {
+        thread.join();
+      }
+      return;
+    }
+    Object[] args = { size, delegateName };
+    throw new DelegateTimeoutException(Message.getMessage(TIMEOUT_ERROR, args));
+  }
+
+  /**
+   * Cancel a transaction when the calling thread is interrupted while it
+   * waits for the transaction, restoring the interrupt status.
+   * 
+   * @param threads the tracking threads of the transaction, if started
+   * @param decision the commit or rollback decision of the transaction
+   * @param e the interruption
+   * @return the exception to throw
+   */
+  private DelegateException interrupted(List<PoesysTrackingThread> threads,
+                                        AtomicInteger decision,
+                                        InterruptedException e) {
+    cancel(threads, decision);
+    Thread.currentThread().interrupt();
+    Object[] args = { "process list", delegateName };
+    return new DelegateException(Message.getMessage(THREAD_ERROR, args), e);
+  }
+
+  /**
+   * Cancel a transaction unless it has already decided to commit. The method
+   * decides to roll back, then aborts each tracking thread that is still
+   * running (see TransactionExecutor.abort()).
+   * 
+   * @param threads the tracking threads of the transaction
+   * @param decision the commit or rollback decision of the transaction
+   * @return true if the transaction rolls back, false if it commits
+   */
+  private static boolean cancel(List<PoesysTrackingThread> threads,
+                                AtomicInteger decision) {
+    decision.compareAndSet(UNDECIDED, ROLLBACK);
+    if (decision.get() == COMMIT) {
+      return false;
+    }
+    for (PoesysTrackingThread thread : threads) {
+      TransactionExecutor.abort(thread);
+    }
+    return true;
+  }
+
+  /**
+   * Get the number of partitions for a parallel write.
+   * 
+   * @return the number of partitions, 1 if process() writes serially
+   */
+  public int getPartitions() {
+    return partitions;
+  }
+
+  /**
+   * Get the minimum number of objects for which process() writes in parallel.
+   * 
+   * @return the minimum number of objects
+   */
+  public int getMinPartitionedObjects() {
+    return minPartitionedObjects;
+  }
+
+  /**
+   * <p>
+   * Set the parallelism of process(), replacing the parallel_partitions and
+   * parallel_min_objects properties of the subsystem. When the list has at
+   * least the minimum number of objects, process() splits it into contiguous
+   * partitions of independent top-level objects and writes each partition,
+   * with its nested objects, in its own connection at the same time. The
+   * partitions commit together after all of them have written, or roll back
+   * together if any fails.
+   * </p>
+   * <p>
+   * This is a coordinated commit, not a two-phase commit: a crash or a lost
+   * connection between the individual commits can leave some partitions
+   * committed. The top-level objects must be independent, so no two
+   * partitions write the same rows; objects that share nested objects or
+   * reference each other must go through a serial process().
+   * </p>
+   * 
+   * @param partitions the number of partitions, 1 to write serially
+   * @param minObjects the minimum number of objects for a parallel write
+   */
+  public void setParallelism(int partitions, int minObjects) {
+    this.partitions = Math.max(1, partitions);
+    this.minPartitionedObjects = minObjects;
+  }
+
+  /**
+   * Forget the changed properties of the objects after a successful write.
+   * 
+   * @param list the written objects
+   */
+  protected void clearChangedProperties(List<T> list) {
+    boolean snapshot = snapshots;
+    for (T object : list) {
+      if (object != null) {
+        object.clearChangedProperties();
+        if (snapshot) {
+          object.takeSnapshot();
+        }
+      }
+    }
+  }
+
+  /**
+   * If the delegate compares snapshots, set the CHANGED objects whose column
+   * values equal their snapshots back to EXISTING, so the updater does not
+   * issue an UPDATE that changes nothing. The objects still go to the updater
+   * for their nested objects.
+   * 
+   * @param list the objects to process
+   */
+  protected void skipUnchangedObjects(List<T> list) {
+    if (!snapshots || list == null) {
+      return;
+    }
+    for (T object : list) {
+      if (object != null && object.toDto().getStatus() == Status.CHANGED
+          && object.matchesSnapshot()) {
+        object.toDto().setExisting();
+        object.clearChangedProperties();
+        skippedUpdates.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Get the number of UPDATE statements that snapshot comparison has avoided
+   * for all the delegates of this class in the subsystem.
+   * 
+   * @return the number of skipped updates
+   */
+  public long getSkippedUpdates() {
+    return skippedUpdates.get();
+  }
+
+  /**
+   * Does process() compare CHANGED objects with their snapshots?
+   * 
+   * @return true if the delegate compares snapshots
+   */
+  public boolean isSnapshotUpdates() {
+    return snapshots;
+  }
+
+  /**
+   * Turn snapshot comparison on or off, replacing the snapshot_updates
+   * property of the subsystem. With comparison on, the delegate records the
+   * column values of each object it wraps or writes, and process() sets a
+   * CHANGED object back to EXISTING without an UPDATE when its values equal
+   * the recorded values. The business DTO supplies the values by overriding
+   * AbstractDto.getColumnValues(); DTOs that do not are always updated.
+   * Objects wrapped while comparison was off have no snapshot until the
+   * delegate writes them.
+   * 
+   * @param snapshots true to compare snapshots
+   */
+  public void setSnapshotUpdates(boolean snapshots) {
+    this.snapshots = snapshots;
+  }
+
+  /**
+   * Remove a list of business objects from the delegate's near cache after
+   * processing them, so the next query gets the processed state.
+   * 
+   * @param list the processed objects
+   */
+  protected void evictObjects(List<T> list) {
+    if (nearCache != null && list != null) {
+      for (T object : list) {
+        if (object != null) {
+          evict(object.getPrimaryKey());
+        }
+      }
+    }
+  }
+
+  /**
+   * Get a Runnable object for the tracking thread to run. The Runnable holds
+   * the list to process, so concurrent calls never share a list. When the
+   * processing ends, the Runnable completes the transaction unless the caller
+   * has already cancelled it, in which case it rolls back.
+   * 
+   * @param list the list of DTOs to process
+   * @param decision the commit or rollback decision of the transaction
+   * @return the Runnable object
+   */
+  private Runnable getRunnable(final List<T> list,
+                               final AtomicInteger decision) {
+    Runnable runnable = new Runnable() {
+      public void run() {
+        // Get the tracking thread.
+        PoesysTrackingThread thread =
+          (PoesysTrackingThread)Thread.currentThread();
+        try {
+          doProcessing(thread, list, true);
+        } catch (Throwable e) {
           thread.setThrowable(e);
         } finally {
-          if (thread != null) {
-            thread.closeConnection();
+          if (!decision.compareAndSet(UNDECIDED, COMMIT)) {
+            try {
+              thread.rollback();
+            } catch (RuntimeException e) {
+              logger.debug("Rollback failed after cancellation", e);
+            }
           }
+          TransactionExecutor.closeConnection(thread);
         }
       }
     };
@@ -450,8 +1673,13 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
    * DelegateException with any batch-processing errors.
    * 
    * @param thread the Poesys tracking thread for the transaction
+   * @param list the list of DTOs to process
+   * @param newTransaction true if the processing starts the transaction of
+   *          the thread, so the thread does not yet track any DTOs
    */
-  private void doProcessing(PoesysTrackingThread thread) {
+  private void doProcessing(PoesysTrackingThread thread,
+                            List<T> list,
+                            boolean newTransaction) {
     // Create the 3 DAOs for inserting, updating, and deleting.
     IInsertBatch<S> inserter = factory.getInsertBatch(getInsertSql());
     IUpdateBatch<S> updater = factory.getUpdateBatch(getUpdateSql());
@@ -459,41 +1687,171 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
 
     Collection<S> dtos = convertDtoList(list);
 
-    // Add the EXISTING DTOs to the tracking thread. The DAOs never process
-    // EXISTING DTOs.
-    for (IDbDto dto : dtos) {
-      if (dto.getStatus() == Status.EXISTING
-          && thread.getDto(dto.getPrimaryKey()) == null) {
-        // Not in thread yet, add it to track the DTO.
-        thread.addDto(dto);
+    // Partition the DTOs by status in a single pass, collecting the EXISTING
+    // DTOs for the tracking thread. Each DAO then gets only the DTOs it
+    // processes. The updater gets all the DTOs that are not being deleted,
+    // because it also preprocesses the nested objects of unchanged DTOs.
+    List<S> inserts = new ArrayList<S>();
+    List<S> updates = new ArrayList<S>();
+    List<S> deletes = new ArrayList<S>();
+    List<S> existing = new ArrayList<S>();
+    List<S> live = new ArrayList<S>(dtos.size());
+    for (S dto : dtos) {
+      Status status = dto.getStatus();
+      if (status == Status.DELETED || status == Status.CASCADE_DELETED) {
+        deletes.add(dto);
+        continue;
+      }
+      if (status == Status.NEW) {
+        inserts.add(dto);
+      } else if (status == Status.CHANGED) {
+        updates.add(dto);
+      } else if (status == Status.EXISTING) {
+        existing.add(dto);
       }
+      live.add(dto);
     }
+    // Track the EXISTING DTOs in one pass.
+    ExistingDtoTracker.track(thread, existing, newTransaction);
+
+    // Take the CHANGED DTOs that have a narrower UPDATE for their changed
+    // properties out of the full-row update.
+    Map<IUpdateSql<S>, List<S>> narrowUpdates = groupChangedObjects(list);
+    if (!narrowUpdates.isEmpty()) {
+      Map<S, Boolean> grouped = new IdentityHashMap<S, Boolean>();
+      for (List<S> group : narrowUpdates.values()) {
+        for (S dto : group) {
+          grouped.put(dto, Boolean.TRUE);
+        }
+      }
+      live.removeIf(grouped::containsKey);
+    }
+    // The full-row updater issues an UPDATE only for the CHANGED DTOs left in
+    // it, so size its batch by those.
+    int fullUpdates = 0;
+    for (S dto : live) {
+      if (dto.getStatus() == Status.CHANGED) {
+        fullUpdates++;
+      }
+    }
+
+    // Get the policy once so the whole transaction uses the same policy.
+    BatchPolicy policy = batchPolicy;
 
     try {
-      // Each DAO processes the top-level DTO according to its status.
-      if (deleter != null) {
-        deleter.delete(dtos, dtos.size() / 2);
+      if (deleter != null && !deletes.isEmpty()) {
+        int size =
+          policy.getBatchSize(BatchPolicy.Operation.DELETE, deletes.size());
+        long start = System.nanoTime();
+        deleter.delete(deletes, size);
+        policy.recordBatch(BatchPolicy.Operation.DELETE,
+                           deletes.size(),
+                           size,
+                           System.nanoTime() - start);
       }
 
       // Inserter always exists.
-      inserter.insert(dtos, dtos.size() / 2);
-      // INSERT done, set NEW to EXISTING
-      for (IDbDto dto : dtos) {
-        if (dto.getStatus().equals(Status.NEW)) {
-          dto.setExisting();
+      if (!inserts.isEmpty()) {
+        int size =
+          policy.getBatchSize(BatchPolicy.Operation.INSERT, inserts.size());
+        long start = System.nanoTime();
+        inserter.insert(inserts, size);
+        policy.recordBatch(BatchPolicy.Operation.INSERT,
+                           inserts.size(),
+                           size,
+                           System.nanoTime() - start);
+        // INSERT done, set NEW to EXISTING
+        for (S dto : inserts) {
+          if (dto.getStatus() == Status.NEW) {
+            dto.setExisting();
+          }
         }
       }
 
-      if (updater != null) {
-        updater.update(dtos, dtos.size() / 2);
+      for (Map.Entry<IUpdateSql<S>, List<S>> group : narrowUpdates.entrySet()) {
+        List<S> groupDtos = group.getValue();
+        IUpdateBatch<S> narrowUpdater = factory.getUpdateBatch(group.getKey());
+        int size =
+          policy.getBatchSize(BatchPolicy.Operation.UPDATE, groupDtos.size());
+        long start = System.nanoTime();
+        narrowUpdater.update(groupDtos, size);
+        policy.recordBatch(BatchPolicy.Operation.UPDATE,
+                           groupDtos.size(),
+                           size,
+                           System.nanoTime() - start);
+      }
+
+      if (updater != null && !live.isEmpty()) {
+        int size =
+          policy.getBatchSize(BatchPolicy.Operation.UPDATE, fullUpdates);
+        long start = System.nanoTime();
+        updater.update(live, size);
+        if (fullUpdates > 0) {
+          policy.recordBatch(BatchPolicy.Operation.UPDATE,
+                             fullUpdates,
+                             size,
+                             System.nanoTime() - start);
+        }
       }
 
       postprocess(dtos, thread);
     } finally {
-      // Finalize inserts and deletes.
-      finalizeStatus(dtos, Status.EXISTING);
-      finalizeStatus(dtos, Status.DELETED);
+      // Finalize inserts, updates, and deletes; unchanged DTOs have nothing
+      // to finalize.
+      finalizeStatus(inserts, Status.EXISTING);
+      finalizeStatus(updates, Status.EXISTING);
+      finalizeStatus(deletes, Status.DELETED);
+    }
+  }
+
+  /**
+   * Group the CHANGED objects of a list by the set of properties changed since
+   * the last write, keeping only the groups for which getUpdateSql(Set)
+   * returns an UPDATE. Objects that do not track their properties, or whose
+   * property set has no UPDATE, stay in the full-row update.
+   * 
+   * @param list the objects to process
+   * @return the DTOs to update by UPDATE statement, in list order
+   */
+  protected Map<IUpdateSql<S>, List<S>> groupChangedObjects(List<T> list) {
+    Map<IUpdateSql<S>, List<S>> groups =
+      new LinkedHashMap<IUpdateSql<S>, List<S>>();
+    Map<Set<String>, IUpdateSql<S>> sqls =
+      new HashMap<Set<String>, IUpdateSql<S>>();
+    for (T object : list) {
+      S dto = object.toDto();
+      if (dto.getStatus() != Status.CHANGED) {
+        continue;
+      }
+      Set<String> properties = object.getChangedProperties();
+      if (properties == null || properties.isEmpty()) {
+        continue;
+      }
+      Set<String> signature = new TreeSet<String>(properties);
+      IUpdateSql<S> sql = sqls.get(signature);
+      if (sql == null && !sqls.containsKey(signature)) {
+        sql = getUpdateSql(Collections.unmodifiableSet(signature));
+        sqls.put(signature, sql);
+      }
+      if (sql != null) {
+        groups.computeIfAbsent(sql, s -> new ArrayList<S>()).add(dto);
+      }
     }
+    return groups;
+  }
+
+  /**
+   * Get the SQL for an UPDATE of just the columns for a set of changed
+   * properties, which the business DTO records with setChanged(). The SQL
+   * sets the parameters for those columns followed by the primary key, like
+   * the full-row UPDATE from getUpdateSql(). The default implementation
+   * returns null, which updates all the columns.
+   * 
+   * @param properties the sorted names of the changed properties
+   * @return the UPDATE SQL, or null to update all the columns
+   */
+  protected IUpdateSql<S> getUpdateSql(Set<String> properties) {
+    return null;
   }
 
   /**
@@ -521,9 +1879,10 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
 
   /**
    * Convert an input list of business-layer DTOs of type T to an output
-   * collection of type R. The implementation uses a thread-safe
-   * CopyOnWriteArrayList. This requires an unchecked up-cast to the type, so
-   * you should be sure the R type is a superclass of S.
+   * collection of type R. The implementation uses an ArrayList sized to the
+   * input list; the collection belongs to the calling transaction, so it need
+   * not be thread-safe. This requires an unchecked up-cast to the type, so you
+   * should be sure the R type is a superclass of S.
    * 
    * @param <R> R is an IDbDto that is a superclass of S or S itself, which
    *          permits you to convert a list of T objects to a list of S objects
@@ -533,7 +1892,7 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
    */
   @SuppressWarnings("unchecked")
   protected <R extends IDbDto> Collection<R> convertDtoList(List<T> list) {
-    Collection<R> dbList = new CopyOnWriteArrayList<R>();
+    Collection<R> dbList = new ArrayList<R>(list.size());
     for (T dto : list) {
       // Extract data-access DTO from business DTO.
       dbList.add((R)dto.toDto());
@@ -598,10 +1957,246 @@ abstract public class AbstractDataDelegate<T extends IDto<S>, S extends IDbDto,
     }
   }
 
+  @Override
+  public void flushWrites() {
+    WriteBehindQueue<T> queue = writeBehind;
+    if (queue != null) {
+      queue.flush();
+    }
+  }
+
+  /**
+   * Get the write-behind queue of the delegate.
+   * 
+   * @return the queue, or null if the delegate processes synchronously
+   */
+  public WriteBehindQueue<T> getWriteBehindQueue() {
+    return writeBehind;
+  }
+
+  /**
+   * Set the write-behind queue, replacing the queue built from the subsystem
+   * properties. The queue's writer should be the writeQueued() method of a
+   * delegate of the same class. The method flushes any queue it replaces.
+   * 
+   * @param writeBehind the queue, or null to process synchronously
+   */
+  public void setWriteBehindQueue(WriteBehindQueue<T> writeBehind) {
+    WriteBehindQueue<T> old = this.writeBehind;
+    this.writeBehind = writeBehind;
+    if (old != null && old != writeBehind) {
+      old.flush();
+    }
+  }
+
   @Override
   public void truncateTable(String tableName) throws DelegateException {
+    if (metrics != null) {
+      measureWrite(Operation.TRUNCATE, 0, () -> truncate(tableName));
+    } else {
+      truncate(tableName);
+    }
+  }
+
+  /**
+   * Truncate a table and clear the caches of the delegate class.
+   * 
+   * @param tableName the name of the table
+   * @throws DelegateException when there is a problem truncating the table
+   */
+  private void truncate(String tableName) throws DelegateException {
+    // Write any queued objects first so they do not reappear afterward.
+    flushWrites();
     ISql sql = new TruncateTableSql(tableName);
     IExecuteSql executive = new ExecuteSql(sql, subsystem);
     executive.execute();
+    NearCache<T> cache = nearCache;
+    if (cache != null) {
+      cache.clear();
+    }
+    invalidateQueryCaches();
+  }
+
+  /**
+   * Get the executor that runs the asynchronous operations of the delegate.
+   * The default is the shared asynchronous executor for the subsystem.
+   * 
+   * @return the executor
+   * @see AsyncDelegateExecutor
+   */
+  public Executor getAsyncExecutor() {
+    return asyncExecutor;
+  }
+
+  /**
+   * Set the executor that runs the asynchronous operations of the delegate.
+   * 
+   * @param asyncExecutor the executor
+   */
+  public void setAsyncExecutor(Executor asyncExecutor) {
+    this.asyncExecutor = asyncExecutor;
+  }
+
+  /**
+   * Get the policy that sets the JDBC batch sizes for the delete, insert, and
+   * update batches of the process method. The default is a policy built from
+   * the subsystem properties.
+   * 
+   * @return the batch policy
+   * @see BatchPolicy#getInstance(String)
+   */
+  public BatchPolicy getBatchPolicy() {
+    return batchPolicy;
+  }
+
+  /**
+   * Set the policy that sets the JDBC batch sizes for the process method.
+   * 
+   * @param batchPolicy the batch policy
+   */
+  public void setBatchPolicy(BatchPolicy batchPolicy) {
+    this.batchPolicy = batchPolicy;
+  }
+
+  /**
+   * Run a delegate operation on the asynchronous executor, completing the
+   * returned future with the operation's result or exceptionally with the
+   * DelegateException the operation throws. The method wraps any other
+   * exception in a DelegateException.
+   * 
+   * @param <R> the type of the operation's result
+   * @param operation the synchronous delegate operation to run
+   * @return a future for the result
+   */
+  protected <R> CompletableFuture<R> supplyAsync(final Supplier<R> operation) {
+    final CompletableFuture<R> future = new CompletableFuture<R>();
+    try {
+      asyncExecutor.execute(() -> {
+        try {
+          future.complete(operation.get());
+        } catch (DelegateException e) {
+          future.completeExceptionally(e);
+        } catch (Throwable e) {
+          future.completeExceptionally(new DelegateException(e.getMessage(), e));
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      Object[] args = { delegateName };
+      String message = Message.getMessage(ASYNC_REJECTED_ERROR, args);
+      future.completeExceptionally(new DelegateException(message, e));
+    }
+    return future;
+  }
+
+  /**
+   * Run a delegate operation that has no result on the asynchronous executor.
+   * 
+   * @param operation the synchronous delegate operation to run
+   * @return a future that completes when the operation completes
+   * @see #supplyAsync(Supplier)
+   */
+  protected CompletableFuture<Void> runAsync(final Runnable operation) {
+    return supplyAsync(() -> {
+      operation.run();
+      return null;
+    });
+  }
+
+  @Override
+  public CompletableFuture<T> getObjectAsync(final K key) {
+    return supplyAsync(() -> getObject(key));
+  }
+
+  @Override
+  public CompletableFuture<T> getObjectAsync(final K key, final int expiration) {
+    return supplyAsync(() -> getObject(key, expiration));
+  }
+
+  @Override
+  public CompletableFuture<List<T>> getObjectsAsync(final Collection<K> keys) {
+    return supplyAsync(() -> getObjects(keys));
+  }
+
+  @Override
+  public CompletableFuture<T> getDatabaseObjectAsync(final K key) {
+    return supplyAsync(() -> getDatabaseObject(key));
+  }
+
+  @Override
+  public CompletableFuture<T> getDatabaseObjectAsync(final K key,
+                                                     final int expiration) {
+    return supplyAsync(() -> getDatabaseObject(key, expiration));
+  }
+
+  @Override
+  public CompletableFuture<List<T>> getAllObjectsAsync(final int rows) {
+    return supplyAsync(() -> getAllObjects(rows));
+  }
+
+  @Override
+  public CompletableFuture<List<T>> getAllObjectsAsync(final int rows,
+                                                       final int expiration) {
+    return supplyAsync(() -> getAllObjects(rows, expiration));
+  }
+
+  @Override
+  public CompletableFuture<Void> insertAsync(final List<T> list) {
+    return runAsync(() -> insert(list));
+  }
+
+  @Override
+  public CompletableFuture<Void> insertAsync(final T object) {
+    return runAsync(() -> insert(object));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateAsync(final T object) {
+    if (getInlineContext() != null) {
+      // The update joins the caller's unit of work, so it runs on the caller.
+      CompletableFuture<Void> future = new CompletableFuture<Void>();
+      try {
+        update(object);
+        future.complete(null);
+      } catch (RuntimeException e) {
+        future.completeExceptionally(e);
+      }
+      return future;
+    }
+    UpdateCoalescer<T> updates = getCoalescer(object);
+    if (updates != null) {
+      // The coalesced write completes the future; no thread need wait.
+      return updates.submit(object);
+    }
+    return runAsync(() -> update(object));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateBatchAsync(final List<T> list) {
+    return runAsync(() -> updateBatch(list));
+  }
+
+  @Override
+  public CompletableFuture<Void> deleteAsync(final T object) {
+    return runAsync(() -> delete(object));
+  }
+
+  @Override
+  public CompletableFuture<Void> deleteBatchAsync(final List<T> list) {
+    return runAsync(() -> deleteBatch(list));
+  }
+
+  @Override
+  public CompletableFuture<Void> processAsync(final List<T> list) {
+    return runAsync(() -> process(list));
+  }
+
+  @Override
+  public CompletableFuture<Void> processAsync(final T object) {
+    return runAsync(() -> process(object));
+  }
+
+  @Override
+  public CompletableFuture<Void> truncateTableAsync(final String tableName) {
+    return runAsync(() -> truncateTable(tableName));
   }
-}
\ No newline at end of file
+}
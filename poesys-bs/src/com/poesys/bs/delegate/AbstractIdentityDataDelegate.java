@@ -6,13 +6,17 @@ package com.poesys.bs.delegate;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
+import com.poesys.bs.delegate.DelegateMetrics.Operation;
 import com.poesys.bs.dto.AbstractDto;
 import com.poesys.bs.dto.IDto;
 import com.poesys.db.connection.IConnectionFactory.DBMS;
+import com.poesys.db.dao.IDaoManager;
 import com.poesys.db.dao.delete.IDeleteCollection;
 import com.poesys.db.dao.insert.IInsertCollection;
 import com.poesys.db.dao.update.IUpdateCollection;
+import com.poesys.db.dao.update.IUpdateSql;
 import com.poesys.db.pk.IPrimaryKey;
 
 
@@ -77,8 +81,38 @@ public abstract class AbstractIdentityDataDelegate<T extends IDto<S>, S extends
     super(subsystem, dbms, expiration);
   }
 
+  /**
+   * Constructor that uses a specific DAO manager rather than the manager that
+   * DaoManagerFactory has for the subsystem, such as an in-memory manager for
+   * tests and benchmarks.
+   * 
+   * @param subsystem the JNDI data source subsystem
+   * @param manager the DAO manager that creates the delegate's DAO factory
+   * @param expiration the cache expiration time in milliseconds for objects
+   *          this delegate caches in a cache that supports object expiration
+   */
+  public AbstractIdentityDataDelegate(String subsystem,
+                                      IDaoManager manager,
+                                      Integer expiration) {
+    super(subsystem, manager, expiration);
+  }
+
   @Override
   public void insert(List<T> list) throws DelegateException {
+    if (metrics != null) {
+      measureWrite(Operation.INSERT, list.size(), () -> insertObjects(list));
+    } else {
+      insertObjects(list);
+    }
+  }
+
+  /**
+   * Insert the objects one at a time to get their generated keys.
+   * 
+   * @param list the objects to insert
+   * @throws DelegateException when there is a problem inserting the objects
+   */
+  private void insertObjects(List<T> list) throws DelegateException {
     IInsertCollection<S> inserter =
       factory.getInsertCollection(getInsertSql(), false);
 
@@ -90,22 +124,49 @@ public abstract class AbstractIdentityDataDelegate<T extends IDto<S>, S extends
 
   @Override
   public void process(List<T> list) throws DelegateException {
+    if (metrics != null) {
+      measureWrite(Operation.PROCESS, list.size(), () -> processObjects(list));
+    } else {
+      processObjects(list);
+    }
+  }
+
+  /**
+   * Delete, insert, and update the objects with collection-based processing.
+   * 
+   * @param list the objects to process
+   * @throws DelegateException when there is a problem processing the objects
+   */
+  private void processObjects(List<T> list) throws DelegateException {
     // Create the 3 DAOs for inserting, updating, and deleting.
     IInsertCollection<S> inserter =
       factory.getInsertCollection(getInsertSql(), false);
     IUpdateCollection<S> updater = factory.getUpdateCollection(getUpdateSql());
     IDeleteCollection<S> deleter = factory.getDeleteCollection(getDeleteSql());
 
+    skipUnchangedObjects(list);
     Collection<S> dtos = convertDtoList(list);
 
     // Delete, insert, and update the objects. Each DAO will process only those
     // objects that have the appropriate status for the operation.
-    if (deleter != null) {
-      deleter.delete(dtos);
-    }
-    inserter.insert(dtos);
-    if (updater != null) {
-      updater.update(dtos);
+    try {
+      if (deleter != null) {
+        deleter.delete(dtos);
+      }
+      inserter.insert(dtos);
+      // Update the objects with narrower UPDATEs for their changed properties
+      // first; the full-row updater then skips them as EXISTING.
+      Map<IUpdateSql<S>, List<S>> groups = groupChangedObjects(list);
+      for (Map.Entry<IUpdateSql<S>, List<S>> group : groups.entrySet()) {
+        factory.getUpdateCollection(group.getKey()).update(group.getValue());
+      }
+      if (updater != null) {
+        updater.update(dtos);
+      }
+      clearChangedProperties(list);
+    } finally {
+      evictObjects(list);
+      invalidateQueryCaches();
     }
   }
 }
@@ -19,13 +19,20 @@ package com.poesys.bs.delegate;
 
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
+import com.poesys.bs.delegate.DelegateMetrics.Operation;
 import com.poesys.bs.dto.AbstractDto;
 import com.poesys.bs.dto.IDto;
+import com.poesys.db.Message;
 import com.poesys.db.NoPrimaryKeyException;
 import com.poesys.db.connection.IConnectionFactory.DBMS;
+import com.poesys.db.dao.IDaoManager;
+import com.poesys.db.dao.query.IKeyListQuerySql;
 import com.poesys.db.dao.query.IKeyQuerySql;
+import com.poesys.db.dao.query.IParameterizedQuerySql;
 import com.poesys.db.dao.query.IQueryByKey;
 import com.poesys.db.dao.query.IQueryList;
 import com.poesys.db.dao.query.IQuerySql;
@@ -85,7 +92,14 @@ import com.poesys.db.pk.IPrimaryKey;
  * @param <K> the primary key type
  */
 abstract public class AbstractReadOnlyDataDelegate<T extends IDto<S>, S extends IDbDto, K extends IPrimaryKey>
-    extends AbstractDaoDelegate<S> implements IReadOnlyDataDelegate<T, S, K> {
+    extends AbstractDaoDelegate<S> implements IReadOnlyDataDelegate<T, S, K>,
+    IWarmUpDelegate {
+
+  /** In-process cache of wrapped objects, null if the cache is off */
+  private volatile NearCache<T> nearCache;
+
+  /** Error message when getObjectById() has no numeric key to query */
+  private static final String NO_ID_KEY = "com.poesys.bs.delegate.msg.noIdKey";
 
   /**
    * Standard constructor that sets the name of the subsystem and the database
@@ -100,6 +114,7 @@ abstract public class AbstractReadOnlyDataDelegate<T extends IDto<S>, S extends
                                       DBMS dbms,
                                       Integer expiration) {
     super(subsystem, dbms, expiration);
+    nearCache = NearCache.getInstance(subsystem, getClassName());
   }
 
   /**
@@ -112,10 +127,113 @@ abstract public class AbstractReadOnlyDataDelegate<T extends IDto<S>, S extends
    */
   public AbstractReadOnlyDataDelegate(String subsystem, Integer expiration) {
     super(subsystem, expiration);
+    nearCache = NearCache.getInstance(subsystem, getClassName());
+  }
+
+  /**
+   * Constructor that uses a specific DAO manager rather than the manager that
+   * DaoManagerFactory has for the subsystem, such as an in-memory manager for
+   * tests and benchmarks.
+   * 
+   * @param subsystem the JNDI data source subsystem
+   * @param manager the DAO manager that creates the delegate's DAO factory
+   * @param expiration the cache expiration time in milliseconds for objects
+   *          this delegate caches in a cache that supports object expiration
+   */
+  public AbstractReadOnlyDataDelegate(String subsystem,
+                                      IDaoManager manager,
+                                      Integer expiration) {
+    super(subsystem, manager, expiration);
+    nearCache = NearCache.getInstance(subsystem, getClassName());
   }
 
   @Override
   public T getObject(K key) throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.GET_OBJECT, () -> findObject(key), o -> 1);
+    }
+    return findObject(key);
+  }
+
+  /**
+   * Get an object through the near cache, querying it if it is not there.
+   * 
+   * @param key the primary key of the object
+   * @return the object, or null if no object matches the key
+   * @throws DelegateException when there is a problem querying the object
+   */
+  private T findObject(K key) throws DelegateException {
+    NearCache<T> cache = nearCache;
+    if (cache != null) {
+      T cached = cache.get(key);
+      if (metrics != null) {
+        metrics.recordCache(cached != null);
+      }
+      if (cached != null) {
+        return cached;
+      }
+    }
+    return queryObject(key, cache);
+  }
+
+  @Override
+  public T getObjectById(long id) throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.GET_OBJECT, () -> findObjectById(id), o -> 1);
+    }
+    return findObjectById(id);
+  }
+
+  /**
+   * Get an object by numeric key through the near cache, querying it if it is
+   * not there.
+   * 
+   * @param id the primary key value
+   * @return the object, or null if no object matches the key
+   * @throws DelegateException when there is a problem querying the object
+   */
+  private T findObjectById(long id) throws DelegateException {
+    NearCache<T> cache = nearCache;
+    if (cache != null) {
+      T cached = cache.get(id);
+      if (metrics != null) {
+        metrics.recordCache(cached != null);
+      }
+      if (cached != null) {
+        return cached;
+      }
+    }
+    K key = createIdKey(id);
+    if (key == null) {
+      Object[] args = { getClass().getName() };
+      throw new DelegateException(Message.getMessage(NO_ID_KEY, args));
+    }
+    return queryObject(key, cache);
+  }
+
+  /**
+   * Create the primary key for a numeric identity or sequence key value, for
+   * getObjectById(). The default implementation returns null, so a delegate
+   * with an identity or sequence key overrides the method.
+   * 
+   * @param id the key value
+   * @return the primary key, or null if the delegate has no numeric key
+   */
+  protected K createIdKey(long id) {
+    return null;
+  }
+
+  /**
+   * Query an object that is not in the near cache through the DAO cache and
+   * put it into the near cache.
+   * 
+   * @param key the primary key of the object
+   * @param cache the near cache, or null if there is none
+   * @return the object, or null if no object matches the key
+   * @throws DelegateException when there is a problem querying the object
+   */
+  private T queryObject(K key, NearCache<T> cache) throws DelegateException {
+    long stamp = cache != null ? cache.getStamp() : 0L;
     T object = null;
 
     try {
@@ -128,11 +246,89 @@ abstract public class AbstractReadOnlyDataDelegate<T extends IDto<S>, S extends
     } catch (NoPrimaryKeyException e) {
       throw new DelegateException(e.getMessage(), e);
     }
+
+    if (cache != null) {
+      cache.put(object, getCacheExpiration(-1), stamp);
+    }
     return object;
   }
 
+  @Override
+  public List<T> getObjects(Collection<K> keys) throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.GET_OBJECTS,
+                     () -> getCachedObjects(keys),
+                     List::size);
+    }
+    return getCachedObjects(keys);
+  }
+
+  /**
+   * Get the objects for a collection of keys through the near cache, if there
+   * is one, querying and wrapping the objects that are not in the near cache.
+   * 
+   * @param keys the primary keys of the objects
+   * @return the list of objects in key order
+   */
+  private List<T> getCachedObjects(Collection<? extends IPrimaryKey> keys) {
+    NearCache<T> cache = nearCache;
+    if (cache != null) {
+      return cache.getAll(keys, this::loadObjects, getCacheExpiration(-1));
+    }
+    return loadObjects(keys);
+  }
+
+  @Override
+  public Page<T> getPage(IPrimaryKey after, int pageSize)
+      throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.PAGE,
+                     () -> queryPage(after,
+                                     pageSize,
+                                     this::getCachedObjects,
+                                     this::wrapData),
+                     page -> page.getObjects().size());
+    }
+    return queryPage(after, pageSize, this::getCachedObjects, this::wrapData);
+  }
+
+  /**
+   * Query and wrap the objects for a collection of keys.
+   * 
+   * @param keys the primary keys of the objects to query
+   * @return the list of objects in key order
+   */
+  private List<T> loadObjects(Collection<? extends IPrimaryKey> keys) {
+    List<S> objects =
+      queryObjects(keys, getQueryByKeySql(), this::getQueryByKeyListSql);
+    List<T> list = new ArrayList<T>(objects.size());
+    for (S object : objects) {
+      list.add(wrapData(object));
+    }
+    return list;
+  }
+
   @Override
   public T getDatabaseObject(K key) throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.GET_DATABASE_OBJECT,
+                     () -> queryDatabaseObject(key),
+                     object -> 1);
+    }
+    return queryDatabaseObject(key);
+  }
+
+  /**
+   * Query an object from the database, bypassing the caches, and put it into
+   * the near cache.
+   * 
+   * @param key the primary key of the object
+   * @return the object, or null if no object matches the key
+   * @throws DelegateException when there is a problem querying the object
+   */
+  private T queryDatabaseObject(K key) throws DelegateException {
+    NearCache<T> cache = nearCache;
+    long stamp = cache != null ? cache.getStamp() : 0L;
     T object = null;
 
     try {
@@ -145,11 +341,36 @@ abstract public class AbstractReadOnlyDataDelegate<T extends IDto<S>, S extends
     } catch (NoPrimaryKeyException e) {
       throw new DelegateException(e.getMessage(), e);
     }
+
+    if (cache != null) {
+      cache.put(object, getCacheExpiration(-1), stamp);
+    }
     return object;
   }
 
   @Override
   public T getDatabaseObject(K key, int expiration) throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.GET_DATABASE_OBJECT,
+                     () -> queryDatabaseObject(key, expiration),
+                     object -> 1);
+    }
+    return queryDatabaseObject(key, expiration);
+  }
+
+  /**
+   * Query an object from the database with a cache expiration, bypassing the
+   * caches, and put it into the near cache.
+   * 
+   * @param key the primary key of the object
+   * @param expiration the cache expiration time in milliseconds, or -1
+   * @return the object, or null if no object matches the key
+   * @throws DelegateException when there is a problem querying the object
+   */
+  private T queryDatabaseObject(K key, int expiration)
+      throws DelegateException {
+    NearCache<T> cache = nearCache;
+    long stamp = cache != null ? cache.getStamp() : 0L;
     T object = null;
 
     try {
@@ -163,9 +384,41 @@ abstract public class AbstractReadOnlyDataDelegate<T extends IDto<S>, S extends
     } catch (NoPrimaryKeyException e) {
       throw new DelegateException(e.getMessage(), e);
     }
+
+    if (cache != null) {
+      cache.put(object, getCacheExpiration(expiration), stamp);
+    }
     return object;
   }
 
+  /**
+   * Get the near cache of wrapped business objects in front of the DAO cache.
+   * 
+   * @return the near cache, or null if the delegate does not use one
+   * @see NearCache
+   */
+  public NearCache<T> getNearCache() {
+    return nearCache;
+  }
+
+  /**
+   * Set the near cache of wrapped business objects for this delegate only,
+   * replacing the cache that the delegates for the class share.
+   * 
+   * @param nearCache the near cache, or null to stop using a near cache
+   */
+  public void setNearCache(NearCache<T> nearCache) {
+    this.nearCache = nearCache;
+  }
+
+  @Override
+  protected void evict(IPrimaryKey key) {
+    NearCache<T> cache = nearCache;
+    if (cache != null && key != null) {
+      cache.remove(key);
+    }
+  }
+
   /**
    * The concrete subclass overrides this abstract method to provide a specific
    * SQL statement object for queries.
@@ -183,6 +436,28 @@ abstract public class AbstractReadOnlyDataDelegate<T extends IDto<S>, S extends
    */
   abstract protected IKeyQuerySql<S> getQueryByKeySql();
 
+  /**
+   * The concrete subclass overrides this method to provide a SQL statement
+   * object that queries a list of objects by primary key (an IN-list query),
+   * which lets getObjects() query many keys in one database round trip. The
+   * method must return a new object for each call. The default implementation
+   * returns null, and getObjects() then queries the objects one key at a time.
+   * 
+   * <pre>
+   * <code>
+   * &#064;Override
+   * protected IKeyListQuerySql&lt;TestNatural&gt; getQueryByKeyListSql() {
+   *   return new TestNaturalKeyListQuerySql();
+   * }
+   * </code>
+   * </pre>
+   * 
+   * @return the key-list SELECT SQL statement object or null
+   */
+  protected IKeyListQuerySql<S> getQueryByKeyListSql() {
+    return null;
+  }
+
   /**
    * <p>
    * Wrap a Data Access Data Transfer Object (DTO) inside a Business DTO. This
@@ -207,6 +482,20 @@ abstract public class AbstractReadOnlyDataDelegate<T extends IDto<S>, S extends
 
   @Override
   public List<T> getAllObjects(int rows) throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.QUERY, () -> queryAllObjects(rows), List::size);
+    }
+    return queryAllObjects(rows);
+  }
+
+  /**
+   * Query and wrap all the objects.
+   * 
+   * @param rows the number of rows to fetch at once
+   * @return the list of objects
+   * @throws DelegateException when there is a problem querying the objects
+   */
+  private List<T> queryAllObjects(int rows) throws DelegateException {
     List<T> list = new ArrayList<T>();
     try {
       IQueryList<S> query =
@@ -224,6 +513,77 @@ abstract public class AbstractReadOnlyDataDelegate<T extends IDto<S>, S extends
     return list;
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The method preloads the objects for the keys that getWarmUpKeys() returns
+   * with getObjects(), which uses the key-list query if the delegate has one,
+   * or all the objects with getAllObjects() if there are no warm-up keys.
+   * </p>
+   */
+  @Override
+  public int warmUp() throws DelegateException {
+    Collection<K> keys = getWarmUpKeys();
+    List<T> objects =
+      keys != null ? getObjects(keys) : getAllObjects(WARM_UP_ROWS);
+    return cacheObjects(objects, nearCache);
+  }
+
+  /**
+   * The concrete subclass overrides this method to limit warmUp() to the
+   * objects with a set of keys, such as the most requested objects. The
+   * default implementation returns null, and warmUp() then preloads all the
+   * objects.
+   * 
+   * @return the keys of the objects to preload, or null for all objects
+   */
+  protected Collection<K> getWarmUpKeys() {
+    return null;
+  }
+
+  @Override
+  public Stream<T> streamAllObjects(int fetchSize) throws DelegateException {
+    IQuerySql<S> sql = getQueryListSql();
+    Stream<S> objects =
+      streamQuery(sql.getSql(), null, sql::getData, fetchSize);
+    return objects.map(this::wrapData);
+  }
+
+  @Override
+  public <P extends IDbDto> List<T> getObjectsWithParameters(IParameterizedQuerySql<S, P> sql,
+                                                             P parameters,
+                                                             int rows)
+      throws DelegateException {
+    if (metrics != null) {
+      return measure(Operation.QUERY,
+                     () -> wrapObjects(queryObjects(sql, parameters, rows)),
+                     List::size);
+    }
+    return wrapObjects(queryObjects(sql, parameters, rows));
+  }
+
+  /**
+   * Wrap a collection of queried data-access DTOs.
+   * 
+   * @param objects the data-access DTOs
+   * @return the list of business DTOs
+   */
+  private List<T> wrapObjects(Collection<S> objects) {
+    List<T> list = new ArrayList<T>(objects.size());
+    for (S object : objects) {
+      list.add(wrapData(object));
+    }
+    return list;
+  }
+
+  @Override
+  public <P extends IDbDto> Stream<T> streamObjectsWithParameters(IParameterizedQuerySql<S, P> sql,
+                                                                  P parameters,
+                                                                  int fetchSize)
+      throws DelegateException {
+    return streamObjects(sql, parameters, fetchSize).map(this::wrapData);
+  }
+
   /**
    * The concrete subclass overrides this abstract method to provide a specific
    * SQL statement object for multiple-object queries.
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * <p>
+ * The shared executors that run the asynchronous delegate operations of the
+ * IAsyncDataDelegate interface, one fixed-size pool of daemon threads per
+ * subsystem. The asynchronous operations spend most of their time waiting for
+ * the database, so the default pool size is a multiple of the number of
+ * processors. You can set the size for a subsystem in the database properties
+ * file:
+ * </p>
+ *
+ * <pre>
+ * com.poesys.db.poesystest.mysql.async_threads=64
+ * </pre>
+ * <p>
+ * To use some other executor for a particular delegate, call the delegate's
+ * setAsyncExecutor() method.
+ * </p>
+ *
+ * @author Robert J. Muller
+ */
+public final class AsyncDelegateExecutor {
+  /** Property suffix for the number of asynchronous threads */
+  private static final String ASYNC_THREADS = "async_threads";
+  /** Default number of threads per processor */
+  private static final int THREADS_PER_PROCESSOR = 4;
+
+  /** The shared executors, keyed by subsystem */
+  private static final Map<String, ExecutorService> executors =
+    new ConcurrentHashMap<String, ExecutorService>();
+
+  /**
+   * Disallow instantiation of the factory class.
+   */
+  private AsyncDelegateExecutor() {
+  }
+
+  /**
+   * Get the shared asynchronous executor for a subsystem, creating it if it
+   * does not yet exist.
+   *
+   * @param subsystem the subsystem
+   * @return the executor
+   */
+  public static ExecutorService getInstance(String subsystem) {
+    ExecutorService executor = executors.get(subsystem);
+    if (executor == null) {
+      synchronized (executors) {
+        executor = executors.get(subsystem);
+        if (executor == null) {
+          int threads =
+            DelegateProperties.getInt(subsystem,
+                                      ASYNC_THREADS,
+                                      Runtime.getRuntime().availableProcessors()
+                                          * THREADS_PER_PROCESSOR);
+          executor =
+            Executors.newFixedThreadPool(Math.max(1, threads),
+                                         new DaemonThreadFactory(subsystem));
+          executors.put(subsystem, executor);
+        }
+      }
+    }
+    return executor;
+  }
+
+  /**
+   * A thread factory that creates named daemon threads, so the asynchronous
+   * executors never keep the JVM from exiting.
+   */
+  private static class DaemonThreadFactory implements ThreadFactory {
+    /** The subsystem for naming threads */
+    private final String subsystem;
+    /** Counter for naming threads */
+    private final AtomicLong counter = new AtomicLong();
+
+    /**
+     * Create a DaemonThreadFactory object.
+     *
+     * @param subsystem the subsystem for naming threads
+     */
+    DaemonThreadFactory(String subsystem) {
+      this.subsystem = subsystem;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread =
+        new Thread(runnable, "poesys-async-" + subsystem + "-"
+                             + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
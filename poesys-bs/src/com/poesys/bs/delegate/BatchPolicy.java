@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+/**
+ * <p>
+ * The policy that sets the JDBC batch size for the batched delete, insert, and
+ * update operations of a data delegate. The batch size is the number of
+ * statements the DAO sends to the database in one JDBC batch; a collection
+ * larger than the batch size goes to the database in several batches.
+ * </p>
+ * <p>
+ * The policy has a base batch size and an optional size for each operation
+ * that overrides the base size. It caps the size so that a batch holds no more
+ * than a maximum number of bytes, estimated from a configured number of bytes
+ * per row, to limit driver memory for wide rows. In adaptive mode, the policy
+ * starts at the configured size and then doubles or halves the size for each
+ * operation after each call, based on the measured time per batch round trip
+ * compared to a target time.
+ * </p>
+ * <p>
+ * The delegate builds its policy from the subsystem properties in the database
+ * properties file; all the properties are optional:
+ * </p>
+ *
+ * <pre>
+ * com.poesys.db.poesystest.mysql.batch_size=500
+ * com.poesys.db.poesystest.mysql.batch_size.insert=1000
+ * com.poesys.db.poesystest.mysql.batch_size.update=200
+ * com.poesys.db.poesystest.mysql.batch_size.delete=1000
+ * com.poesys.db.poesystest.mysql.batch_max_bytes=4194304
+ * com.poesys.db.poesystest.mysql.batch_row_bytes=256
+ * com.poesys.db.poesystest.mysql.batch_adaptive=true
+ * com.poesys.db.poesystest.mysql.batch_target_millis=50
+ * </pre>
+ * <p>
+ * A policy instance is thread safe. In adaptive mode it keeps the tuned sizes,
+ * so give each delegate its own instance.
+ * </p>
+ *
+ * @author Robert J. Muller
+ */
+public class BatchPolicy {
+  /** The batched operations */
+  public enum Operation {
+    /** Batch insert of NEW DTOs */
+    INSERT,
+    /** Batch update of CHANGED DTOs */
+    UPDATE,
+    /** Batch delete of DELETED DTOs */
+    DELETE
+  }
+
+  /** The default batch size */
+  public static final int DEFAULT_BATCH_SIZE = 500;
+  /** The default target time in milliseconds per batch in adaptive mode */
+  public static final long DEFAULT_TARGET_MILLIS = 50L;
+  /** The smallest batch size in adaptive mode */
+  private static final int MIN_ADAPTIVE_SIZE = 10;
+  /** The largest batch size in adaptive mode */
+  private static final int MAX_ADAPTIVE_SIZE = 10000;
+
+  /** Property suffix for the base batch size */
+  private static final String BATCH_SIZE = "batch_size";
+  /** Property suffix for the maximum bytes in a batch */
+  private static final String MAX_BYTES = "batch_max_bytes";
+  /** Property suffix for the estimated bytes per row */
+  private static final String ROW_BYTES = "batch_row_bytes";
+  /** Property suffix for the adaptive mode flag */
+  private static final String ADAPTIVE = "batch_adaptive";
+  /** Property suffix for the adaptive target time per batch */
+  private static final String TARGET_MILLIS = "batch_target_millis";
+
+  /** The configured batch size for each operation, indexed by ordinal */
+  private final int[] sizes = new int[Operation.values().length];
+  /** The maximum bytes in a batch, 0 for no limit */
+  private final long maxBatchBytes;
+  /** The estimated bytes per row for the maximum-bytes limit */
+  private final int rowBytes;
+  /** Whether to adapt the batch size to the measured round-trip time */
+  private final boolean adaptive;
+  /** The target time in nanoseconds per batch in adaptive mode */
+  private final long targetNanos;
+  /** The current adaptive batch size for each operation */
+  private final AtomicIntegerArray adaptiveSizes;
+
+  /**
+   * Create a fixed batch policy with the same size for all operations and no
+   * byte limit.
+   *
+   * @param batchSize the batch size; values less than 1 mean 1
+   */
+  public BatchPolicy(int batchSize) {
+    this(batchSize, null, 0L, 0, false, DEFAULT_TARGET_MILLIS);
+  }
+
+  /**
+   * Create a batch policy.
+   *
+   * @param batchSize the base batch size; values less than 1 mean 1
+   * @param overrides the batch size for each operation indexed by the
+   *          operation's ordinal, with 0 meaning the base size; null for no
+   *          overrides
+   * @param maxBatchBytes the maximum estimated bytes in a batch, 0 for no limit
+   * @param rowBytes the estimated bytes per row, used with maxBatchBytes
+   * @param adaptive whether to adapt the batch size to the measured round-trip
+   *          time
+   * @param targetMillis the target time per batch in milliseconds in adaptive
+   *          mode
+   */
+  public BatchPolicy(int batchSize,
+                     int[] overrides,
+                     long maxBatchBytes,
+                     int rowBytes,
+                     boolean adaptive,
+                     long targetMillis) {
+    int base = Math.max(1, batchSize);
+    for (Operation op : Operation.values()) {
+      int override = 0;
+      if (overrides != null && overrides.length > op.ordinal()) {
+        override = overrides[op.ordinal()];
+      }
+      sizes[op.ordinal()] = override > 0 ? override : base;
+    }
+    this.maxBatchBytes = Math.max(0L, maxBatchBytes);
+    this.rowBytes = Math.max(0, rowBytes);
+    this.adaptive = adaptive;
+    this.targetNanos =
+      (targetMillis > 0 ? targetMillis : DEFAULT_TARGET_MILLIS) * 1000000L;
+    adaptiveSizes = new AtomicIntegerArray(sizes);
+  }
+
+  /**
+   * Create a batch policy from the properties for a subsystem.
+   *
+   * @param subsystem the subsystem
+   * @return the batch policy
+   */
+  public static BatchPolicy getInstance(String subsystem) {
+    int[] overrides = new int[Operation.values().length];
+    for (Operation op : Operation.values()) {
+      overrides[op.ordinal()] =
+        DelegateProperties.getInt(subsystem, BATCH_SIZE + "."
+                                             + op.name().toLowerCase(), 0);
+    }
+    return new BatchPolicy(DelegateProperties.getInt(subsystem,
+                                                     BATCH_SIZE,
+                                                     DEFAULT_BATCH_SIZE),
+                           overrides,
+                           DelegateProperties.getLong(subsystem, MAX_BYTES, 0L),
+                           DelegateProperties.getInt(subsystem, ROW_BYTES, 0),
+                           DelegateProperties.getBoolean(subsystem,
+                                                         ADAPTIVE,
+                                                         false),
+                           DelegateProperties.getLong(subsystem,
+                                                      TARGET_MILLIS,
+                                                      DEFAULT_TARGET_MILLIS));
+  }
+
+  /**
+   * Get the batch size to use for an operation on a number of rows. The size
+   * is never larger than the number of rows and never less than 1.
+   *
+   * @param op the batched operation
+   * @param rows the number of rows the operation will process
+   * @return the batch size
+   */
+  public int getBatchSize(Operation op, int rows) {
+    int size =
+      adaptive ? adaptiveSizes.get(op.ordinal()) : sizes[op.ordinal()];
+    if (maxBatchBytes > 0 && rowBytes > 0) {
+      long maxRows = maxBatchBytes / rowBytes;
+      if (maxRows < size) {
+        size = (int)Math.max(1L, maxRows);
+      }
+    }
+    return Math.max(1, Math.min(size, rows));
+  }
+
+  /**
+   * Record the elapsed time for an operation on a number of rows. In adaptive
+   * mode, the policy doubles the operation's batch size if a batch took less
+   * than half the target time and halves it if a batch took longer than the
+   * target time. Calls with too few rows to fill a batch do not change the
+   * size. In fixed mode the method does nothing.
+   *
+   * @param op the batched operation
+   * @param rows the number of rows the operation processed
+   * @param batchSize the batch size the operation used
+   * @param nanos the elapsed time of the operation in nanoseconds
+   */
+  public void recordBatch(Operation op, int rows, int batchSize, long nanos) {
+    int current = adaptiveSizes.get(op.ordinal());
+    if (!adaptive || rows < current || batchSize < 1) {
+      return;
+    }
+    int batches = (rows + batchSize - 1) / batchSize;
+    long nanosPerBatch = nanos / batches;
+    int next = current;
+    if (nanosPerBatch < targetNanos / 2) {
+      next = Math.min(MAX_ADAPTIVE_SIZE, current * 2);
+    } else if (nanosPerBatch > targetNanos) {
+      next = Math.max(MIN_ADAPTIVE_SIZE, current / 2);
+    }
+    if (next != current) {
+      // Lose the update if another thread changed the size concurrently.
+      adaptiveSizes.compareAndSet(op.ordinal(), current, next);
+    }
+  }
+
+  /**
+   * Is the policy adaptive?
+   *
+   * @return true if the policy adapts batch sizes to round-trip time
+   */
+  public boolean isAdaptive() {
+    return adaptive;
+  }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.poesys.db.dao.query.IParameterizedCountSql;
+import com.poesys.db.dto.IDbDto;
+
+
+/**
+ * <p>
+ * A short-lived cache of count query results for one data-access DTO class in
+ * one subsystem. All the delegates for the class share the cache, and any of
+ * them that writes objects of the class clears it, so a cached count is at
+ * most the time to live out of date with respect to other processes writing
+ * the table and never out of date with respect to writes through the
+ * delegates in this process. The count cache is off unless you set a time to
+ * live for the subsystem in the database properties file:
+ * </p>
+ *
+ * <pre>
+ * com.poesys.db.poesystest.mysql.count_cache_ttl=5000
+ * </pre>
+ * <p>
+ * The cache keys a count by its SQL statement and a copy of the values that
+ * the SQL object binds from the parameter DTO, so the key does not depend on
+ * the DTO's equals() method, and a caller may change and reuse the DTO after
+ * counting with it. The cache is thread safe.
+ * </p>
+ *
+ * @author Robert J. Muller
+ */
+final class CountCache {
+  /** Property suffix for the time to live in milliseconds */
+  private static final String TTL = "count_cache_ttl";
+
+  /** The shared caches by subsystem and class name */
+  private static final ConcurrentMap<String, CountCache> caches =
+    new ConcurrentHashMap<String, CountCache>();
+
+  /** The time to live in nanoseconds */
+  private final long ttlNanos;
+  /** The cached counts */
+  private final ConcurrentMap<Key, Entry> entries =
+    new ConcurrentHashMap<Key, Entry>();
+  /** Invalidation counter, guarded by this */
+  private long generation = 0L;
+
+  /**
+   * The cache key: the SQL statement and the bound parameter values
+   */
+  static final class Key {
+    /** The count SQL statement */
+    private final String sql;
+    /** The bound parameter values in parameter order */
+    private final Object[] values;
+
+    /**
+     * Create a Key object.
+     *
+     * @param sql the count SQL statement
+     * @param values the bound parameter values, which the key owns
+     */
+    private Key(String sql, Object[] values) {
+      this.sql = sql;
+      this.values = values;
+    }
+
+    @Override
+    public int hashCode() {
+      return sql.hashCode() * 31 + Arrays.deepHashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key)obj;
+      return sql.equals(other.sql) && Arrays.deepEquals(values, other.values);
+    }
+  }
+
+  /**
+   * A cached count with its expiration time
+   */
+  private static final class Entry {
+    /** The count */
+    final BigInteger count;
+    /** The System.nanoTime() after which the count is stale */
+    final long expires;
+
+    /**
+     * Create an Entry object.
+     *
+     * @param count the count
+     * @param expires the time after which the count is stale
+     */
+    Entry(BigInteger count, long expires) {
+      this.count = count;
+      this.expires = expires;
+    }
+  }
+
+  /**
+   * Create a CountCache object.
+   *
+   * @param ttl the time to live in milliseconds
+   */
+  private CountCache(long ttl) {
+    ttlNanos = ttl * 1000000L;
+  }
+
+  /**
+   * Get the shared count cache for a data-access DTO class in a subsystem.
+   *
+   * @param subsystem the subsystem
+   * @param className the data-access DTO class name
+   * @return the count cache, or null if the subsystem has no count cache time
+   *         to live
+   */
+  static CountCache getInstance(String subsystem, String className) {
+    long ttl = DelegateProperties.getLong(subsystem, TTL, 0L);
+    if (ttl <= 0) {
+      return null;
+    }
+    String name = subsystem + ":" + className;
+    CountCache cache = caches.get(name);
+    if (cache == null) {
+      CountCache newCache = new CountCache(ttl);
+      cache = caches.putIfAbsent(name, newCache);
+      if (cache == null) {
+        cache = newCache;
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Build the cache key for a count. The method binds the parameters to a
+   * PreparedStatement proxy that records the values the SQL object sets, and
+   * copies the mutable values.
+   *
+   * @param <P> the type of the parameters
+   * @param sql the count SQL statement object
+   * @param parameters the parameter DTO, may be null
+   * @return the key, or null if the SQL object does more than set parameter
+   *         values, in which case the count is not cached
+   */
+  static <P extends IDbDto> Key getKey(IParameterizedCountSql<P> sql,
+                                       P parameters) {
+    final Map<Integer, Object> values = new TreeMap<Integer, Object>();
+    InvocationHandler recorder = (proxy, method, args) -> {
+      if (!method.getName().startsWith("set") || args == null
+          || args.length < 2 || !(args[0] instanceof Integer)) {
+        throw new UnsupportedOperationException(method.getName());
+      }
+      Object value = method.getName().equals("setNull") ? null : args[1];
+      values.put((Integer)args[0], copy(value));
+      return null;
+    };
+    ClassLoader loader = CountCache.class.getClassLoader();
+    Class<?>[] interfaces = { PreparedStatement.class };
+    PreparedStatement stmt =
+      (PreparedStatement)Proxy.newProxyInstance(loader, interfaces, recorder);
+    try {
+      sql.bindParameters(stmt, parameters);
+    } catch (RuntimeException e) {
+      return null;
+    }
+    return new Key(sql.getSql(), values.values().toArray());
+  }
+
+  /**
+   * Copy a mutable parameter value.
+   *
+   * @param value the value
+   * @return a copy of a date or byte array, or the value itself
+   */
+  private static Object copy(Object value) {
+    if (value instanceof Date) {
+      return ((Date)value).clone();
+    } else if (value instanceof byte[]) {
+      return ((byte[])value).clone();
+    }
+    return value;
+  }
+
+  /**
+   * Get a cached count.
+   *
+   * @param key the key from getKey(), may be null
+   * @return the count, or null if there is no current count in the cache
+   */
+  BigInteger get(Key key) {
+    if (key == null) {
+      return null;
+    }
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.expires - System.nanoTime() <= 0) {
+      entries.remove(key, entry);
+      return null;
+    }
+    return entry.count;
+  }
+
+  /**
+   * Get the current invalidation stamp to pass to put() after the query.
+   *
+   * @return the stamp
+   */
+  synchronized long getStamp() {
+    return generation;
+  }
+
+  /**
+   * Cache a count unless the cache has been cleared since the stamp, so a
+   * count that ran concurrently with a write does not outlive the write.
+   *
+   * @param key the key from getKey(); null does nothing
+   * @param count the count; null does nothing
+   * @param stamp the invalidation stamp from before the query
+   */
+  void put(Key key, BigInteger count, long stamp) {
+    if (key == null || count == null) {
+      return;
+    }
+    Entry entry = new Entry(count, System.nanoTime() + ttlNanos);
+    synchronized (this) {
+      if (stamp == generation) {
+        entries.put(key, entry);
+      }
+    }
+  }
+
+  /**
+   * Remove all the counts from the cache.
+   */
+  synchronized void clear() {
+    generation++;
+    entries.clear();
+  }
+}
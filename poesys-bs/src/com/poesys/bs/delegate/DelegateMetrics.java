@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+
+/**
+ * <p>
+ * Counts, error counts, row counts, and latency histograms for each operation
+ * of a delegate class, plus the near-cache hit ratio. All the delegates of a
+ * class in a subsystem share one DelegateMetrics object, which registers
+ * itself as a JMX MBean named
+ * </p>
+ *
+ * <pre>
+ * com.poesys.bs:type=DelegateMetrics,subsystem=...,delegate=...
+ * </pre>
+ * <p>
+ * and sends each operation to the registered IDelegateMetricsListener
+ * implementations. Recording uses only lock-free counters. Metrics are off
+ * unless you turn them on for the subsystem in the database properties file;
+ * with metrics off, a delegate has no DelegateMetrics object and skips the
+ * instrumentation after one null check:
+ * </p>
+ *
+ * <pre>
+ * com.poesys.db.poesystest.mysql.metrics=true
+ * </pre>
+ *
+ * @author Robert J. Muller
+ */
+public class DelegateMetrics implements DelegateMetricsMBean {
+  /** Logger for this class */
+  private static final Logger logger = Logger.getLogger(DelegateMetrics.class);
+
+  /** Property suffix for the metrics switch */
+  private static final String METRICS = "metrics";
+  /** Nanoseconds per millisecond */
+  private static final double NANOS_PER_MILLI = 1000000.0;
+
+  /** The delegate operations */
+  public enum Operation {
+    /** Query one object by key through the caches */
+    GET_OBJECT,
+    /** Query a collection of objects by key through the caches */
+    GET_OBJECTS,
+    /** Query one object by key from the database */
+    GET_DATABASE_OBJECT,
+    /** Query all objects or objects by parameters */
+    QUERY,
+    /** Query a keyset page */
+    PAGE,
+    /** Count objects */
+    COUNT,
+    /** Insert objects */
+    INSERT,
+    /** Process (insert, update, and delete) objects */
+    PROCESS,
+    /** Truncate the table */
+    TRUNCATE
+  }
+
+  /** The shared metrics by subsystem and delegate class name */
+  private static final ConcurrentMap<String, DelegateMetrics> registry =
+    new ConcurrentHashMap<String, DelegateMetrics>();
+
+  /** The registered listeners */
+  private static final List<IDelegateMetricsListener> listeners =
+    new CopyOnWriteArrayList<IDelegateMetricsListener>();
+
+  static {
+    try {
+      ServiceLoader<IDelegateMetricsListener> loader =
+        ServiceLoader.load(IDelegateMetricsListener.class);
+      for (IDelegateMetricsListener listener : loader) {
+        listeners.add(listener);
+      }
+    } catch (Throwable e) {
+      // A broken provider must not stop the delegates from loading.
+      logger.warn("Could not load delegate metrics listeners", e);
+    }
+  }
+
+  /**
+   * The metrics for one operation
+   */
+  private static final class Stats {
+    /** Number of calls */
+    final LongAdder count = new LongAdder();
+    /** Number of calls that threw an exception */
+    final LongAdder errors = new LongAdder();
+    /** Number of objects returned or written */
+    final LongAdder rows = new LongAdder();
+    /** Latencies of the calls */
+    final LatencyHistogram latency = new LatencyHistogram();
+  }
+
+  /** The name, the subsystem and the delegate class name */
+  private final String name;
+  /** The metrics by operation, created up front so recording never locks */
+  private final Map<Operation, Stats> stats =
+    new EnumMap<Operation, Stats>(Operation.class);
+  /** Number of near-cache hits */
+  private final LongAdder cacheHits = new LongAdder();
+  /** Number of near-cache misses */
+  private final LongAdder cacheMisses = new LongAdder();
+
+  /**
+   * Create a DelegateMetrics object that is not registered with JMX or shared.
+   *
+   * @param name the name of the metrics
+   */
+  public DelegateMetrics(String name) {
+    this.name = name;
+    for (Operation operation : Operation.values()) {
+      stats.put(operation, new Stats());
+    }
+  }
+
+  /**
+   * Get the shared metrics for a delegate class in a subsystem, creating and
+   * registering them with JMX if they do not yet exist.
+   *
+   * @param subsystem the subsystem
+   * @param className the delegate class name
+   * @return the metrics, or null if the subsystem does not have metrics on
+   */
+  public static DelegateMetrics getInstance(String subsystem,
+                                            String className) {
+    if (!DelegateProperties.getBoolean(subsystem, METRICS, false)) {
+      return null;
+    }
+    return registry.computeIfAbsent(subsystem + ":" + className, name -> {
+      DelegateMetrics metrics = new DelegateMetrics(name);
+      metrics.register(subsystem, className);
+      return metrics;
+    });
+  }
+
+  /**
+   * Register the metrics as a JMX MBean, logging rather than failing if the
+   * platform MBean server refuses it.
+   *
+   * @param subsystem the subsystem
+   * @param className the delegate class name
+   */
+  private void register(String subsystem, String className) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName =
+        new ObjectName("com.poesys.bs:type=DelegateMetrics,subsystem="
+                       + ObjectName.quote(subsystem) + ",delegate="
+                       + ObjectName.quote(className));
+      if (!server.isRegistered(objectName)) {
+        server.registerMBean(this, objectName);
+      }
+    } catch (JMException | RuntimeException e) {
+      logger.warn("Could not register delegate metrics " + name, e);
+    }
+  }
+
+  /**
+   * Add a listener that gets every recorded operation.
+   *
+   * @param listener the listener
+   */
+  public static void addListener(IDelegateMetricsListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Remove a listener.
+   *
+   * @param listener the listener
+   */
+  public static void removeListener(IDelegateMetricsListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Record an operation.
+   *
+   * @param operation the operation
+   * @param nanos the latency in nanoseconds
+   * @param rows the number of objects the operation returned or wrote
+   * @param failed true if the operation threw an exception
+   */
+  public void record(Operation operation,
+                     long nanos,
+                     int rows,
+                     boolean failed) {
+    Stats s = stats.get(operation);
+    s.count.increment();
+    if (failed) {
+      s.errors.increment();
+    }
+    if (rows > 0) {
+      s.rows.add(rows);
+    }
+    s.latency.record(nanos);
+    for (IDelegateMetricsListener listener : listeners) {
+      try {
+        listener.record(name, operation, nanos, rows, failed);
+      } catch (RuntimeException e) {
+        logger.warn("Delegate metrics listener failed", e);
+      }
+    }
+  }
+
+  /**
+   * Record a near-cache lookup.
+   *
+   * @param hit true if the lookup found an object
+   */
+  public void recordCache(boolean hit) {
+    if (hit) {
+      cacheHits.increment();
+    } else {
+      cacheMisses.increment();
+    }
+  }
+
+  /**
+   * Get the latency histogram of an operation.
+   *
+   * @param operation the operation
+   * @return the histogram
+   */
+  public LatencyHistogram getLatency(Operation operation) {
+    return stats.get(operation).latency;
+  }
+
+  /**
+   * Get the metrics for an operation name.
+   *
+   * @param operation the operation name
+   * @return the metrics
+   * @throws IllegalArgumentException when there is no such operation
+   */
+  private Stats getStats(String operation) {
+    return stats.get(Operation.valueOf(operation));
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String[] getOperations() {
+    List<String> names = new ArrayList<String>();
+    for (Map.Entry<Operation, Stats> entry : stats.entrySet()) {
+      if (entry.getValue().count.sum() > 0) {
+        names.add(entry.getKey().name());
+      }
+    }
+    return names.toArray(new String[names.size()]);
+  }
+
+  @Override
+  public long getCacheHits() {
+    return cacheHits.sum();
+  }
+
+  @Override
+  public long getCacheMisses() {
+    return cacheMisses.sum();
+  }
+
+  @Override
+  public double getCacheHitRatio() {
+    long hits = cacheHits.sum();
+    long total = hits + cacheMisses.sum();
+    return total == 0 ? 0.0 : (double)hits / total;
+  }
+
+  @Override
+  public long getCount(String operation) {
+    return getStats(operation).count.sum();
+  }
+
+  @Override
+  public long getErrors(String operation) {
+    return getStats(operation).errors.sum();
+  }
+
+  @Override
+  public long getRows(String operation) {
+    return getStats(operation).rows.sum();
+  }
+
+  @Override
+  public double getMeanMillis(String operation) {
+    return getStats(operation).latency.getMean() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getPercentileMillis(String operation, double percentile) {
+    long nanos = getStats(operation).latency.getPercentile(percentile);
+    return nanos / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public void reset() {
+    for (Stats s : stats.values()) {
+      s.count.reset();
+      s.errors.reset();
+      s.rows.reset();
+      s.latency.reset();
+    }
+    cacheHits.reset();
+    cacheMisses.reset();
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+/**
+ * The JMX management interface for the metrics of a delegate class. The
+ * operations take the name of a DelegateMetrics.Operation, such as PROCESS.
+ *
+ * @author Robert J. Muller
+ */
+public interface DelegateMetricsMBean {
+  /**
+   * Get the name of the metrics, the subsystem and the delegate class name.
+   *
+   * @return the name
+   */
+  String getName();
+
+  /**
+   * Get the names of the operations that have been recorded.
+   *
+   * @return the operation names
+   */
+  String[] getOperations();
+
+  /**
+   * Get the number of near-cache lookups that found an object.
+   *
+   * @return the number of hits
+   */
+  long getCacheHits();
+
+  /**
+   * Get the number of near-cache lookups that did not find an object.
+   *
+   * @return the number of misses
+   */
+  long getCacheMisses();
+
+  /**
+   * Get the fraction of near-cache lookups that found an object.
+   *
+   * @return the hit ratio from 0 to 1, 0 if there were no lookups
+   */
+  double getCacheHitRatio();
+
+  /**
+   * Get the number of calls of an operation.
+   *
+   * @param operation the operation name
+   * @return the count
+   */
+  long getCount(String operation);
+
+  /**
+   * Get the number of calls of an operation that threw an exception.
+   *
+   * @param operation the operation name
+   * @return the error count
+   */
+  long getErrors(String operation);
+
+  /**
+   * Get the number of objects an operation returned or wrote.
+   *
+   * @param operation the operation name
+   * @return the row count
+   */
+  long getRows(String operation);
+
+  /**
+   * Get the mean latency of an operation.
+   *
+   * @param operation the operation name
+   * @return the mean in milliseconds
+   */
+  double getMeanMillis(String operation);
+
+  /**
+   * Get a latency percentile of an operation.
+   *
+   * @param operation the operation name
+   * @param percentile the percentile from 0 to 100
+   * @return the latency in milliseconds
+   */
+  double getPercentileMillis(String operation, double percentile);
+
+  /**
+   * Reset all the metrics to zero.
+   */
+  void reset();
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+
+import org.apache.log4j.Logger;
+
+
+/**
+ * <p>
+ * Access to the per-subsystem delegate tuning properties. The properties live
+ * in the same database properties file that configures the subsystem
+ * connections (com.poesys.db.database), prefixed with the subsystem name in
+ * the same way as the connection properties:
+ * </p>
+ *
+ * <pre>
+ * com.poesys.db.poesystest.mysql.max_transactions=50
+ * </pre>
+ * <p>
+ * All properties are optional; a missing properties file, a missing property,
+ * or an unparseable value yields the default value that the caller supplies.
+ * </p>
+ *
+ * @author Robert J. Muller
+ */
+public final class DelegateProperties {
+  /** Logger for this class */
+  private static final Logger logger =
+    Logger.getLogger(DelegateProperties.class);
+
+  /** The database properties file that contains the subsystem properties */
+  private static final String BUNDLE = "com.poesys.db.database";
+
+  /** The properties, or null if there is no properties file */
+  private static final ResourceBundle properties = loadProperties();
+
+  /**
+   * Disallow instantiation of the utility class.
+   */
+  private DelegateProperties() {
+  }
+
+  /**
+   * Load the resource bundle, returning null if it does not exist.
+   *
+   * @return the resource bundle or null
+   */
+  private static ResourceBundle loadProperties() {
+    ResourceBundle bundle = null;
+    try {
+      bundle = ResourceBundle.getBundle(BUNDLE);
+    } catch (MissingResourceException e) {
+      logger.debug("No " + BUNDLE + " properties file, using delegate defaults");
+    }
+    return bundle;
+  }
+
+  /**
+   * Get a string property for a subsystem.
+   *
+   * @param subsystem the subsystem that prefixes the property name
+   * @param property the property name suffix, such as "max_transactions"
+   * @return the trimmed property value or null if there is no such property
+   */
+  public static String getString(String subsystem, String property) {
+    String value = null;
+    if (properties != null && subsystem != null) {
+      try {
+        value = properties.getString(subsystem + "." + property).trim();
+      } catch (MissingResourceException e) {
+        // property not set, leave value null
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Get an integer property for a subsystem.
+   *
+   * @param subsystem the subsystem that prefixes the property name
+   * @param property the property name suffix
+   * @param defaultValue the value to return if the property is not set
+   * @return the property value or the default value
+   */
+  public static int getInt(String subsystem, String property, int defaultValue) {
+    return (int)getLong(subsystem, property, defaultValue);
+  }
+
+  /**
+   * Get a long integer property for a subsystem.
+   *
+   * @param subsystem the subsystem that prefixes the property name
+   * @param property the property name suffix
+   * @param defaultValue the value to return if the property is not set
+   * @return the property value or the default value
+   */
+  public static long getLong(String subsystem, String property,
+                             long defaultValue) {
+    long value = defaultValue;
+    String string = getString(subsystem, property);
+    if (string != null && !string.isEmpty()) {
+      try {
+        value = Long.parseLong(string);
+      } catch (NumberFormatException e) {
+        logger.warn("Invalid integer value " + string + " for property "
+                    + subsystem + "." + property + ", using default "
+                    + defaultValue);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Get a boolean property for a subsystem.
+   *
+   * @param subsystem the subsystem that prefixes the property name
+   * @param property the property name suffix
+   * @param defaultValue the value to return if the property is not set
+   * @return the property value or the default value
+   */
+  public static boolean getBoolean(String subsystem, String property,
+                                   boolean defaultValue) {
+    boolean value = defaultValue;
+    String string = getString(subsystem, property);
+    if (string != null && !string.isEmpty()) {
+      value = Boolean.parseBoolean(string);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+/**
+ * A DelegateException that a data delegate throws when a transaction does not
+ * finish by its deadline. The delegate has cancelled the transaction: it has
+ * aborted the transaction's connection, which stops the running statement and
+ * rolls back the uncommitted work, so none of the objects were written. The
+ * transaction executor throws it when a transaction cannot start by its
+ * deadline, in which case the transaction never ran.
+ * 
+ * @author Robert J. Muller
+ */
+public class DelegateTimeoutException extends DelegateException {
+  /** The unique UID for this serializable object */
+  private static final long serialVersionUID = 4417209816230731852L;
+
+  /**
+   * Create an exception with a message.
+   * 
+   * @param arg0 the exception message
+   */
+  public DelegateTimeoutException(String arg0) {
+    super(arg0);
+  }
+}
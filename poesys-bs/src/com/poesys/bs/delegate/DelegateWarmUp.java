@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.poesys.db.Message;
+
+
+/**
+ * <p>
+ * Startup warm-up of the caches of a set of delegates. Each delegate preloads
+ * its objects into the DAO manager's cache, whichever manager the subsystem
+ * uses, and into its near cache (see IWarmUpDelegate.warmUp()). The
+ * delegates warm up in parallel on an executor, at most a maximum number at a
+ * time, so the warm-up does not take all the database connections while the
+ * node starts. The warm-up is ready when every delegate has finished; a
+ * delegate that fails is logged and counted, and the node serves its objects
+ * from the database as it would without a warm-up.
+ * </p>
+ * <p>
+ * You can add the delegates in code or configure them for a subsystem in the
+ * database properties file, listing delegate classes that have a public
+ * constructor with no arguments:
+ * </p>
+ *
+ * <pre>
+ * com.poesys.db.poesystest.mysql.warm_up_delegates=com.poesys.bs.delegate.TestNaturalDelegate
+ * # maximum number of delegates that warm up at the same time
+ * com.poesys.db.poesystest.mysql.warm_up_concurrency=4
+ * </pre>
+ *
+ * <pre>
+ * DelegateWarmUp warmUp = DelegateWarmUp.getInstance(subsystem);
+ * warmUp.start();
+ * // Report the node ready to the load balancer once the warm-up completes.
+ * warmUp.getFuture().thenRun(readiness::setReady);
+ * </pre>
+ *
+ * @author Robert J. Muller
+ */
+public class DelegateWarmUp {
+  /** Logger for this class */
+  private static final Logger logger = Logger.getLogger(DelegateWarmUp.class);
+
+  static {
+    List<String> names = new ArrayList<String>(1);
+    names.add("com.poesys.bs.PoesysBsBundle");
+    Message.initializePropertiesFiles(names);
+  }
+
+  /** Property suffix for the delegate classes to warm up */
+  private static final String DELEGATES = "warm_up_delegates";
+  /** Property suffix for the maximum number of concurrent warm-ups */
+  private static final String CONCURRENCY = "warm_up_concurrency";
+  /** The default maximum number of concurrent warm-ups */
+  public static final int DEFAULT_CONCURRENCY = 4;
+  /** Error message when the method cannot create a configured delegate */
+  private static final String CLASS_ERROR =
+    "com.poesys.bs.delegate.msg.warmUpClass";
+
+  /** The maximum number of delegates that warm up at the same time */
+  private final int concurrency;
+  /** The executor that runs the warm-ups */
+  private final Executor executor;
+  /** The delegates to warm up */
+  private final List<IWarmUpDelegate> delegates =
+    new ArrayList<IWarmUpDelegate>();
+  /** Completes when every delegate has finished its warm-up */
+  private final CompletableFuture<DelegateWarmUp> future =
+    new CompletableFuture<DelegateWarmUp>();
+  /** The number of objects the delegates preloaded */
+  private final AtomicInteger objects = new AtomicInteger();
+  /** The delegates that failed, with the reasons */
+  private final List<String> failures =
+    Collections.synchronizedList(new ArrayList<String>());
+  /** Whether the warm-up has started */
+  private boolean started = false;
+
+  /**
+   * Create a DelegateWarmUp object.
+   *
+   * @param concurrency the maximum number of delegates that warm up at the
+   *          same time, at least 1
+   * @param executor the executor that runs the warm-ups; it needs at least as
+   *          many threads as the concurrency to reach it
+   */
+  public DelegateWarmUp(int concurrency, Executor executor) {
+    this.concurrency = Math.max(1, concurrency);
+    this.executor = executor;
+  }
+
+  /**
+   * Create a warm-up for a subsystem from the properties in the database
+   * properties file: the configured delegates, the concurrency, and the
+   * subsystem's asynchronous executor.
+   *
+   * @param subsystem the subsystem
+   * @return the warm-up, not yet started
+   * @throws DelegateException when a configured class is not a warm-up
+   *           delegate with a public constructor with no arguments
+   */
+  public static DelegateWarmUp getInstance(String subsystem)
+      throws DelegateException {
+    DelegateWarmUp warmUp =
+      new DelegateWarmUp(DelegateProperties.getInt(subsystem,
+                                                   CONCURRENCY,
+                                                   DEFAULT_CONCURRENCY),
+                         AsyncDelegateExecutor.getInstance(subsystem));
+    String classes = DelegateProperties.getString(subsystem, DELEGATES);
+    if (classes != null && !classes.isEmpty()) {
+      for (String name : classes.split(",")) {
+        name = name.trim();
+        if (name.isEmpty()) {
+          continue;
+        }
+        try {
+          Object delegate = Class.forName(name).getConstructor().newInstance();
+          warmUp.add((IWarmUpDelegate)delegate);
+        } catch (ReflectiveOperationException | ClassCastException e) {
+          Object[] args = { name };
+          throw new DelegateException(Message.getMessage(CLASS_ERROR, args),
+                                      e);
+        }
+      }
+    }
+    return warmUp;
+  }
+
+  /**
+   * Add a delegate to warm up.
+   *
+   * @param delegate the delegate
+   * @return this warm-up
+   * @throws IllegalStateException when the warm-up has started
+   */
+  public synchronized DelegateWarmUp add(IWarmUpDelegate delegate) {
+    if (started) {
+      throw new IllegalStateException("Warm-up already started");
+    }
+    delegates.add(delegate);
+    return this;
+  }
+
+  /**
+   * Start the warm-up and return without waiting for it. The method starts up
+   * to the concurrency of workers that take the delegates in turn and warm
+   * them up. Calls after the first do nothing.
+   *
+   * @return the future that completes when the warm-up completes
+   */
+  public CompletableFuture<DelegateWarmUp> start() {
+    List<IWarmUpDelegate> list;
+    synchronized (this) {
+      if (started) {
+        return future;
+      }
+      started = true;
+      list = new ArrayList<IWarmUpDelegate>(delegates);
+    }
+    long start = System.nanoTime();
+    Queue<IWarmUpDelegate> queue =
+      new ConcurrentLinkedQueue<IWarmUpDelegate>(list);
+    int workers = Math.max(1, Math.min(concurrency, list.size()));
+    AtomicInteger running = new AtomicInteger(workers);
+    Runnable worker = () -> {
+      try {
+        IWarmUpDelegate delegate;
+        while ((delegate = queue.poll()) != null) {
+          warmUp(delegate);
+        }
+      } finally {
+        if (running.decrementAndGet() == 0) {
+          logger.info("Warm-up of " + list.size() + " delegates preloaded "
+                      + objects.get() + " objects in "
+                      + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                      + " ms with " + failures.size() + " failures");
+          future.complete(this);
+        }
+      }
+    };
+    for (int i = 0; i < workers; i++) {
+      try {
+        executor.execute(worker);
+      } catch (RuntimeException e) {
+        // Run the worker in the calling thread rather than lose its share.
+        worker.run();
+      }
+    }
+    return future;
+  }
+
+  /**
+   * Warm up one delegate, recording the number of objects or the failure.
+   *
+   * @param delegate the delegate
+   */
+  private void warmUp(IWarmUpDelegate delegate) {
+    String name = delegate.getClass().getName();
+    try {
+      int count = delegate.warmUp();
+      objects.addAndGet(count);
+      logger.debug("Warm-up of " + name + " preloaded " + count + " objects");
+    } catch (RuntimeException e) {
+      failures.add(name + ": " + e.getMessage());
+      logger.error("Warm-up of " + name + " failed", e);
+    }
+  }
+
+  /**
+   * Start the warm-up if necessary and wait for it to complete.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the time unit of the timeout
+   * @return true if the warm-up completed, false if the time ran out
+   * @throws InterruptedException when the calling thread is interrupted
+   */
+  public boolean await(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    start();
+    try {
+      future.get(timeout, unit);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    } catch (ExecutionException e) {
+      // The future only completes normally.
+      return true;
+    }
+  }
+
+  /**
+   * Is the warm-up complete? Report the node ready only after this is true.
+   *
+   * @return true if every delegate has finished its warm-up
+   */
+  public boolean isReady() {
+    return future.isDone();
+  }
+
+  /**
+   * Get the future that completes when the warm-up completes.
+   *
+   * @return the future
+   */
+  public CompletableFuture<DelegateWarmUp> getFuture() {
+    return future;
+  }
+
+  /**
+   * Get the number of objects the delegates have preloaded so far.
+   *
+   * @return the number of objects
+   */
+  public int getObjectCount() {
+    return objects.get();
+  }
+
+  /**
+   * Get the delegates that failed to warm up, with the reasons.
+   *
+   * @return the failures, empty if there are none
+   */
+  public List<String> getFailures() {
+    synchronized (failures) {
+      return new ArrayList<String>(failures);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import com.poesys.db.dao.PoesysTrackingThread;
+import com.poesys.db.dto.IDbDto;
+
+
+/**
+ * <p>
+ * Registers the EXISTING DTOs of a processed list with the tracking thread of
+ * the transaction in one pass. The tracking thread indexes its DTOs by the
+ * string form of the primary key, which it builds from the key values on every
+ * lookup, so checking each DTO with getDto() before adding it with addDto()
+ * builds the string and hashes it twice per DTO. For lists that are mostly
+ * EXISTING, such as a large aggregate saved again with a few changes, that
+ * check is most of the cost of the registration.
+ * </p>
+ * <p>
+ * The tracker skips a DTO object it has already registered by identity, which
+ * costs no key work. In a new transaction, whose thread tracks no DTOs yet,
+ * the tracker then adds each remaining DTO without the getDto() check; if the
+ * list holds two different objects with the same key, the thread tracks the
+ * later one. In a transaction that may already track DTOs, the tracker keeps
+ * the check so it never replaces a tracked DTO.
+ * </p>
+ *
+ * @author Robert J. Muller
+ */
+final class ExistingDtoTracker {
+  /**
+   * Static methods only
+   */
+  private ExistingDtoTracker() {
+  }
+
+  /**
+   * Register the EXISTING DTOs of a collection with a tracking thread,
+   * skipping DTOs that the thread already tracks. The method ignores DTOs with
+   * any other status.
+   *
+   * @param thread the tracking thread of the transaction
+   * @param dtos the DTOs to register
+   * @param newTransaction true if the thread does not yet track any DTOs
+   * @return the number of DTOs the method added to the thread
+   */
+  static int track(PoesysTrackingThread thread,
+                   Collection<? extends IDbDto> dtos,
+                   boolean newTransaction) {
+    IdentityHashMap<IDbDto, Boolean> map =
+      new IdentityHashMap<IDbDto, Boolean>(dtos.size());
+    Set<IDbDto> registered = Collections.newSetFromMap(map);
+    int added = 0;
+    for (IDbDto dto : dtos) {
+      if (dto.getStatus() != IDbDto.Status.EXISTING || !registered.add(dto)) {
+        continue;
+      }
+      if (newTransaction || thread.getDto(dto.getPrimaryKey()) == null) {
+        thread.addDto(dto);
+        added++;
+      }
+    }
+    return added;
+  }
+}
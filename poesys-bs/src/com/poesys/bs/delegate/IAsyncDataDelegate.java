@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.poesys.bs.dto.IDto;
+import com.poesys.db.pk.IPrimaryKey;
+
+
+/**
+ * <p>
+ * An asynchronous companion to the IDataDelegate interface. Each method starts
+ * the corresponding IDataDelegate operation on the delegate's asynchronous
+ * executor and immediately returns a CompletableFuture for the result, so a
+ * caller can start several delegate operations and compose or wait for them
+ * without blocking a request thread on each one.
+ * </p>
+ * <p>
+ * A failed operation completes its future exceptionally with the same
+ * DelegateException that the synchronous operation throws, including the list
+ * of keys of the DTOs that failed batch processing. Note that join() wraps the
+ * exception in a CompletionException and get() wraps it in an
+ * ExecutionException; the DelegateException is the cause.
+ * </p>
+ *
+ * @see IDataDelegate
+ *
+ * @author Robert J. Muller
+ *
+ * @param <T> the business layer DTO type
+ * @param <S> the data-access layer DTO type
+ * @param <K> the primary key type
+ */
+public interface IAsyncDataDelegate<T extends IDto<S>, S extends com.poesys.db.dto.IDbDto, K extends IPrimaryKey> {
+
+  /**
+   * Query an object of type T based on its primary key values.
+   *
+   * @param key the primary key of the object to query
+   * @return a future for the object of type T or null if no object matches
+   *         the key
+   * @see IDataDelegate#getObject(IPrimaryKey)
+   */
+  CompletableFuture<T> getObjectAsync(K key);
+
+  /**
+   * Query an object of type T based on its primary key values with a specified
+   * expiration time.
+   *
+   * @param key the primary key of the object to query
+   * @param expiration the time in milliseconds until the queried object expires
+   *          in a cache
+   * @return a future for the object of type T or null if no object matches
+   *         the key
+   * @see IDataDelegate#getObject(IPrimaryKey, int)
+   */
+  CompletableFuture<T> getObjectAsync(K key, int expiration);
+
+  /**
+   * Query the objects of type T for a collection of primary keys.
+   *
+   * @param keys the primary keys of the objects to query
+   * @return a future for the list of T objects in key order
+   * @see IDataDelegate#getObjects(Collection)
+   */
+  CompletableFuture<List<T>> getObjectsAsync(Collection<K> keys);
+
+  /**
+   * Query an object of type T based on its primary key values directly from the
+   * database, replacing any cached version of the object.
+   *
+   * @param key the primary key of the object to query
+   * @return a future for the object of type T or null if no object matches
+   *         the key
+   * @see IDataDelegate#getDatabaseObject(IPrimaryKey)
+   */
+  CompletableFuture<T> getDatabaseObjectAsync(K key);
+
+  /**
+   * Query an object of type T based on its primary key values with a specified
+   * expiration time directly from the database, replacing any cached version of
+   * the object.
+   *
+   * @param key the primary key of the object to query
+   * @param expiration the time in milliseconds until the queried object expires
+   *          in a cache
+   * @return a future for the object of type T or null if no object matches
+   *         the key
+   * @see IDataDelegate#getDatabaseObject(IPrimaryKey, int)
+   */
+  CompletableFuture<T> getDatabaseObjectAsync(K key, int expiration);
+
+  /**
+   * Get a list of all the objects of type T in the database.
+   *
+   * @param rows the number of rows to fetch at once, optimizes large queries; 0
+   *          means the default
+   * @return a future for the list of T objects
+   * @see IDataDelegate#getAllObjects(int)
+   */
+  CompletableFuture<List<T>> getAllObjectsAsync(int rows);
+
+  /**
+   * Get a list of all the T objects in the database, setting the expiration
+   * time to a specified value when caching the objects.
+   *
+   * @param rows the number of rows to fetch at once, optimizes large queries; 0
+   *          means the default
+   * @param expiration the time in milliseconds until the queried objects expire
+   *          in the cache
+   * @return a future for the list of T objects
+   * @see IDataDelegate#getAllObjects(int, int)
+   */
+  CompletableFuture<List<T>> getAllObjectsAsync(int rows, int expiration);
+
+  /**
+   * Insert a list of objects of type T into the database.
+   *
+   * @param list the list of T objects
+   * @return a future that completes when the transaction completes
+   * @see IDataDelegate#insert(List)
+   */
+  CompletableFuture<Void> insertAsync(List<T> list);
+
+  /**
+   * Insert an object of type T.
+   *
+   * @param object the object of type T
+   * @return a future that completes when the transaction completes
+   * @see IDataDelegate#insert(IDto)
+   */
+  CompletableFuture<Void> insertAsync(T object);
+
+  /**
+   * Update an object of type T, updating all changeable values.
+   *
+   * @param object the object of type T to update
+   * @return a future that completes when the transaction completes
+   * @see IDataDelegate#update(IDto)
+   */
+  CompletableFuture<Void> updateAsync(T object);
+
+  /**
+   * Update a list of objects of type T, updating all changeable values.
+   *
+   * @param list the list of objects of type T
+   * @return a future that completes when the transaction completes
+   * @see IDataDelegate#updateBatch(List)
+   */
+  CompletableFuture<Void> updateBatchAsync(List<T> list);
+
+  /**
+   * Delete an object of type T.
+   *
+   * @param object the object to delete
+   * @return a future that completes when the transaction completes
+   * @see IDataDelegate#delete(IDto)
+   */
+  CompletableFuture<Void> deleteAsync(T object);
+
+  /**
+   * Delete a list of objects of type T.
+   *
+   * @param list the list of T objects
+   * @return a future that completes when the transaction completes
+   * @see IDataDelegate#deleteBatch(List)
+   */
+  CompletableFuture<Void> deleteBatchAsync(List<T> list);
+
+  /**
+   * Process a list of objects of type T in various statuses.
+   *
+   * @param list the list of T objects
+   * @return a future that completes when the transaction completes
+   * @see IDataDelegate#process(List)
+   */
+  CompletableFuture<Void> processAsync(List<T> list);
+
+  /**
+   * Process an object of type T in various statuses.
+   *
+   * @param object the object of type T
+   * @return a future that completes when the transaction completes
+   * @see IDataDelegate#process(IDto)
+   */
+  CompletableFuture<Void> processAsync(T object);
+
+  /**
+   * Truncate a table, removing all rows.
+   *
+   * @param tableName the name of the table to truncate
+   * @return a future that completes when the table is truncated
+   * @see IDataDelegate#truncateTable(String)
+   */
+  CompletableFuture<Void> truncateTableAsync(String tableName);
+}
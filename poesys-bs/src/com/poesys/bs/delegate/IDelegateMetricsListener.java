@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+/**
+ * <p>
+ * Service provider interface for sending delegate metrics to a metrics
+ * library such as Micrometer or Dropwizard. DelegateMetrics calls every
+ * listener for every operation it records, in the thread that ran the
+ * operation, so an implementation must be thread safe and fast and must not
+ * throw exceptions.
+ * </p>
+ * <p>
+ * DelegateMetrics loads the listeners named in the file
+ * META-INF/services/com.poesys.bs.delegate.IDelegateMetricsListener on the
+ * class path through java.util.ServiceLoader; you can also add a listener
+ * with DelegateMetrics.addListener(). Listeners get operations only from
+ * subsystems that have metrics turned on.
+ * </p>
+ *
+ * @author Robert J. Muller
+ */
+public interface IDelegateMetricsListener {
+  /**
+   * Record a delegate operation.
+   *
+   * @param delegate the name of the delegate metrics, the subsystem and the
+   *          delegate class name separated by a colon
+   * @param operation the operation
+   * @param nanos the latency in nanoseconds
+   * @param rows the number of objects the operation returned or wrote
+   * @param failed true if the operation threw an exception
+   */
+  void record(String delegate,
+              DelegateMetrics.Operation operation,
+              long nanos,
+              int rows,
+              boolean failed);
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.List;
+
+import com.poesys.db.dao.query.IQuerySql;
+import com.poesys.db.dto.IDbDto;
+
+
+/**
+ * <p>
+ * A SQL query for keyset (seek) pagination. The getSql() method returns a
+ * SELECT statement with no ORDER BY clause, and the delegate appends a
+ * condition that selects the rows after the last key of the previous page and
+ * an ORDER BY clause on the primary key columns. Each page therefore costs an
+ * index range scan from the last key, however deep the page.
+ * </p>
+ * <p>
+ * The key columns must be in the same order as the columns of the primary key
+ * and must be qualified with the table alias if the query joins tables. Here
+ * is an example implementation:
+ * </p>
+ *
+ * <pre>
+ * <code>
+ * public class TestNaturalPageSql implements IKeysetQuerySql&lt;TestNatural&gt; {
+ *   private static final String SQL =
+ *     "SELECT key1, key2, col1 FROM TestNatural";
+ *
+ *   public String getSql() {
+ *     return SQL;
+ *   }
+ *
+ *   public List&lt;String&gt; getKeyColumns() {
+ *     return Arrays.asList("key1", "key2");
+ *   }
+ *   ...
+ * }
+ * </code>
+ * </pre>
+ *
+ * @author Robert J. Muller
+ * @param <T> the type of DTO that the query returns
+ */
+public interface IKeysetQuerySql<T extends IDbDto> extends IQuerySql<T> {
+  /**
+   * Get the primary key columns in primary-key order.
+   *
+   * @return the list of column names
+   */
+  List<String> getKeyColumns();
+
+  /**
+   * Does the SELECT statement already have a WHERE clause? If so, the delegate
+   * adds the keyset condition with AND rather than WHERE.
+   *
+   * @return true if the statement has a WHERE clause, false by default
+   */
+  default boolean hasWhereClause() {
+    return false;
+  }
+}
@@ -4,9 +4,15 @@
 package com.poesys.bs.delegate;
 
 
+import java.math.BigInteger;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 import com.poesys.bs.dto.IDto;
+import com.poesys.db.dao.query.IParameterizedCountSql;
+import com.poesys.db.dao.query.IParameterizedQuerySql;
+import com.poesys.db.dto.IDbDto;
 import com.poesys.db.pk.IPrimaryKey;
 
 
@@ -61,6 +67,34 @@ public interface IReadOnlyDataDelegate<T extends IDto<S>, S extends com.poesys.d
    */
   T getObject(K key) throws DelegateException;
 
+  /**
+   * Query an object of type T by the value of its numeric identity or
+   * sequence primary key. A near-cache hit costs no key object and no string
+   * key; a miss builds the key and queries the object like getObject().
+   * 
+   * @param id the primary key value
+   * @return an object of type T or null if no object matches the key
+   * @throws DelegateException when the delegate has no numeric primary key or
+   *           there is a problem querying the object
+   */
+  T getObjectById(long id) throws DelegateException;
+
+  /**
+   * Query the objects of type T for a collection of primary keys. The delegate
+   * looks up all the keys in the cache first and then queries only the missing
+   * objects from the database, several keys at a time when the delegate has a
+   * key-list query, rather than querying each key separately as getObject()
+   * does.
+   * 
+   * @param keys the primary keys of the objects to query
+   * @return a list of T objects in the order of the keys, leaving out keys
+   *         that match no object
+   * @throws DelegateException when there is a database problem, an invalid
+   *           primary key, a nested-object query problem, or a problem setting
+   *           initial object status
+   */
+  List<T> getObjects(Collection<K> keys) throws DelegateException;
+
   /**
    * Query an object of type T based on its primary key values directly from
    * the database, replacing any cached version of the object.
@@ -100,4 +134,107 @@ public interface IReadOnlyDataDelegate<T extends IDto<S>, S extends com.poesys.d
    *             or a problem assigning initial DTO status
    */
   List<T> getAllObjects(int rows) throws DelegateException;
+
+  /**
+   * Stream all the objects of type T in the database, wrapping each row as the
+   * stream consumer reads it rather than building the whole list in memory.
+   * The stream queries its rows on its own connection, bypasses the cache, and
+   * closes the connection when it reads the last row or when you close the
+   * stream, so use try-with-resources if you might not read every row:
+   * 
+   * <pre>
+   * try (Stream&lt;BsTestNatural&gt; objects = delegate.streamAllObjects(1000)) {
+   *   objects.forEach(object -&gt; ...);
+   * }
+   * </pre>
+   * 
+   * @param fetchSize the number of rows to fetch at once; 0 means the driver
+   *          default
+   * @return a stream of T objects
+   * @throws DelegateException when there is a problem executing the query, a
+   *           problem with nested-object queries, or a problem assigning
+   *           initial DTO status
+   */
+  Stream<T> streamAllObjects(int fetchSize) throws DelegateException;
+
+  /**
+   * Query the objects of type T that a parameterized query selects, wrapping
+   * each queried object. The query goes through the delegate's DAO factory,
+   * so it caches the objects when the subsystem uses a cache.
+   * 
+   * @param <P> the type of the DTO that holds the query parameters
+   * @param sql the parameterized SQL query
+   * @param parameters the DTO that holds the query parameters
+   * @param rows the number of rows to fetch at once, optimizes large queries; 0
+   *          means the default
+   * @return a list of T objects
+   * @throws DelegateException when there is a problem executing the query, a
+   *           problem with nested-object queries, or a problem assigning
+   *           initial DTO status
+   */
+  <P extends IDbDto> List<T> getObjectsWithParameters(IParameterizedQuerySql<S, P> sql,
+                                                      P parameters,
+                                                      int rows)
+      throws DelegateException;
+
+  /**
+   * Stream the objects of type T that a parameterized query selects, wrapping
+   * each row as the stream consumer reads it. Like streamAllObjects(), the
+   * stream queries on its own connection, bypasses the cache, and closes the
+   * connection when it reads the last row or when you close the stream.
+   * 
+   * @param <P> the type of the DTO that holds the query parameters
+   * @param sql the parameterized SQL query
+   * @param parameters the DTO that holds the query parameters
+   * @param fetchSize the number of rows to fetch at once; 0 means the driver
+   *          default
+   * @return a stream of T objects
+   * @throws DelegateException when there is a problem executing the query, a
+   *           problem with nested-object queries, or a problem assigning
+   *           initial DTO status
+   */
+  <P extends IDbDto> Stream<T> streamObjectsWithParameters(IParameterizedQuerySql<S, P> sql,
+                                                           P parameters,
+                                                           int fetchSize)
+      throws DelegateException;
+
+  /**
+   * Count all the objects of type T without querying them. The concrete
+   * delegate must supply the count SQL.
+   * 
+   * @return the number of objects
+   * @throws DelegateException when the delegate has no count SQL or there is
+   *           a problem executing the query
+   */
+  BigInteger count() throws DelegateException;
+
+  /**
+   * Count the objects of type T that a parameterized count query selects
+   * without querying them. The count may come from a short-lived count cache
+   * if the subsystem configures one.
+   * 
+   * @param <P> the type of the DTO that holds the query parameters
+   * @param sql the parameterized count SQL query
+   * @param parameters the DTO that holds the query parameters
+   * @return the number of objects
+   * @throws DelegateException when there is a problem executing the query
+   */
+  <P extends IDbDto> BigInteger count(IParameterizedCountSql<P> sql,
+                                      P parameters) throws DelegateException;
+
+  /**
+   * Get a page of objects of type T in primary-key order, starting after the
+   * last object of the previous page. The query seeks directly to the key, so
+   * a deep page costs the same as the first page. Pass null to get the first
+   * page, then pass the next key of each page to get the following page until
+   * a page has no next key.
+   * 
+   * @param after the continuation key from the previous page, null for the
+   *          first page
+   * @param pageSize the maximum number of objects on the page
+   * @return the page of objects with its continuation key
+   * @throws DelegateException when the delegate has no page SQL or there is a
+   *           problem executing the query
+   */
+  Page<T> getPage(IPrimaryKey after, int pageSize) throws DelegateException;
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import com.poesys.db.dao.PoesysTrackingThread;
+
+
+/**
+ * The transaction of a unit of work that spans several delegate calls, bound
+ * to the thread that runs the work. Data delegates in INLINE mode find the
+ * context of the calling thread and write their objects in its transaction
+ * on the calling thread instead of handing them off to a transaction of their
+ * own.
+ *
+ * @see TransactionContext
+ *
+ * @author Robert J. Muller
+ */
+public interface ITransactionContext {
+  /**
+   * Get the subsystem of the transaction.
+   *
+   * @return the subsystem
+   */
+  String getSubsystem();
+
+  /**
+   * Get the tracking thread that owns the connection and the DTO tracking
+   * history of the transaction. The poesys-db DAOs find the transaction by
+   * casting the current thread to a tracking thread, so the work of the
+   * transaction runs on this thread.
+   *
+   * @return the tracking thread
+   */
+  PoesysTrackingThread getTrackingThread();
+
+  /**
+   * Mark the transaction so that it rolls back rather than commits when the
+   * unit of work ends.
+   */
+  void setRollbackOnly();
+
+  /**
+   * Is the transaction marked to roll back? After the transaction ends, this
+   * is true if the transaction rolled back for any reason.
+   *
+   * @return true if the transaction rolls back
+   */
+  boolean isRollbackOnly();
+
+  /**
+   * Register an action to run on the tracking thread after the transaction
+   * commits or rolls back, such as evicting the written objects from the
+   * caches. The actions run in the order of registration.
+   *
+   * @param action the action
+   */
+  void afterCompletion(Runnable action);
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+/**
+ * A delegate that can preload its objects into the caches at startup, so the
+ * first requests after a deploy do not all go to the database. DelegateWarmUp
+ * runs the warm-up of a set of delegates in parallel.
+ *
+ * @see DelegateWarmUp
+ *
+ * @author Robert J. Muller
+ */
+public interface IWarmUpDelegate {
+  /**
+   * Query the objects to preload and put them into the DAO manager's cache
+   * and the delegate's near cache, if it has one.
+   *
+   * @return the number of objects the method preloaded
+   * @throws DelegateException when there is a problem querying the objects
+   */
+  int warmUp() throws DelegateException;
+}
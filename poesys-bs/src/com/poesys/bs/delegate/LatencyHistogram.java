@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * <p>
+ * A lock-free histogram of latencies in nanoseconds. Each power of two splits
+ * into 16 buckets, so a percentile is accurate to within about 6% of the
+ * value, and recording a latency is a bucket computation and an atomic
+ * increment with no lock and no allocation. Percentiles read the buckets
+ * without stopping the writers, so a percentile taken during heavy recording
+ * reflects a moment close to, but not exactly at, the read.
+ * </p>
+ *
+ * @author Robert J. Muller
+ */
+public class LatencyHistogram {
+  /** Bits of sub-bucket precision within each power of two */
+  private static final int SUB_BITS = 4;
+  /** Number of sub-buckets within each power of two */
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  /** Number of buckets for all non-negative long values */
+  private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+  /** The bucket counts */
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  /** The number of recorded values */
+  private final LongAdder count = new LongAdder();
+  /** The sum of the recorded values */
+  private final LongAdder sum = new LongAdder();
+  /** The largest recorded value */
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+  /**
+   * Get the bucket for a value.
+   *
+   * @param value the non-negative value
+   * @return the bucket index
+   */
+  static int getBucket(long value) {
+    if (value < SUB_COUNT) {
+      return (int)value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+    return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+  }
+
+  /**
+   * Get the largest value that falls into a bucket.
+   *
+   * @param bucket the bucket index
+   * @return the upper bound of the bucket
+   */
+  static long getUpperBound(int bucket) {
+    if (bucket < SUB_COUNT) {
+      return bucket;
+    }
+    int shift = bucket / SUB_COUNT - 1;
+    long lower = (long)(SUB_COUNT + bucket % SUB_COUNT) << shift;
+    return lower + (1L << shift) - 1;
+  }
+
+  /**
+   * Record a latency.
+   *
+   * @param nanos the latency in nanoseconds; negative values count as 0
+   */
+  public void record(long nanos) {
+    long value = Math.max(0L, nanos);
+    counts.incrementAndGet(getBucket(value));
+    count.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  /**
+   * Get the number of recorded latencies.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Get the mean latency.
+   *
+   * @return the mean in nanoseconds, 0 if there are no latencies
+   */
+  public double getMean() {
+    long n = count.sum();
+    return n == 0 ? 0.0 : (double)sum.sum() / n;
+  }
+
+  /**
+   * Get the largest latency.
+   *
+   * @return the maximum in nanoseconds
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Get a latency percentile, the upper bound of the bucket that holds it.
+   *
+   * @param percentile the percentile from 0 to 100
+   * @return the latency in nanoseconds, 0 if there are no latencies
+   */
+  public long getPercentile(double percentile) {
+    long[] snapshot = new long[BUCKETS];
+    long total = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0L) {
+      return 0L;
+    }
+    double p = Math.min(100.0, Math.max(0.0, percentile));
+    long rank = Math.max(1L, (long)Math.ceil(p / 100.0 * total));
+    long seen = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(getUpperBound(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Remove all the recorded latencies.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0L);
+    }
+    count.reset();
+    sum.reset();
+    max.reset();
+  }
+}
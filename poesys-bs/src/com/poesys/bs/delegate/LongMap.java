@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.Arrays;
+
+
+/**
+ * A hash map from primitive long keys to objects with open addressing and
+ * linear probing. Lookups neither box the key nor allocate, which makes the
+ * map suitable for indexing objects by numeric identity or sequence key. The
+ * map does not accept null values. The map is not thread safe; the owner
+ * guards it.
+ *
+ * @author Robert J. Muller
+ * @param <V> the value type
+ */
+final class LongMap<V> {
+  /** The minimum table size */
+  private static final int MIN_CAPACITY = 16;
+
+  /** The keys by slot */
+  private long[] keys;
+  /** The values by slot, null for an empty slot */
+  private Object[] values;
+  /** The table size minus one, for masking the hash */
+  private int mask;
+  /** The number of entries */
+  private int size = 0;
+
+  /**
+   * Create a LongMap object.
+   *
+   * @param expected the expected number of entries
+   */
+  LongMap(int expected) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < (1 << 30) && capacity * 3 / 4 < expected) {
+      capacity <<= 1;
+    }
+    keys = new long[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+  }
+
+  /**
+   * Get the home slot of a key.
+   *
+   * @param key the key
+   * @return the slot
+   */
+  private int slot(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int)(hash ^ (hash >>> 32)) & mask;
+  }
+
+  /**
+   * Get the value for a key.
+   *
+   * @param key the key
+   * @return the value, or null if the map has no value for the key
+   */
+  @SuppressWarnings("unchecked")
+  V get(long key) {
+    for (int i = slot(key);; i = (i + 1) & mask) {
+      Object value = values[i];
+      if (value == null) {
+        return null;
+      } else if (keys[i] == key) {
+        return (V)value;
+      }
+    }
+  }
+
+  /**
+   * Put a value for a key, replacing any existing value.
+   *
+   * @param key the key
+   * @param value the value, not null
+   * @return the replaced value, or null if there was none
+   */
+  @SuppressWarnings("unchecked")
+  V put(long key, V value) {
+    if (value == null) {
+      throw new IllegalArgumentException("null value");
+    }
+    for (int i = slot(key);; i = (i + 1) & mask) {
+      Object old = values[i];
+      if (old == null) {
+        keys[i] = key;
+        values[i] = value;
+        if (++size > values.length * 3 / 4) {
+          resize();
+        }
+        return null;
+      } else if (keys[i] == key) {
+        values[i] = value;
+        return (V)old;
+      }
+    }
+  }
+
+  /**
+   * Remove the value for a key.
+   *
+   * @param key the key
+   * @return the removed value, or null if there was none
+   */
+  @SuppressWarnings("unchecked")
+  V remove(long key) {
+    for (int i = slot(key);; i = (i + 1) & mask) {
+      Object old = values[i];
+      if (old == null) {
+        return null;
+      } else if (keys[i] == key) {
+        delete(i);
+        size--;
+        return (V)old;
+      }
+    }
+  }
+
+  /**
+   * Empty a slot, shifting back any later entries of the probe run so that
+   * lookups never stop early at the empty slot.
+   *
+   * @param i the slot to empty
+   */
+  private void delete(int i) {
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      if (values[j] == null) {
+        break;
+      }
+      int home = slot(keys[j]);
+      // Move the entry at j back to i unless its home slot lies cyclically
+      // in (i, j], where a lookup still reaches it.
+      boolean reachable =
+        i <= j ? (i < home && home <= j) : (i < home || home <= j);
+      if (!reachable) {
+        keys[i] = keys[j];
+        values[i] = values[j];
+        i = j;
+      }
+    }
+    values[i] = null;
+  }
+
+  /**
+   * Double the table size and reinsert the entries.
+   */
+  private void resize() {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = new long[oldKeys.length * 2];
+    values = new Object[oldValues.length * 2];
+    mask = values.length - 1;
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != null) {
+        int j = slot(oldKeys[i]);
+        while (values[j] != null) {
+          j = (j + 1) & mask;
+        }
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * Remove all the entries.
+   */
+  void clear() {
+    Arrays.fill(values, null);
+    size = 0;
+  }
+
+  /**
+   * Get the number of entries.
+   *
+   * @return the number of entries
+   */
+  int size() {
+    return size;
+  }
+}
@@ -0,0 +1,492 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiPredicate;
+
+import com.poesys.db.ConstraintViolationException;
+import com.poesys.db.Message;
+import com.poesys.db.dao.IDaoFactory;
+import com.poesys.db.dao.delete.IDelete;
+import com.poesys.db.dao.delete.IDeleteBatch;
+import com.poesys.db.dao.delete.IDeleteCollection;
+import com.poesys.db.dao.delete.IDeleteSql;
+import com.poesys.db.dao.delete.IDeleteSqlWithParameters;
+import com.poesys.db.dao.delete.IDeleteWithParameters;
+import com.poesys.db.dao.insert.IInsert;
+import com.poesys.db.dao.insert.IInsertBatch;
+import com.poesys.db.dao.insert.IInsertCollection;
+import com.poesys.db.dao.insert.IInsertSql;
+import com.poesys.db.dao.query.IKeyListQuerySql;
+import com.poesys.db.dao.query.IKeyQuerySql;
+import com.poesys.db.dao.query.IParameterizedQuerySql;
+import com.poesys.db.dao.query.IQueryByKey;
+import com.poesys.db.dao.query.IQueryList;
+import com.poesys.db.dao.query.IQueryListWithParameters;
+import com.poesys.db.dao.query.IQuerySql;
+import com.poesys.db.dao.update.IUpdate;
+import com.poesys.db.dao.update.IUpdateBatch;
+import com.poesys.db.dao.update.IUpdateCollection;
+import com.poesys.db.dao.update.IUpdateSql;
+import com.poesys.db.dao.update.IUpdateWithParameters;
+import com.poesys.db.dto.IDbDto;
+import com.poesys.db.dto.IDbDto.Status;
+import com.poesys.db.pk.IPrimaryKey;
+
+
+/**
+ * <p>
+ * A DAO factory for one data-access DTO class that keeps the objects in a
+ * sorted concurrent map by primary key instead of a database. The factory
+ * ignores the SQL it gets:
+ * </p>
+ * <ul>
+ * <li>the key and key-list queries look the keys up in the map;</li>
+ * <li>the list query returns all the objects in key order;</li>
+ * <li>the inserters add NEW objects, failing on a key already in the map;</li>
+ * <li>the updaters replace CHANGED objects;</li>
+ * <li>the deleters remove DELETED and CASCADE_DELETED objects.</li>
+ * </ul>
+ * <p>
+ * The single-object and collection DAOs set the objects they write to
+ * EXISTING, as the JDBC DAOs do; the delegate sets the status after the batch
+ * DAOs. Parameterized queries return the objects that the parameter filter
+ * accepts, or all objects with no filter; parameterized deletes remove the
+ * objects that the filter accepts and need a filter. A parameterized update
+ * replaces the object with the key of its parameter DTO.
+ * </p>
+ * <p>
+ * The map holds the objects the delegates wrote, not copies, and there are no
+ * transactions: a write is visible as soon as the DAO returns, and a rolled
+ * back transaction does not undo it. The objects must have their primary keys
+ * before the insert, so identity keys the database would generate do not
+ * work. Each DAO call waits for the latency of its MemoryDaoManager, once per
+ * call rather than once per object, like one database round trip.
+ * </p>
+ *
+ * @see MemoryDaoManager
+ *
+ * @author Robert J. Muller
+ * @param <T> the data-access DTO type
+ */
+public class MemoryDaoFactory<T extends IDbDto> implements IDaoFactory<T> {
+  /** Error message when an insert finds the key already in the map */
+  private static final String DUPLICATE_KEY =
+    "com.poesys.bs.delegate.msg.duplicateKey";
+  /** Error message when a parameterized delete has no filter */
+  private static final String NO_FILTER =
+    "com.poesys.bs.delegate.msg.noParameterFilter";
+
+  /** The manager that supplies the latency */
+  private final MemoryDaoManager manager;
+  /** The data-access DTO class name */
+  private final String name;
+  /** The stored objects by primary key */
+  private final ConcurrentNavigableMap<IPrimaryKey, T> objects =
+    new ConcurrentSkipListMap<IPrimaryKey, T>();
+  /** Selects objects for parameterized queries and deletes, null for none */
+  private volatile BiPredicate<? super T, IDbDto> filter = null;
+
+  /** Queries one object by key */
+  private final IQueryByKey<T> queryByKey = new IQueryByKey<T>() {
+    @Override
+    public T queryByKey(IPrimaryKey key) {
+      manager.await();
+      return objects.get(key);
+    }
+
+    @Override
+    public void setExpiration(int expiration) {
+    }
+
+    @Override
+    public void close() {
+    }
+  };
+
+  /**
+   * Create a MemoryDaoFactory object.
+   *
+   * @param manager the manager that supplies the latency
+   * @param name the data-access DTO class name
+   */
+  MemoryDaoFactory(MemoryDaoManager manager, String name) {
+    this.manager = manager;
+    this.name = name;
+  }
+
+  /**
+   * Set the filter that selects objects for parameterized queries and
+   * deletes. The filter gets a stored object and the parameter DTO.
+   *
+   * @param filter the filter, null to query all objects and refuse
+   *          parameterized deletes
+   */
+  public void setParameterFilter(BiPredicate<? super T, IDbDto> filter) {
+    this.filter = filter;
+  }
+
+  /**
+   * Get the number of stored objects.
+   *
+   * @return the number of objects
+   */
+  public int size() {
+    return objects.size();
+  }
+
+  /**
+   * Get a stored object without waiting for the latency.
+   *
+   * @param key the primary key
+   * @return the object, or null if there is none with the key
+   */
+  public T get(IPrimaryKey key) {
+    return objects.get(key);
+  }
+
+  /**
+   * Insert an object if it is NEW.
+   *
+   * @param dto the object
+   * @param finalize true to set the object to EXISTING after the insert
+   */
+  private void insert(T dto, boolean finalize) {
+    if (dto.getStatus() != Status.NEW) {
+      return;
+    }
+    IPrimaryKey key = dto.getPrimaryKey();
+    if (objects.putIfAbsent(key, dto) != null) {
+      Object[] args = { key.getStringKey(), name };
+      throw new ConstraintViolationException(Message.getMessage(DUPLICATE_KEY,
+                                                                args));
+    }
+    if (finalize) {
+      dto.setExisting();
+    }
+  }
+
+  /**
+   * Replace an object if it is CHANGED.
+   *
+   * @param dto the object
+   * @param finalize true to set the object to EXISTING after the update
+   */
+  private void update(T dto, boolean finalize) {
+    if (dto.getStatus() != Status.CHANGED) {
+      return;
+    }
+    objects.put(dto.getPrimaryKey(), dto);
+    if (finalize) {
+      dto.setExisting();
+    }
+  }
+
+  /**
+   * Remove an object if it is DELETED or CASCADE_DELETED.
+   *
+   * @param dto the object
+   */
+  private void delete(T dto) {
+    Status status = dto.getStatus();
+    if (status == Status.DELETED || status == Status.CASCADE_DELETED) {
+      objects.remove(dto.getPrimaryKey());
+    }
+  }
+
+  @Override
+  public IQueryByKey<T> getQueryByKey(IKeyQuerySql<T> sql, String subsystem) {
+    return queryByKey;
+  }
+
+  @Override
+  public IQueryByKey<T> getDatabaseQueryByKey(IKeyQuerySql<T> sql,
+                                              String subsystem) {
+    return queryByKey;
+  }
+
+  @Override
+  public IQueryList<T> getQueryList(IQuerySql<T> sql,
+                                    String subsystem,
+                                    int rows) {
+    return new IQueryList<T>() {
+      @Override
+      public List<T> query() {
+        manager.await();
+        return new ArrayList<T>(objects.values());
+      }
+
+      @Override
+      public void setExpiration(int expiration) {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public IQueryList<T> getQueryListWithKeyList(final IKeyListQuerySql<T> sql,
+                                               String subsystem,
+                                               int rows) {
+    return new IQueryList<T>() {
+      @Override
+      public List<T> query() {
+        manager.await();
+        List<IPrimaryKey> keys = sql.getKeys();
+        List<T> list = new ArrayList<T>(keys.size());
+        for (IPrimaryKey key : keys) {
+          T object = objects.get(key);
+          if (object != null) {
+            list.add(object);
+          }
+        }
+        return list;
+      }
+
+      @Override
+      public void setExpiration(int expiration) {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public <S extends IDbDto, C extends Collection<T>> IQueryListWithParameters<T, S, C> getQueryListWithParameters(IParameterizedQuerySql<T, S> sql,
+                                                                                                                 String subsystem,
+                                                                                                                 int rows) {
+    return new IQueryListWithParameters<T, S, C>() {
+      @SuppressWarnings("unchecked")
+      @Override
+      public C query(S parameters) {
+        manager.await();
+        BiPredicate<? super T, IDbDto> test = filter;
+        List<T> list = new ArrayList<T>();
+        for (T object : objects.values()) {
+          if (test == null || test.test(object, parameters)) {
+            list.add(object);
+          }
+        }
+        return (C)list;
+      }
+
+      @Override
+      public void setExpiration(int expiration) {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public IInsert<T> getInsert(IInsertSql<T> sql, Boolean inserted) {
+    return new IInsert<T>() {
+      @SuppressWarnings("unchecked")
+      @Override
+      public void insert(IDbDto dto) {
+        manager.await();
+        MemoryDaoFactory.this.insert((T)dto, true);
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public IInsertBatch<T> getInsertBatch(IInsertSql<T> sql) {
+    return new IInsertBatch<T>() {
+      @Override
+      public void insert(Collection<T> dtos, int size) {
+        manager.await();
+        for (T dto : dtos) {
+          MemoryDaoFactory.this.insert(dto, false);
+        }
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public IInsertCollection<T> getInsertCollection(IInsertSql<T> sql,
+                                                  Boolean inserted) {
+    return new IInsertCollection<T>() {
+      @Override
+      public void insert(Collection<T> dtos) {
+        manager.await();
+        for (T dto : dtos) {
+          MemoryDaoFactory.this.insert(dto, true);
+        }
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public IUpdate<T> getUpdate(IUpdateSql<T> sql) {
+    return new IUpdate<T>() {
+      @Override
+      public void update(T dto) {
+        manager.await();
+        MemoryDaoFactory.this.update(dto, true);
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public IUpdateWithParameters<T> getUpdateWithParameters(IUpdateSql<T> sql) {
+    return new IUpdateWithParameters<T>() {
+      @Override
+      public void update(T parameters) {
+        manager.await();
+        objects.replace(parameters.getPrimaryKey(), parameters);
+      }
+    };
+  }
+
+  @Override
+  public IUpdateBatch<T> getUpdateBatch(IUpdateSql<T> sql) {
+    return new IUpdateBatch<T>() {
+      @Override
+      public void update(Collection<T> dtos, int size) {
+        manager.await();
+        for (T dto : dtos) {
+          MemoryDaoFactory.this.update(dto, false);
+        }
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public IUpdateCollection<T> getUpdateCollection(IUpdateSql<T> sql) {
+    return new IUpdateCollection<T>() {
+      @Override
+      public void update(Collection<T> dtos) {
+        manager.await();
+        for (T dto : dtos) {
+          MemoryDaoFactory.this.update(dto, true);
+        }
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public IDelete<T> getDelete(IDeleteSql<T> sql) {
+    return new IDelete<T>() {
+      @Override
+      public void delete(T dto) {
+        manager.await();
+        MemoryDaoFactory.this.delete(dto);
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public <P extends IDbDto> IDeleteWithParameters<T, P> getDeleteWithParameters(IDeleteSqlWithParameters<T, P> sql) {
+    return new IDeleteWithParameters<T, P>() {
+      @Override
+      public void delete(P parameters) {
+        BiPredicate<? super T, IDbDto> test = filter;
+        if (test == null) {
+          Object[] args = { name };
+          throw new DelegateException(Message.getMessage(NO_FILTER, args));
+        }
+        manager.await();
+        objects.values().removeIf(object -> test.test(object, parameters));
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public IDeleteBatch<T> getDeleteBatch(IDeleteSql<T> sql) {
+    return new IDeleteBatch<T>() {
+      @Override
+      public void delete(Collection<T> dtos, int size) {
+        manager.await();
+        for (T dto : dtos) {
+          MemoryDaoFactory.this.delete(dto);
+        }
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public IDeleteCollection<T> getDeleteCollection(IDeleteSql<T> sql) {
+    return new IDeleteCollection<T>() {
+      @Override
+      public void delete(Collection<T> dtos) {
+        manager.await();
+        for (T dto : dtos) {
+          MemoryDaoFactory.this.delete(dto);
+        }
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public void clear() {
+    objects.clear();
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.poesys.db.dao.IDaoFactory;
+import com.poesys.db.dao.IDaoManager;
+import com.poesys.db.dto.IDbDto;
+import com.poesys.db.dto.IDtoCache;
+import com.poesys.db.pk.IPrimaryKey;
+
+
+/**
+ * <p>
+ * A DAO manager that creates a MemoryDaoFactory for each DTO class, so
+ * delegates run without a database: in unit tests, in benchmarks, and in
+ * load tests that need to separate the cost of the delegates from the cost of
+ * the database. All the delegates for a class that use the same manager share
+ * the class's objects. The manager has no caches: the factory's map is the
+ * only copy of the objects, and the cache methods do nothing.
+ * </p>
+ * <p>
+ * Delegates use the shared manager for their subsystem when the subsystem sets
+ * the memory_dao property to true; the memory_dao_latency_micros property sets
+ * the time each DAO call waits, to model the database round trip. The
+ * memory_dao property is for tests and benchmarks only. The transactions
+ * still need a connection, so the subsystem must be a JNDI subsystem whose
+ * connections do nothing, and only the tests' MemoryContextFactory, which the
+ * production jar leaves out, supplies one.
+ * </p>
+ *
+ * @see MemoryDaoFactory
+ *
+ * @author Robert J. Muller
+ */
+public class MemoryDaoManager implements IDaoManager {
+  /** Property that makes delegates use the in-memory DAOs, for tests only */
+  static final String MEMORY_DAO = "memory_dao";
+  /** Property for the time each DAO call waits in microseconds */
+  private static final String LATENCY = "memory_dao_latency_micros";
+
+  /** The shared managers by subsystem */
+  private static final ConcurrentMap<String, MemoryDaoManager> managers =
+    new ConcurrentHashMap<String, MemoryDaoManager>();
+
+  /** The factories by DTO class name */
+  private final ConcurrentMap<String, MemoryDaoFactory<?>> factories =
+    new ConcurrentHashMap<String, MemoryDaoFactory<?>>();
+  /** The time each DAO call waits in nanoseconds */
+  private volatile long latency = 0L;
+
+  /**
+   * Create a MemoryDaoManager object with no latency.
+   */
+  public MemoryDaoManager() {
+  }
+
+  /**
+   * Get the shared manager for a subsystem, creating it with the latency that
+   * the subsystem's properties set.
+   *
+   * @param subsystem the subsystem
+   * @return the manager
+   */
+  public static MemoryDaoManager getInstance(String subsystem) {
+    return managers.computeIfAbsent(subsystem, s -> {
+      MemoryDaoManager manager = new MemoryDaoManager();
+      manager.setLatency(DelegateProperties.getLong(s, LATENCY, 0L),
+                         TimeUnit.MICROSECONDS);
+      return manager;
+    });
+  }
+
+  /**
+   * Set the time each DAO call waits.
+   *
+   * @param latency the time, zero for none
+   * @param unit the time unit
+   */
+  public void setLatency(long latency, TimeUnit unit) {
+    this.latency = unit.toNanos(latency);
+  }
+
+  /**
+   * Get the time each DAO call waits.
+   *
+   * @param unit the time unit
+   * @return the time
+   */
+  public long getLatency(TimeUnit unit) {
+    return unit.convert(latency, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Wait for the latency, if any, before a DAO call. An interrupt, such as the
+   * cancellation of the transaction, ends the wait early.
+   */
+  void await() {
+    long nanos = latency;
+    if (nanos > 0L) {
+      long deadline = System.nanoTime() + nanos;
+      // Park again after spurious wakeups until the time is up.
+      while ((nanos = deadline - System.nanoTime()) > 0L
+             && !Thread.currentThread().isInterrupted()) {
+        LockSupport.parkNanos(nanos);
+      }
+    }
+  }
+
+  /**
+   * Remove the objects of all the classes.
+   */
+  public void clear() {
+    for (MemoryDaoFactory<?> factory : factories.values()) {
+      factory.clear();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T extends IDbDto, C extends Collection<T>> IDaoFactory<T> getFactory(String name,
+                                                                               String subsystem,
+                                                                               Integer expiration) {
+    MemoryDaoFactory<?> factory =
+      factories.computeIfAbsent(name, n -> new MemoryDaoFactory<T>(this, n));
+    return (IDaoFactory<T>)factory;
+  }
+
+  @Override
+  public void logMetaData() {
+  }
+
+  @Override
+  public boolean isCached(String name) {
+    return false;
+  }
+
+  @Override
+  public <T extends IDbDto> IDtoCache<? extends IDbDto> getCache(String name) {
+    return null;
+  }
+
+  @Override
+  public <T extends IDbDto> IDtoCache<T> createCache(String name) {
+    return null;
+  }
+
+  @Override
+  public void clearCache(String name) {
+  }
+
+  @Override
+  public <T extends IDbDto> T getCachedObject(IPrimaryKey key,
+                                              String subsystem) {
+    return null;
+  }
+
+  @Override
+  public <T extends IDbDto> T getCachedObject(IPrimaryKey key,
+                                              int expireTime,
+                                              String subsystem) {
+    return null;
+  }
+
+  @Override
+  public <T extends IDbDto> void putObjectInCache(String name,
+                                                  int expireTime,
+                                                  T object) {
+  }
+
+  @Override
+  public void removeObjectFromCache(String name, IPrimaryKey key) {
+  }
+
+  @Override
+  public void clearTemporaryCaches() {
+  }
+
+  @Override
+  public void clearAllCaches() {
+  }
+}
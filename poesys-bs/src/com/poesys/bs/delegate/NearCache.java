@@ -0,0 +1,617 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import com.poesys.bs.dto.IDto;
+import com.poesys.db.col.BigIntegerColumnValue;
+import com.poesys.db.col.IColumnValue;
+import com.poesys.db.pk.IPrimaryKey;
+import com.poesys.db.pk.IdentityPrimaryKey;
+import com.poesys.db.pk.SequencePrimaryKey;
+
+
+/**
+ * <p>
+ * An in-process cache of wrapped business DTOs that sits in front of the DAO
+ * cache in a data delegate. A hit returns the business DTO that the delegate
+ * built on an earlier query, so it avoids the DAO allocation, the DAO cache or
+ * memcached lookup (and deserialization), and the wrapping of the data-access
+ * DTO. Callers share the cached business DTO, just as they share the
+ * data-access DTO in the DAO cache.
+ * </p>
+ * <p>
+ * The cache holds at most a maximum number of objects, and each object
+ * expires after the expiration time the delegate passes in, limited to the
+ * cache's maximum time to live. The cache divides the objects by key among
+ * segments with their own locks, so lookups of different keys rarely wait for
+ * each other, and each segment evicts its least recently used object when it
+ * holds its share of the maximum. All the delegates for a data-access DTO
+ * class in a subsystem share one near cache, and any of them removes an
+ * object when it processes or flushes it, so no delegate serves an object
+ * that another delegate in this process has written. The near cache is off
+ * unless you set a size for the subsystem in the database properties file:
+ * </p>
+ *
+ * <pre>
+ * com.poesys.db.poesystest.mysql.near_cache_size=10000
+ * com.poesys.db.poesystest.mysql.near_cache_ttl=60000
+ * </pre>
+ * <p>
+ * The cache also indexes the objects that have an identity or sequence
+ * primary key by the numeric key value, so get(long) finds them without
+ * building a key object or its string form. The cache is thread safe.
+ * </p>
+ *
+ * @author Robert J. Muller
+ * @param <V> the business DTO type
+ */
+public class NearCache<V extends IDto<?>> {
+  /** Property suffix for the maximum number of cached objects */
+  private static final String SIZE = "near_cache_size";
+  /** Property suffix for the maximum time to live in milliseconds */
+  private static final String TTL = "near_cache_ttl";
+  /** The default maximum time to live in milliseconds */
+  public static final long DEFAULT_TTL = 60000L;
+  /** The id of an entry whose key is not a numeric identity or sequence key */
+  static final long NO_ID = Long.MIN_VALUE;
+  /** The maximum number of segments, a power of two */
+  private static final int MAX_SEGMENTS = 16;
+  /** The minimum number of invalidations a segment remembers by key */
+  private static final int MIN_INVALIDATIONS = 16;
+
+  /** The shared caches by subsystem and class name */
+  private static final ConcurrentMap<String, NearCache<?>> caches =
+    new ConcurrentHashMap<String, NearCache<?>>();
+
+  /** The maximum time to live in milliseconds */
+  private final long maxTtl;
+  /** The segments, a power of two of them */
+  private final Segment<V>[] segments;
+  /** The mask that selects a segment from a hash code */
+  private final int mask;
+  /** The invalidation clock, which each remove() and clear() advances */
+  private final AtomicLong clock = new AtomicLong();
+  /** The clock value of the last clear() */
+  private volatile long cleared = 0L;
+  /** Number of lookups that found an object */
+  private final LongAdder hits = new LongAdder();
+  /** Number of lookups that found no object or an expired object */
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * A cached object with its expiration time
+   *
+   * @param <V> the business DTO type
+   */
+  private static class Entry<V> {
+    /** The cached object */
+    final V value;
+    /** The System.nanoTime() after which the object is stale */
+    final long expires;
+    /** The string form of the primary key */
+    final String stringKey;
+    /** The numeric key value, or NO_ID */
+    final long id;
+
+    /**
+     * Create an Entry object.
+     *
+     * @param value the cached object
+     * @param expires the time after which the object is stale
+     * @param stringKey the string form of the primary key
+     * @param id the numeric key value, or NO_ID
+     */
+    Entry(V value, long expires, String stringKey, long id) {
+      this.value = value;
+      this.expires = expires;
+      this.stringKey = stringKey;
+      this.id = id;
+    }
+  }
+
+  /**
+   * A segment of the cache: the entries for some of the keys in
+   * least-recently-used order, their numeric key index, and the clock values
+   * of their recent invalidations. The segment itself guards its state.
+   *
+   * @param <V> the business DTO type
+   */
+  private static final class Segment<V> {
+    /** The cached entries in least-recently-used order */
+    private final LinkedHashMap<String, Entry<V>> entries;
+    /** The entries with numeric keys by key value */
+    private final LongMap<Entry<V>> ids = new LongMap<Entry<V>>(16);
+    /** The clock values of the recent invalidations by key, oldest first */
+    private final LinkedHashMap<String, Long> invalidations;
+    /** The latest clock value of the invalidations the segment forgot */
+    private long floor = 0L;
+
+    /**
+     * Create a Segment object.
+     *
+     * @param capacity the maximum number of objects in the segment
+     */
+    Segment(final int capacity) {
+      entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,
+                                                      Entry<V>> eldest) {
+          if (size() > capacity) {
+            unindex(eldest.getValue());
+            return true;
+          }
+          return false;
+        }
+      };
+      final int remembered = Math.max(MIN_INVALIDATIONS, capacity);
+      invalidations = new LinkedHashMap<String, Long>(16) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+          if (size() > remembered) {
+            floor = Math.max(floor, eldest.getValue());
+            return true;
+          }
+          return false;
+        }
+      };
+    }
+
+    /**
+     * Get an unexpired entry by its string key, removing it if it has expired.
+     * Call with the segment lock held.
+     *
+     * @param stringKey the string form of the primary key
+     * @return the entry, or null if there is none or it has expired
+     */
+    Entry<V> get(String stringKey) {
+      return check(entries.get(stringKey));
+    }
+
+    /**
+     * Get an unexpired entry by its numeric key, removing it if it has
+     * expired. Call with the segment lock held.
+     *
+     * @param id the numeric key value
+     * @return the entry, or null if there is none or it has expired
+     */
+    Entry<V> get(long id) {
+      Entry<V> entry = ids.get(id);
+      if (entry != null) {
+        // Touch the entry so it stays in least-recently-used order; the string
+        // key caches its hash code.
+        entries.get(entry.stringKey);
+      }
+      return check(entry);
+    }
+
+    /**
+     * Return an entry unless it has expired, in which case remove it.
+     *
+     * @param entry the entry, or null
+     * @return the entry, or null if it was null or has expired
+     */
+    private Entry<V> check(Entry<V> entry) {
+      if (entry == null || entry.expires - System.nanoTime() > 0) {
+        return entry;
+      }
+      entries.remove(entry.stringKey);
+      unindex(entry);
+      return null;
+    }
+
+    /**
+     * Add an entry unless its key was invalidated after the stamp. Call with
+     * the segment lock held.
+     *
+     * @param entry the entry
+     * @param stamp the invalidation stamp from before the query
+     * @param cleared the clock value of the last clear of the cache
+     */
+    void put(Entry<V> entry, long stamp, long cleared) {
+      if (stamp < cleared || stamp < floor) {
+        return;
+      }
+      Long invalidated = invalidations.get(entry.stringKey);
+      if (invalidated != null && stamp < invalidated) {
+        return;
+      }
+      Entry<V> old = entries.put(entry.stringKey, entry);
+      if (old != null) {
+        unindex(old);
+      }
+      if (entry.id != NO_ID) {
+        ids.put(entry.id, entry);
+      }
+    }
+
+    /**
+     * Remove the entry for a key and remember the invalidation. Call with the
+     * segment lock held.
+     *
+     * @param stringKey the string form of the primary key
+     * @param time the clock value of the invalidation
+     */
+    void remove(String stringKey, long time) {
+      invalidations.remove(stringKey);
+      invalidations.put(stringKey, time);
+      Entry<V> entry = entries.remove(stringKey);
+      if (entry != null) {
+        unindex(entry);
+      }
+    }
+
+    /**
+     * Get the number of entries. Call with the segment lock held.
+     *
+     * @return the number of entries
+     */
+    int size() {
+      return entries.size();
+    }
+
+    /**
+     * Remove all the entries. The cache's clear time rejects the objects
+     * queried before the clear, so the segment forgets its invalidations. Call
+     * with the segment lock held.
+     */
+    void clear() {
+      entries.clear();
+      ids.clear();
+      invalidations.clear();
+    }
+
+    /**
+     * Remove an entry from the numeric key index if the index still maps the
+     * entry's key to it. Call with the segment lock held.
+     *
+     * @param entry the removed entry
+     */
+    private void unindex(Entry<V> entry) {
+      if (entry.id != NO_ID && ids.get(entry.id) == entry) {
+        ids.remove(entry.id);
+      }
+    }
+  }
+
+  /**
+   * Create a NearCache object.
+   *
+   * @param maxSize the maximum number of cached objects
+   * @param maxTtl the maximum time in milliseconds that an object stays in the
+   *          cache; 0 or less means the default
+   */
+  @SuppressWarnings("unchecked")
+  public NearCache(int maxSize, long maxTtl) {
+    int size = Math.max(1, maxSize);
+    this.maxTtl = maxTtl > 0 ? maxTtl : DEFAULT_TTL;
+    int count = 1;
+    while (count < MAX_SEGMENTS && count * 2 <= size) {
+      count *= 2;
+    }
+    mask = count - 1;
+    segments = new Segment[count];
+    for (int i = 0; i < count; i++) {
+      // Share out the maximum so the segment capacities add up to it.
+      segments[i] = new Segment<V>(size / count + (i < size % count ? 1 : 0));
+    }
+  }
+
+  /**
+   * Get the shared near cache for a data-access DTO class in a subsystem,
+   * creating it from the properties for the subsystem.
+   *
+   * @param <V> the business DTO type
+   * @param subsystem the subsystem
+   * @param className the data-access DTO class name
+   * @return the near cache, or null if the subsystem has no near cache size
+   */
+  @SuppressWarnings("unchecked")
+  public static <V extends IDto<?>> NearCache<V> getInstance(String subsystem,
+                                                            String className) {
+    int size = DelegateProperties.getInt(subsystem, SIZE, 0);
+    if (size <= 0) {
+      return null;
+    }
+    String name = subsystem + ":" + className;
+    NearCache<?> cache = caches.get(name);
+    if (cache == null) {
+      NearCache<V> newCache =
+        new NearCache<V>(size,
+                         DelegateProperties.getLong(subsystem,
+                                                    TTL,
+                                                    DEFAULT_TTL));
+      cache = caches.putIfAbsent(name, newCache);
+      if (cache == null) {
+        cache = newCache;
+      }
+    }
+    return (NearCache<V>)cache;
+  }
+
+  /**
+   * Replace the shared near cache for a data-access DTO class in a subsystem.
+   * Delegates get the shared cache when you construct them, so set the cache
+   * before you create the delegates that should use it.
+   *
+   * @param subsystem the subsystem
+   * @param className the data-access DTO class name
+   * @param cache the new near cache, or null to build the next cache from the
+   *          subsystem properties
+   */
+  public static void setInstance(String subsystem,
+                                 String className,
+                                 NearCache<?> cache) {
+    String name = subsystem + ":" + className;
+    if (cache == null) {
+      caches.remove(name);
+    } else {
+      caches.put(name, cache);
+    }
+  }
+
+  /**
+   * Get the segment for a key. A numeric key selects the segment by its value,
+   * so get(long) finds the segment without the string form of the key.
+   *
+   * @param stringKey the string form of the primary key
+   * @param id the numeric key value, or NO_ID
+   * @return the segment
+   */
+  private Segment<V> getSegment(String stringKey, long id) {
+    int hash = id != NO_ID ? (int)(id ^ (id >>> 32)) : stringKey.hashCode();
+    return segments[(hash ^ (hash >>> 16)) & mask];
+  }
+
+  /**
+   * Get a cached object.
+   *
+   * @param key the primary key of the object
+   * @return the object, or null if the object is not in the cache or has
+   *         expired
+   */
+  public V get(IPrimaryKey key) {
+    String stringKey = key.getStringKey();
+    Segment<V> segment = getSegment(stringKey, getId(key));
+    Entry<V> entry;
+    synchronized (segment) {
+      entry = segment.get(stringKey);
+    }
+    return count(entry);
+  }
+
+  /**
+   * Get a cached object by the value of its identity or sequence primary key.
+   * The lookup allocates nothing.
+   *
+   * @param id the numeric primary key value
+   * @return the object, or null if the object is not in the cache or has
+   *         expired
+   */
+  public V get(long id) {
+    Segment<V> segment = getSegment(null, id);
+    Entry<V> entry;
+    synchronized (segment) {
+      entry = segment.get(id);
+    }
+    return count(entry);
+  }
+
+  /**
+   * Count a lookup as a hit or a miss.
+   *
+   * @param entry the entry that the lookup found, or null
+   * @return the cached object, or null for a miss
+   */
+  private V count(Entry<V> entry) {
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return entry.value;
+  }
+
+  /**
+   * Get the numeric value of an identity or sequence primary key.
+   *
+   * @param key the primary key
+   * @return the value, or NO_ID if the key is not an identity or sequence key
+   *         or its value does not fit in a long
+   */
+  static long getId(IPrimaryKey key) {
+    if (key instanceof SequencePrimaryKey) {
+      BigInteger value = ((SequencePrimaryKey)key).getValue();
+      return value != null && value.bitLength() < 64 ? value.longValue()
+          : NO_ID;
+    } else if (key instanceof IdentityPrimaryKey) {
+      // The single key column holds the generated value as a BigInteger.
+      for (IColumnValue column : key) {
+        if (column instanceof BigIntegerColumnValue) {
+          BigInteger value = ((BigIntegerColumnValue)column).getValue();
+          return value != null && value.bitLength() < 64 ? value.longValue()
+              : NO_ID;
+        }
+        break;
+      }
+    }
+    return NO_ID;
+  }
+
+  /**
+   * Get the current invalidation stamp. Get the stamp before querying an
+   * object from the database and pass it to put(), so the cache rejects the
+   * object if the delegate invalidated its key or cleared the cache in the
+   * meantime; this keeps a slow query from caching an object that a
+   * concurrent process() has just changed, without rejecting the objects of
+   * other keys.
+   *
+   * @return the stamp
+   */
+  public long getStamp() {
+    return clock.get();
+  }
+
+  /**
+   * Cache an object unless its key has been invalidated since the stamp.
+   *
+   * @param value the object to cache; null does nothing
+   * @param expiration the time in milliseconds until the object expires; 0 or
+   *          less means the maximum time to live, and larger values are
+   *          limited to the maximum
+   * @param stamp the invalidation stamp from before the query
+   */
+  public void put(V value, long expiration, long stamp) {
+    if (value == null) {
+      return;
+    }
+    long ttl = expiration > 0 ? Math.min(expiration, maxTtl) : maxTtl;
+    IPrimaryKey key = value.getPrimaryKey();
+    String stringKey = key.getStringKey();
+    long id = getId(key);
+    Entry<V> entry =
+      new Entry<V>(value, System.nanoTime() + ttl * 1000000L, stringKey, id);
+    Segment<V> segment = getSegment(stringKey, id);
+    synchronized (segment) {
+      segment.put(entry, stamp, cleared);
+    }
+  }
+
+  /**
+   * Get the objects for a collection of keys, getting the cached objects from
+   * the cache and loading the rest with a single call to a loader, which
+   * typically queries them as a batch. The method caches the loaded objects.
+   *
+   * @param keys the primary keys of the objects
+   * @param loader loads the objects for a list of keys that are not in the
+   *          cache, returning the objects it finds in any order
+   * @param expiration the time in milliseconds until the loaded objects expire
+   * @return the objects in the order of the keys, leaving out keys with no
+   *         object
+   */
+  public List<V> getAll(Collection<? extends IPrimaryKey> keys,
+                        Function<List<IPrimaryKey>, List<V>> loader,
+                        long expiration) {
+    long stamp = getStamp();
+    Map<String, V> found = new HashMap<String, V>(keys.size() * 4 / 3 + 1);
+    List<IPrimaryKey> missing = new ArrayList<IPrimaryKey>();
+    for (IPrimaryKey key : keys) {
+      V value = get(key);
+      if (value != null) {
+        found.put(key.getStringKey(), value);
+      } else {
+        missing.add(key);
+      }
+    }
+
+    if (!missing.isEmpty()) {
+      for (V value : loader.apply(missing)) {
+        found.put(value.getPrimaryKey().getStringKey(), value);
+        put(value, expiration, stamp);
+      }
+    }
+
+    List<V> values = new ArrayList<V>(keys.size());
+    for (IPrimaryKey key : keys) {
+      V value = found.get(key.getStringKey());
+      if (value != null) {
+        values.add(value);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Remove an object from the cache and reject the object for its key that
+   * any query begun before the removal puts.
+   *
+   * @param key the primary key of the object to remove
+   */
+  public void remove(IPrimaryKey key) {
+    String stringKey = key.getStringKey();
+    Segment<V> segment = getSegment(stringKey, getId(key));
+    long time = clock.incrementAndGet();
+    synchronized (segment) {
+      segment.remove(stringKey, time);
+    }
+  }
+
+  /**
+   * Remove all the objects from the cache and reject the objects that any
+   * query begun before the clear puts.
+   */
+  public void clear() {
+    cleared = clock.incrementAndGet();
+    for (Segment<V> segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  /**
+   * Get the number of objects in the cache, including expired objects that
+   * the cache has not yet removed.
+   *
+   * @return the number of objects
+   */
+  public int size() {
+    int size = 0;
+    for (Segment<V> segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Get the number of lookups that found an object.
+   *
+   * @return the number of hits
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Get the number of lookups that did not find an object.
+   *
+   * @return the number of misses
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+}
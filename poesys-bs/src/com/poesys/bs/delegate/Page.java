@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.Collections;
+import java.util.List;
+
+import com.poesys.db.pk.IPrimaryKey;
+
+
+/**
+ * One page of objects from a keyset-paginated query, in primary-key order,
+ * with the continuation key for the next page. Pass the next key to getPage()
+ * to get the next page; the next key is null on the last page.
+ *
+ * @author Robert J. Muller
+ * @param <T> the type of object on the page
+ */
+public class Page<T> {
+  /** The objects on the page */
+  private final List<T> objects;
+  /** The primary key to pass to get the next page, null on the last page */
+  private final IPrimaryKey nextKey;
+
+  /**
+   * Create a Page object.
+   *
+   * @param objects the objects on the page
+   * @param nextKey the continuation key for the next page, null if this is the
+   *          last page
+   */
+  public Page(List<T> objects, IPrimaryKey nextKey) {
+    this.objects = Collections.unmodifiableList(objects);
+    this.nextKey = nextKey;
+  }
+
+  /**
+   * Get the objects on the page.
+   *
+   * @return an unmodifiable list of objects in primary-key order
+   */
+  public List<T> getObjects() {
+    return objects;
+  }
+
+  /**
+   * Get the continuation key for the next page, which is the primary key of
+   * the last object on this page.
+   *
+   * @return the key, or null if this is the last page
+   */
+  public IPrimaryKey getNextKey() {
+    return nextKey;
+  }
+
+  /**
+   * Is there another page after this one?
+   *
+   * @return true if there is a next page
+   */
+  public boolean hasNext() {
+    return nextKey != null;
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.poesys.db.pk.IPrimaryKey;
+
+
+/**
+ * <p>
+ * A short-lived cache of keyset pages for one data-access DTO class in one
+ * subsystem. The cache holds the primary keys of each page rather than the
+ * objects, so a hit gets the objects through the near cache and the DAO cache
+ * like getObjects() does, and the frequently requested pages (typically the
+ * first few) cost no database query while the objects stay cached. All the
+ * delegates for the class share the cache, and any of them that writes objects
+ * of the class clears it. The page cache is off unless you set a time to live
+ * for the subsystem in the database properties file:
+ * </p>
+ *
+ * <pre>
+ * com.poesys.db.poesystest.mysql.page_cache_ttl=5000
+ * com.poesys.db.poesystest.mysql.page_cache_size=100
+ * </pre>
+ * <p>
+ * The cache holds at most the maximum number of pages, evicting the least
+ * recently used page when full. The cache is thread safe.
+ * </p>
+ *
+ * @author Robert J. Muller
+ */
+final class PageCache {
+  /** Property suffix for the time to live in milliseconds */
+  private static final String TTL = "page_cache_ttl";
+  /** Property suffix for the maximum number of cached pages */
+  private static final String SIZE = "page_cache_size";
+  /** The default maximum number of cached pages */
+  private static final int DEFAULT_SIZE = 100;
+
+  /** The shared caches by subsystem and class name */
+  private static final ConcurrentMap<String, PageCache> caches =
+    new ConcurrentHashMap<String, PageCache>();
+
+  /** The time to live in nanoseconds */
+  private final long ttlNanos;
+  /** The cached pages in least-recently-used order, guarded by this */
+  private final LinkedHashMap<String, Entry> entries;
+  /** Invalidation counter, guarded by this */
+  private long generation = 0L;
+
+  /**
+   * A cached page: the keys of the objects on the page and the continuation
+   * key
+   */
+  static final class Entry {
+    /** The primary keys of the objects on the page in page order */
+    final List<IPrimaryKey> keys;
+    /** The continuation key, null on the last page */
+    final IPrimaryKey nextKey;
+    /** The System.nanoTime() after which the page is stale */
+    final long expires;
+
+    /**
+     * Create an Entry object.
+     *
+     * @param keys the primary keys of the objects on the page
+     * @param nextKey the continuation key
+     * @param expires the time after which the page is stale
+     */
+    Entry(List<IPrimaryKey> keys, IPrimaryKey nextKey, long expires) {
+      this.keys = keys;
+      this.nextKey = nextKey;
+      this.expires = expires;
+    }
+  }
+
+  /**
+   * Create a PageCache object.
+   *
+   * @param ttl the time to live in milliseconds
+   * @param maxSize the maximum number of cached pages
+   */
+  private PageCache(long ttl, final int maxSize) {
+    ttlNanos = ttl * 1000000L;
+    entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Get the shared page cache for a data-access DTO class in a subsystem.
+   *
+   * @param subsystem the subsystem
+   * @param className the data-access DTO class name
+   * @return the page cache, or null if the subsystem has no page cache time
+   *         to live
+   */
+  static PageCache getInstance(String subsystem, String className) {
+    long ttl = DelegateProperties.getLong(subsystem, TTL, 0L);
+    if (ttl <= 0) {
+      return null;
+    }
+    String name = subsystem + ":" + className;
+    PageCache cache = caches.get(name);
+    if (cache == null) {
+      int size =
+        Math.max(1, DelegateProperties.getInt(subsystem, SIZE, DEFAULT_SIZE));
+      PageCache newCache = new PageCache(ttl, size);
+      cache = caches.putIfAbsent(name, newCache);
+      if (cache == null) {
+        cache = newCache;
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Build the cache key for a page.
+   *
+   * @param after the key after which the page starts, null for the first page
+   * @param pageSize the number of objects on a page
+   * @return the cache key
+   */
+  static String getKey(IPrimaryKey after, int pageSize) {
+    return (after == null ? "" : after.getStringKey()) + "#" + pageSize;
+  }
+
+  /**
+   * Get a cached page.
+   *
+   * @param key the cache key from getKey()
+   * @return the page, or null if there is no current page in the cache
+   */
+  synchronized Entry get(String key) {
+    Entry entry = entries.get(key);
+    if (entry != null && entry.expires - System.nanoTime() <= 0) {
+      entries.remove(key);
+      entry = null;
+    }
+    return entry;
+  }
+
+  /**
+   * Get the current invalidation stamp to pass to put() after the query.
+   *
+   * @return the stamp
+   */
+  synchronized long getStamp() {
+    return generation;
+  }
+
+  /**
+   * Cache a page unless the cache has been cleared since the stamp.
+   *
+   * @param key the cache key from getKey()
+   * @param keys the primary keys of the objects on the page
+   * @param nextKey the continuation key, null on the last page
+   * @param stamp the invalidation stamp from before the query
+   */
+  synchronized void put(String key,
+                        List<IPrimaryKey> keys,
+                        IPrimaryKey nextKey,
+                        long stamp) {
+    if (stamp == generation) {
+      entries.put(key,
+                  new Entry(keys, nextKey, System.nanoTime() + ttlNanos));
+    }
+  }
+
+  /**
+   * Remove all the pages from the cache.
+   */
+  synchronized void clear() {
+    generation++;
+    entries.clear();
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.log4j.Logger;
+
+import com.poesys.db.Message;
+import com.poesys.db.connection.ConnectionFactoryFactory;
+import com.poesys.db.connection.IConnectionFactory.DBMS;
+import com.poesys.db.dto.IDbDto;
+
+
+/**
+ * <p>
+ * A query that returns its rows as a lazy stream of data-access DTOs rather
+ * than as a list. The query runs on its own connection outside any tracking
+ * thread, and the stream reads each row from the cursor only when the stream
+ * consumer asks for it, building the DTO, querying its nested objects, and
+ * setting it to EXISTING status. The DTOs do not go into the cache, and only
+ * the rows in the current JDBC fetch are in memory at one time.
+ * </p>
+ * <p>
+ * The stream closes the result set, statement, and connection when it reads
+ * the last row, when a row fails, or when the caller closes the stream, so
+ * callers that may stop early should use try-with-resources.
+ * </p>
+ *
+ * @author Robert J. Muller
+ * @param <S> the data-access DTO type
+ */
+final class QueryStream<S extends IDbDto> extends
+    Spliterators.AbstractSpliterator<S> implements AutoCloseable {
+  /** Logger for this class */
+  private static final Logger logger = Logger.getLogger(QueryStream.class);
+
+  static {
+    List<String> names = new ArrayList<String>(1);
+    names.add("com.poesys.bs.PoesysBsBundle");
+    Message.initializePropertiesFiles(names);
+  }
+
+  /** Error message when the streaming query fails */
+  private static final String STREAM_ERROR =
+    "com.poesys.bs.delegate.msg.streamQuery";
+
+  /** The SQL statement, for error messages */
+  private final String sql;
+  /** The function that builds a DTO from the current row */
+  private final Function<ResultSet, S> reader;
+  /** The connection dedicated to the query */
+  private Connection connection;
+  /** The query statement */
+  private PreparedStatement stmt;
+  /** The open cursor */
+  private ResultSet rs;
+
+  /**
+   * Create a QueryStream object, opening a connection and executing the query.
+   *
+   * @param subsystem the subsystem for the connection
+   * @param dbms the kind of database that implements the subsystem
+   * @param sql the SQL query
+   * @param binder binds any parameters to the prepared statement; may be null
+   * @param reader builds a DTO from the current row of the result set
+   * @param fetchSize the number of rows to fetch at once; 0 means the driver
+   *          default, and drivers may accept special values such as the MySQL
+   *          Integer.MIN_VALUE for row-by-row streaming
+   * @throws DelegateException when the query fails
+   */
+  private QueryStream(String subsystem,
+                      DBMS dbms,
+                      String sql,
+                      Consumer<PreparedStatement> binder,
+                      Function<ResultSet, S> reader,
+                      int fetchSize) {
+    super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+    this.sql = sql;
+    this.reader = reader;
+    try {
+      connection =
+        ConnectionFactoryFactory.getInstance(subsystem, dbms).getConnection();
+      stmt = connection.prepareStatement(sql);
+      if (binder != null) {
+        binder.accept(stmt);
+      }
+      if (fetchSize != 0) {
+        stmt.setFetchSize(fetchSize);
+      }
+      logger.debug("Streaming query: " + sql);
+      rs = stmt.executeQuery();
+    } catch (SQLException e) {
+      close();
+      throw new DelegateException(Message.getMessage(STREAM_ERROR,
+                                                     new Object[] { sql }), e);
+    } catch (IOException e) {
+      close();
+      throw new DelegateException(Message.getMessage(STREAM_ERROR,
+                                                     new Object[] { sql }), e);
+    } catch (RuntimeException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Open a stream of the DTOs that a query returns.
+   *
+   * @param <S> the data-access DTO type
+   * @param subsystem the subsystem for the connection
+   * @param dbms the kind of database that implements the subsystem
+   * @param sql the SQL query
+   * @param binder binds any parameters to the prepared statement; may be null
+   * @param reader builds a DTO from the current row of the result set
+   * @param fetchSize the number of rows to fetch at once; 0 means the driver
+   *          default
+   * @return the stream of DTOs, which the caller should close
+   * @throws DelegateException when the query fails
+   */
+  static <S extends IDbDto> Stream<S> open(String subsystem,
+                                           DBMS dbms,
+                                           String sql,
+                                           Consumer<PreparedStatement> binder,
+                                           Function<ResultSet, S> reader,
+                                           int fetchSize) {
+    QueryStream<S> query =
+      new QueryStream<S>(subsystem, dbms, sql, binder, reader, fetchSize);
+    return StreamSupport.stream(query, false).onClose(query::close);
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super S> action) {
+    if (rs == null) {
+      return false;
+    }
+    S dto = null;
+    try {
+      if (!rs.next()) {
+        // Cursor exhausted, release the connection right away.
+        close();
+        return false;
+      }
+      dto = reader.apply(rs);
+      dto.queryNestedObjects();
+      dto.setExisting();
+    } catch (SQLException e) {
+      close();
+      throw new DelegateException(Message.getMessage(STREAM_ERROR,
+                                                     new Object[] { sql }), e);
+    } catch (RuntimeException e) {
+      close();
+      throw e;
+    }
+    action.accept(dto);
+    return true;
+  }
+
+  /**
+   * Close the result set, statement, and connection, logging but otherwise
+   * ignoring any errors. Closing more than once does nothing.
+   */
+  @Override
+  public void close() {
+    if (rs != null) {
+      try {
+        rs.close();
+      } catch (SQLException e) {
+        logger.error("Error closing streaming result set", e);
+      }
+      rs = null;
+    }
+    if (stmt != null) {
+      try {
+        stmt.close();
+      } catch (SQLException e) {
+        logger.error("Error closing streaming statement", e);
+      }
+      stmt = null;
+    }
+    if (connection != null) {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        logger.error("Error closing streaming connection", e);
+      }
+      connection = null;
+    }
+  }
+}
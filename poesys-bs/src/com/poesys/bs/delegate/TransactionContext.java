@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+import com.poesys.db.Message;
+import com.poesys.db.dao.PoesysTrackingThread;
+
+
+/**
+ * <p>
+ * A transaction context that runs a unit of work in one transaction. The
+ * execute() method hands the work off to a tracking thread from the
+ * subsystem's TransactionExecutor and binds the context to that thread for
+ * the duration of the work. Every data delegate in INLINE mode that processes
+ * objects of the subsystem within the work writes them on the tracking thread
+ * in the context's transaction, without a thread handoff, a join, or a commit
+ * of its own. The context commits when the work returns and rolls back when
+ * the work throws, marks the transaction rollback-only, or misses its
+ * deadline.
+ * </p>
+ * <p>
+ * The handoff itself cannot go away: the poesys-db DAOs and DTOs find the
+ * connection and the DTO tracking history of the transaction by casting the
+ * current thread to a PoesysTrackingThread, so the work must run on one.
+ * execute() makes that one handoff per unit of work instead of one per
+ * process() call. A call to execute() within the work of the same subsystem
+ * joins the running transaction.
+ * </p>
+ *
+ * <pre>
+ * TransactionContext.execute(subsystem, 60000L, () -&gt; {
+ *   orderDelegate.process(orders);
+ *   lineDelegate.process(lines);
+ *   return null;
+ * });
+ * </pre>
+ *
+ * @author Robert J. Muller
+ */
+public final class TransactionContext implements ITransactionContext {
+  /** How a data delegate runs the transaction of process() */
+  public enum Mode {
+    /**
+     * Write in the transaction context of the calling thread if it has one,
+     * otherwise hand off to a tracking thread
+     */
+    INLINE,
+    /** Always hand off to a tracking thread for a transaction of its own */
+    HANDOFF
+  }
+
+  /** Logger for this class */
+  private static final Logger logger =
+    Logger.getLogger(TransactionContext.class);
+
+  static {
+    List<String> names = new ArrayList<String>(1);
+    names.add("com.poesys.bs.PoesysBsBundle");
+    Message.initializePropertiesFiles(names);
+  }
+
+  /** Error message when the unit of work throws an exception */
+  private static final String WORK_ERROR =
+    "com.poesys.bs.delegate.msg.contextError";
+  /** Error message when the caller is interrupted */
+  private static final String THREAD_ERROR = "com.poesys.db.dao.msg.thread";
+  /** Error message when the unit of work misses its deadline */
+  private static final String TIMEOUT_ERROR =
+    "com.poesys.bs.delegate.msg.contextTimeout";
+  /** Error message when the unit of work marks the transaction to roll back */
+  private static final String ROLLBACK_ONLY_ERROR =
+    "com.poesys.bs.delegate.msg.rollbackOnly";
+
+  /** Transaction state: the work is running */
+  private static final int RUNNING = 0;
+  /** Transaction state: the work has ended and the thread completes it */
+  private static final int COMPLETING = 1;
+  /** Transaction state: the caller has cancelled the transaction */
+  private static final int CANCELLED = 2;
+
+  /** The context bound to the current thread, null if there is none */
+  private static final ThreadLocal<TransactionContext> current =
+    new ThreadLocal<TransactionContext>();
+
+  /** The subsystem of the transaction */
+  private final String subsystem;
+  /** The tracking thread of the transaction */
+  private final PoesysTrackingThread thread;
+  /** Whether the transaction rolls back */
+  private volatile boolean rollbackOnly = false;
+  /** The actions to run after the transaction, touched only by the thread */
+  private final List<Runnable> completions = new ArrayList<Runnable>();
+
+  /**
+   * Create a TransactionContext object.
+   *
+   * @param subsystem the subsystem of the transaction
+   * @param thread the tracking thread of the transaction
+   */
+  private TransactionContext(String subsystem, PoesysTrackingThread thread) {
+    this.subsystem = subsystem;
+    this.thread = thread;
+  }
+
+  /**
+   * Get the transaction context bound to the current thread.
+   *
+   * @return the context, or null if the thread is not running a unit of work
+   */
+  public static ITransactionContext getCurrent() {
+    return current.get();
+  }
+
+  /**
+   * Run a unit of work in one transaction of a subsystem, blocking until the
+   * transaction completes. If the work does not finish within the timeout,
+   * the method aborts the transaction (see TransactionExecutor.abort()) and
+   * throws a DelegateTimeoutException.
+   *
+   * @param <V> the type of the result of the work
+   * @param subsystem the subsystem of the transaction
+   * @param timeout the time in milliseconds the transaction may take
+   * @param work the unit of work
+   * @return the result of the work
+   * @throws DelegateException when the work throws an exception, which the
+   *           method wraps unless it is a DelegateException, when the work
+   *           marks the transaction to roll back, or when the caller is
+   *           interrupted
+   */
+  public static <V> V execute(String subsystem, long timeout, Callable<V> work)
+      throws DelegateException {
+    TransactionContext context = current.get();
+    if (context != null && context.subsystem.equals(subsystem)) {
+      // Join the running transaction.
+      try {
+        return work.call();
+      } catch (RuntimeException e) {
+        context.setRollbackOnly();
+        throw e;
+      } catch (Exception e) {
+        context.setRollbackOnly();
+        throw new DelegateException(getMessage(WORK_ERROR, subsystem),
+                                    e);
+      }
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    AtomicInteger state = new AtomicInteger(RUNNING);
+    AtomicReference<V> result = new AtomicReference<V>();
+    AtomicReference<TransactionContext> bound =
+      new AtomicReference<TransactionContext>();
+    PoesysTrackingThread thread = null;
+    try {
+      thread =
+        TransactionExecutor.getInstance(subsystem)
+          .start(getRunnable(subsystem, work, state, result, bound),
+                 deadline);
+      if (!TransactionExecutor.join(thread, deadline)) {
+        if (state.compareAndSet(RUNNING, CANCELLED)) {
+          TransactionExecutor.abort(thread);
+          throw new DelegateTimeoutException(getMessage(TIMEOUT_ERROR,
+                                                        subsystem));
+        }
+        // The work ended in time and the transaction is completing.
+        thread.join();
+      }
+    } catch (InterruptedException e) {
+      if (thread != null && state.compareAndSet(RUNNING, CANCELLED)) {
+        TransactionExecutor.abort(thread);
+      }
+      Thread.currentThread().interrupt();
+      Object[] args = { "execute", subsystem };
+      throw new DelegateException(Message.getMessage(THREAD_ERROR, args), e);
+    }
+
+    Throwable throwable = thread.getThrowable();
+    if (throwable instanceof DelegateException) {
+      throw (DelegateException)throwable;
+    } else if (throwable != null) {
+      throw new DelegateException(getMessage(WORK_ERROR, subsystem),
+                                  throwable);
+    } else if (bound.get().isRollbackOnly()) {
+      throw new DelegateException(getMessage(ROLLBACK_ONLY_ERROR, subsystem));
+    }
+    return result.get();
+  }
+
+  /**
+   * Get a Runnable object for the tracking thread that binds a new context to
+   * the thread, runs the work, and commits or rolls back the transaction.
+   *
+   * @param <V> the type of the result of the work
+   * @param subsystem the subsystem of the transaction
+   * @param work the unit of work
+   * @param state the state of the transaction
+   * @param result receives the result of the work
+   * @param bound receives the context
+   * @return the Runnable object
+   */
+  private static <V> Runnable getRunnable(final String subsystem,
+                                          final Callable<V> work,
+                                          final AtomicInteger state,
+                                          final AtomicReference<V> result,
+                                          final AtomicReference<TransactionContext> bound) {
+    return new Runnable() {
+      public void run() {
+        PoesysTrackingThread thread =
+          (PoesysTrackingThread)Thread.currentThread();
+        TransactionContext context = new TransactionContext(subsystem, thread);
+        bound.set(context);
+        current.set(context);
+        try {
+          result.set(work.call());
+        } catch (Throwable e) {
+          thread.setThrowable(e);
+          context.setRollbackOnly();
+        } finally {
+          current.remove();
+          context.complete(state.compareAndSet(RUNNING, COMPLETING));
+        }
+      }
+    };
+  }
+
+  /**
+   * Commit or roll back the transaction, close the connection, and run the
+   * completion actions.
+   *
+   * @param claimed true if the thread completes the transaction, false if the
+   *          caller has cancelled it
+   */
+  private void complete(boolean claimed) {
+    if (!claimed) {
+      rollbackOnly = true;
+    }
+    if (rollbackOnly) {
+      try {
+        thread.rollback();
+      } catch (RuntimeException e) {
+        logger.debug("Rollback failed for " + thread.getName(), e);
+      }
+    }
+    TransactionExecutor.closeConnection(thread);
+    for (Runnable action : completions) {
+      try {
+        action.run();
+      } catch (RuntimeException e) {
+        logger.error("Completion action failed for " + thread.getName(), e);
+      }
+    }
+  }
+
+  /**
+   * Get a message for the subsystem.
+   *
+   * @param key the message key
+   * @param subsystem the subsystem
+   * @return the message
+   */
+  private static String getMessage(String key, String subsystem) {
+    Object[] args = { subsystem };
+    return Message.getMessage(key, args);
+  }
+
+  @Override
+  public String getSubsystem() {
+    return subsystem;
+  }
+
+  @Override
+  public PoesysTrackingThread getTrackingThread() {
+    return thread;
+  }
+
+  @Override
+  public void setRollbackOnly() {
+    rollbackOnly = true;
+  }
+
+  @Override
+  public boolean isRollbackOnly() {
+    return rollbackOnly;
+  }
+
+  @Override
+  public void afterCompletion(Runnable action) {
+    completions.add(action);
+  }
+}
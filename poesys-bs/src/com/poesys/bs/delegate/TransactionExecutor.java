@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.poesys.db.Message;
+import com.poesys.db.dao.PoesysTrackingThread;
+
+
+/**
+ * <p>
+ * A bounded executor for delegate transactions. Each transaction runs in its
+ * own Poesys tracking thread, because the tracking thread owns the JDBC
+ * connection and the DTO tracking history for exactly one transaction and
+ * commits and closes the connection when the transaction is done; a tracking
+ * thread therefore cannot be reused for a second transaction. The executor
+ * instead bounds the number of tracking threads that may run at once for a
+ * subsystem, so a burst of writes queues up in the callers rather than creating
+ * an unbounded number of threads and connections, and it lets you size the
+ * thread stacks for the transaction workload. A caller waits for a
+ * transaction to start only until the caller's deadline, so a caller that
+ * already holds a permit, such as a unit of work that starts a nested
+ * transaction, times out rather than waiting forever.
+ * </p>
+ * <p>
+ * There is one shared executor per subsystem, configured from the subsystem
+ * properties in the database properties file:
+ * </p>
+ *
+ * <pre>
+ * # maximum concurrent transactions, 0 means no limit (the default)
+ * com.poesys.db.poesystest.mysql.max_transactions=50
+ * # tracking thread stack size in bytes, 0 means the JVM default
+ * com.poesys.db.poesystest.mysql.transaction_stack_size=262144
+ * </pre>
+ *
+ * @author Robert J. Muller
+ */
+public class TransactionExecutor {
+  /** Logger for this class */
+  private static final Logger logger =
+    Logger.getLogger(TransactionExecutor.class);
+
+  /** Property suffix for the maximum number of concurrent transactions */
+  private static final String MAX_TRANSACTIONS = "max_transactions";
+  /** Property suffix for the tracking thread stack size */
+  private static final String STACK_SIZE = "transaction_stack_size";
+
+  /** Error message when a transaction cannot start by its deadline */
+  private static final String START_TIMEOUT_ERROR =
+    "com.poesys.bs.delegate.msg.startTimeout";
+
+  static {
+    List<String> names = new ArrayList<String>(1);
+    names.add("com.poesys.bs.PoesysBsBundle");
+    Message.initializePropertiesFiles(names);
+  }
+
+  /** The shared executors, keyed by subsystem */
+  private static final Map<String, TransactionExecutor> executors =
+    new ConcurrentHashMap<String, TransactionExecutor>();
+
+  /** The subsystem for the transactions */
+  private final String subsystem;
+  /** The limit on concurrent transactions, null if unbounded */
+  private final Semaphore permits;
+  /** The maximum number of concurrent transactions, 0 if unbounded */
+  private final int maxTransactions;
+  /** The stack size for the tracking threads, 0 for the JVM default */
+  private final long stackSize;
+  /** The thread group for the tracking threads */
+  private final ThreadGroup group;
+  /** Counter for naming the tracking threads */
+  private final AtomicLong counter = new AtomicLong();
+
+  /**
+   * Create a transaction executor.
+   *
+   * @param subsystem the subsystem for the transactions
+   * @param maxTransactions the maximum number of transactions that may run
+   *          concurrently; 0 or less means no limit
+   * @param stackSize the stack size in bytes for each tracking thread; 0 means
+   *          the JVM default
+   */
+  public TransactionExecutor(String subsystem,
+                             int maxTransactions,
+                             long stackSize) {
+    this.subsystem = subsystem;
+    this.maxTransactions = maxTransactions > 0 ? maxTransactions : 0;
+    this.permits =
+      maxTransactions > 0 ? new Semaphore(maxTransactions, true) : null;
+    this.stackSize = stackSize > 0 ? stackSize : 0L;
+    this.group = new ThreadGroup("poesys-transactions-" + subsystem);
+  }
+
+  /**
+   * Get the shared transaction executor for a subsystem, creating it from the
+   * subsystem properties if it does not yet exist.
+   *
+   * @param subsystem the subsystem
+   * @return the executor for the subsystem
+   */
+  public static TransactionExecutor getInstance(String subsystem) {
+    TransactionExecutor executor = executors.get(subsystem);
+    if (executor == null) {
+      TransactionExecutor newExecutor =
+        new TransactionExecutor(subsystem,
+                                DelegateProperties.getInt(subsystem,
+                                                          MAX_TRANSACTIONS,
+                                                          0),
+                                DelegateProperties.getLong(subsystem,
+                                                           STACK_SIZE,
+                                                           0L));
+      executor = executors.putIfAbsent(subsystem, newExecutor);
+      if (executor == null) {
+        executor = newExecutor;
+      }
+    }
+    return executor;
+  }
+
+  /**
+   * Replace the shared transaction executor for a subsystem. Delegates get the
+   * shared executor when you construct them, so set the executor before you
+   * create the delegates that should use it.
+   *
+   * @param executor the new executor for the executor's subsystem
+   */
+  public static void setInstance(TransactionExecutor executor) {
+    executors.put(executor.getSubsystem(), executor);
+  }
+
+  /**
+   * Run a transaction in a new tracking thread, blocking until the transaction
+   * completes or the timeout expires. If the executor is bounded and the
+   * maximum number of transactions is already running, the method first blocks
+   * until one of those transactions finishes or the timeout expires. The
+   * caller inspects the returned thread for the throwable and batch errors of
+   * the transaction.
+   *
+   * @param runnable the transaction to run in the tracking thread
+   * @param timeout the maximum time in milliseconds to wait for the transaction
+   *          to start and complete
+   * @return the tracking thread that ran the transaction
+   * @throws InterruptedException when the calling thread is interrupted while
+   *           waiting to start or to complete the transaction
+   * @throws DelegateTimeoutException when the transaction cannot start before
+   *           the timeout expires
+   */
+  public PoesysTrackingThread execute(final Runnable runnable, long timeout)
+      throws InterruptedException, DelegateTimeoutException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    PoesysTrackingThread thread = start(runnable, deadline);
+    join(thread, deadline);
+    return thread;
+  }
+
+  /**
+   * Start a transaction in a new tracking thread without waiting for it to
+   * complete. If the executor is bounded and the maximum number of
+   * transactions is already running, the method first blocks until one of
+   * those transactions finishes or the deadline passes. Join the returned
+   * thread to wait for the transaction.
+   *
+   * @param runnable the transaction to run in the tracking thread
+   * @param deadline the deadline in System.nanoTime() terms
+   * @return the started tracking thread
+   * @throws InterruptedException when the calling thread is interrupted while
+   *           waiting to start the transaction
+   * @throws DelegateTimeoutException when the transaction cannot start before
+   *           the deadline
+   */
+  public PoesysTrackingThread start(final Runnable runnable, long deadline)
+      throws InterruptedException, DelegateTimeoutException {
+    acquire(1, deadline);
+    return startThread(runnable);
+  }
+
+  /**
+   * Start a group of transactions that wait for each other, each in a new
+   * tracking thread, without waiting for them to complete. If the executor is
+   * bounded, the method first blocks until it can take the permits for all
+   * the transactions at once, so two groups never each hold part of their
+   * permits while waiting for the rest. If a thread fails to start, the
+   * transactions already started keep running, so the caller must tell them
+   * to stop waiting for the others.
+   *
+   * @param runnables the transactions to run, at most the maximum number of
+   *          concurrent transactions if the executor is bounded
+   * @param deadline the deadline in System.nanoTime() terms
+   * @return the started tracking threads in the order of the transactions
+   * @throws InterruptedException when the calling thread is interrupted while
+   *           waiting to start the transactions
+   * @throws DelegateTimeoutException when the transactions cannot start
+   *           before the deadline
+   */
+  public List<PoesysTrackingThread> start(List<Runnable> runnables,
+                                          long deadline)
+      throws InterruptedException, DelegateTimeoutException {
+    int count = runnables.size();
+    if (permits != null && count > maxTransactions) {
+      throw new IllegalArgumentException(count
+                                         + " transactions exceed maximum "
+                                         + maxTransactions);
+    }
+    acquire(count, deadline);
+    List<PoesysTrackingThread> threads =
+      new ArrayList<PoesysTrackingThread>(count);
+    try {
+      for (Runnable runnable : runnables) {
+        threads.add(startThread(runnable));
+      }
+    } finally {
+      // Release the permits of the transactions that did not start; a thread
+      // that failed to start has already released its own.
+      for (int i = threads.size() + 1; i < count; i++) {
+        release();
+      }
+    }
+    return threads;
+  }
+
+  /**
+   * Take permits for transactions if the executor is bounded, waiting until
+   * the permits are free or the deadline passes.
+   *
+   * @param count the number of permits
+   * @param deadline the deadline in System.nanoTime() terms
+   * @throws InterruptedException when the calling thread is interrupted while
+   *           waiting for the permits
+   * @throws DelegateTimeoutException when the permits are not free before the
+   *           deadline
+   */
+  private void acquire(int count, long deadline) throws InterruptedException,
+      DelegateTimeoutException {
+    if (permits != null
+        && !permits.tryAcquire(count,
+                               deadline - System.nanoTime(),
+                               TimeUnit.NANOSECONDS)) {
+      Object[] args = { subsystem, maxTransactions };
+      String message = Message.getMessage(START_TIMEOUT_ERROR, args);
+      throw new DelegateTimeoutException(message);
+    }
+  }
+
+  /**
+   * Start a transaction in a new tracking thread that holds a permit.
+   *
+   * @param runnable the transaction to run in the tracking thread
+   * @return the started tracking thread
+   */
+  private PoesysTrackingThread startThread(final Runnable runnable) {
+    // Release the permit when the transaction ends rather than when the caller
+    // stops waiting, so the bound holds for transactions that outlive a timeout.
+    Runnable transaction = new Runnable() {
+      public void run() {
+        try {
+          runnable.run();
+        } finally {
+          release();
+        }
+      }
+    };
+
+    PoesysTrackingThread thread = null;
+    try {
+      thread =
+        new PoesysTrackingThread(group,
+                                 transaction,
+                                 "poesys-transaction-"
+                                     + counter.incrementAndGet(),
+                                 stackSize,
+                                 subsystem);
+      thread.start();
+    } catch (RuntimeException e) {
+      // The thread never started, so it never releases its permit.
+      release();
+      throw e;
+    } catch (Error e) {
+      release();
+      throw e;
+    }
+    return thread;
+  }
+
+  /**
+   * Wait for a tracking thread until it ends or the deadline passes.
+   *
+   * @param thread the tracking thread
+   * @param deadline the deadline in System.nanoTime() terms
+   * @return true if the thread ended, false if the deadline passed
+   * @throws InterruptedException when the calling thread is interrupted
+   */
+  static boolean join(PoesysTrackingThread thread, long deadline)
+      throws InterruptedException {
+    long remaining;
+    while (thread.isAlive()
+           && (remaining = deadline - System.nanoTime()) > 0L) {
+      TimeUnit.NANOSECONDS.timedJoin(thread, remaining);
+    }
+    return !thread.isAlive();
+  }
+
+  /**
+   * Abort the transaction of a tracking thread that is still running. The
+   * method interrupts the thread and aborts its connection: the abort stops
+   * the running statement and releases the connection, and the database rolls
+   * back the uncommitted work. The DAOs create their own statements, so
+   * aborting the connection is the only way to cancel a statement from
+   * outside the transaction. If the driver cannot abort, the thread must roll
+   * back when its statement returns.
+   *
+   * @param thread the tracking thread
+   */
+  static void abort(PoesysTrackingThread thread) {
+    if (!thread.isAlive()) {
+      return;
+    }
+    thread.interrupt();
+    Connection connection = thread.getConnection();
+    if (connection != null) {
+      try {
+        connection.abort(Runnable::run);
+      } catch (SQLException | RuntimeException e) {
+        logger.warn("Could not abort connection of " + thread.getName(), e);
+      }
+    }
+  }
+
+  /**
+   * Close the connection of a tracking thread, logging rather than throwing
+   * an error, which is likely after a cancellation has aborted the connection.
+   *
+   * @param thread the tracking thread
+   */
+  static void closeConnection(PoesysTrackingThread thread) {
+    try {
+      thread.closeConnection();
+    } catch (RuntimeException e) {
+      logger.warn("Could not close connection of " + thread.getName(), e);
+    }
+  }
+
+  /**
+   * Release a transaction permit if the executor is bounded.
+   */
+  private void release() {
+    if (permits != null) {
+      permits.release();
+    }
+  }
+
+  /**
+   * Get the subsystem for the transactions.
+   *
+   * @return the subsystem
+   */
+  public String getSubsystem() {
+    return subsystem;
+  }
+
+  /**
+   * Get the maximum number of concurrent transactions.
+   *
+   * @return the maximum, or 0 if the executor is not bounded
+   */
+  public int getMaxTransactions() {
+    return maxTransactions;
+  }
+
+  /**
+   * Get the number of transactions currently running or starting.
+   *
+   * @return the number of active transactions, or -1 if the executor is not
+   *         bounded and does not count transactions
+   */
+  public int getActiveTransactions() {
+    return permits != null ? maxTransactions - permits.availablePermits() : -1;
+  }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+import com.poesys.bs.dto.IDto;
+
+
+/**
+ * <p>
+ * Merges updates to the same primary key that arrive within a time window into
+ * one UPDATE. The delegate's update methods submit CHANGED objects, and the
+ * coalescer holds them for the window after the first submission, replacing
+ * an earlier pending object for the same key with the result of a merge
+ * function (by default the later object, so the last writer wins). At the end
+ * of the window, or as soon as the number of pending keys reaches a maximum,
+ * the coalescer writes all the pending objects in one process() transaction
+ * and completes the callers' futures when the transaction commits, or
+ * exceptionally if it fails. The writes run on daemon threads of their own
+ * rather than on the delegate's asynchronous executor, whose threads may be
+ * waiting for them.
+ * </p>
+ * <p>
+ * After a successful write, the coalescer sets the superseded objects, which
+ * it did not write, to EXISTING status, so their callers can keep using them.
+ * All the delegates of one class share a coalescer, so updates from different
+ * requests coalesce; the merge function of the first delegate applies to all
+ * of them. Coalescing is off unless you set a window for the subsystem in the
+ * database properties file:
+ * </p>
+ *
+ * <pre>
+ * com.poesys.db.poesystest.mysql.update_coalesce_millis=20
+ * com.poesys.db.poesystest.mysql.update_coalesce_max=1000
+ * </pre>
+ *
+ * @author Robert J. Muller
+ * @param <T> the business DTO type
+ */
+public class UpdateCoalescer<T extends IDto<?>> {
+  /** Property suffix for the time window in milliseconds */
+  private static final String WINDOW = "update_coalesce_millis";
+  /** Property suffix for the maximum number of pending keys */
+  private static final String MAX_PENDING = "update_coalesce_max";
+  /** The default maximum number of pending keys */
+  public static final int DEFAULT_MAX_PENDING = 1000;
+
+  /** The shared coalescers by name */
+  private static final ConcurrentMap<String, UpdateCoalescer<?>> coalescers =
+    new ConcurrentHashMap<String, UpdateCoalescer<?>>();
+
+  /** The timer that ends the windows, one daemon thread for all coalescers */
+  private static final ScheduledExecutorService timer =
+    Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "poesys-update-coalescer");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+  /** Counter for naming the write threads */
+  private static final AtomicLong writeThreads = new AtomicLong();
+
+  /**
+   * The executor that runs the writes for all coalescers. Each coalescer runs
+   * one write at a time, so the pool needs at most one thread per coalescer,
+   * and a write never waits for a thread that a waiting caller holds.
+   */
+  private static final ExecutorService writeExecutor =
+    Executors.newCachedThreadPool(runnable -> {
+      Thread thread =
+        new Thread(runnable,
+                   "poesys-coalesced-write-" + writeThreads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+  /** Writes a list of objects in one transaction */
+  private final Consumer<List<T>> writer;
+  /** Merges an earlier pending object with a later one for the same key */
+  private final BinaryOperator<T> merge;
+  /** The time window in milliseconds */
+  private final long windowMillis;
+  /** The maximum number of pending keys before an early write */
+  private final int maxPending;
+
+  /** Guards the pending objects */
+  private final Object lock = new Object();
+  /** The pending updates by primary key string, guarded by lock */
+  private LinkedHashMap<String, Pending<T>> pending =
+    new LinkedHashMap<String, Pending<T>>();
+  /** Whether the timer will end the current window, guarded by lock */
+  private boolean scheduled = false;
+  /** The last write, which the next write follows, guarded by lock */
+  private CompletableFuture<Void> lastWrite =
+    CompletableFuture.completedFuture(null);
+
+  /** Number of objects submitted */
+  private final AtomicLong submitted = new AtomicLong();
+  /** Number of objects merged into a pending object */
+  private final AtomicLong merged = new AtomicLong();
+  /** Number of write transactions */
+  private final AtomicLong writes = new AtomicLong();
+
+  /**
+   * A pending update: the object to write, the objects it superseded, and the
+   * futures of the callers who submitted them
+   *
+   * @param <T> the business DTO type
+   */
+  private static final class Pending<T extends IDto<?>> {
+    /** The object to write */
+    T object;
+    /** The submitted objects that the coalescer will not write */
+    final List<T> superseded = new ArrayList<T>(1);
+    /** The futures to complete after the write */
+    final List<CompletableFuture<Void>> futures =
+      new ArrayList<CompletableFuture<Void>>(1);
+
+    /**
+     * Create a Pending object.
+     *
+     * @param object the first submitted object
+     * @param future the first caller's future
+     */
+    Pending(T object, CompletableFuture<Void> future) {
+      this.object = object;
+      futures.add(future);
+    }
+
+    /**
+     * Merge a later submitted object into the pending update.
+     *
+     * @param later the later object
+     * @param future the later caller's future
+     * @param merge the merge function
+     */
+    void merge(T later,
+               CompletableFuture<Void> future,
+               BinaryOperator<T> merge) {
+      T result = merge.apply(object, later);
+      if (object != result) {
+        superseded.add(object);
+      }
+      if (later != result) {
+        superseded.add(later);
+      }
+      object = result;
+      futures.add(future);
+    }
+  }
+
+  /**
+   * Create an UpdateCoalescer object.
+   *
+   * @param writer writes a list of objects in one transaction, typically the
+   *          delegate's write() method
+   * @param merge merges an earlier pending object with a later one for the
+   *          same key, returning the object to write; null for last writer
+   *          wins
+   * @param windowMillis the time window in milliseconds
+   * @param maxPending the maximum number of pending keys before an early write
+   */
+  public UpdateCoalescer(Consumer<List<T>> writer,
+                         BinaryOperator<T> merge,
+                         long windowMillis,
+                         int maxPending) {
+    this.writer = writer;
+    this.merge = merge != null ? merge : (older, newer) -> newer;
+    this.windowMillis = Math.max(1L, windowMillis);
+    this.maxPending = Math.max(1, maxPending);
+  }
+
+  /**
+   * Get the shared coalescer with a name, creating it from the properties for
+   * a subsystem if it does not yet exist. Name the coalescer after the
+   * subsystem and the delegate class.
+   *
+   * @param <T> the business DTO type
+   * @param subsystem the subsystem
+   * @param name the name of the coalescer
+   * @param writer writes a list of objects in one transaction
+   * @param merge merges an earlier pending object with a later one
+   * @return the coalescer, or null if the subsystem has no coalescing window
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends IDto<?>> UpdateCoalescer<T> getInstance(String subsystem,
+                                                                   String name,
+                                                                   Consumer<List<T>> writer,
+                                                                   BinaryOperator<T> merge) {
+    long window = DelegateProperties.getLong(subsystem, WINDOW, 0L);
+    if (window <= 0) {
+      return null;
+    }
+    int max =
+      DelegateProperties.getInt(subsystem, MAX_PENDING, DEFAULT_MAX_PENDING);
+    return (UpdateCoalescer<T>)coalescers.computeIfAbsent(name, n -> {
+      return new UpdateCoalescer<T>(writer, merge, window, max);
+    });
+  }
+
+  /**
+   * Submit a CHANGED object for a coalesced update.
+   *
+   * @param object the object to update
+   * @return a future that completes when the transaction that writes the
+   *         object, or the object that superseded it, commits
+   */
+  public CompletableFuture<Void> submit(T object) {
+    CompletableFuture<Void> future = new CompletableFuture<Void>();
+    String key = object.getPrimaryKey().getStringKey();
+    boolean full = false;
+    submitted.incrementAndGet();
+    synchronized (lock) {
+      Pending<T> update = pending.get(key);
+      if (update == null) {
+        pending.put(key, new Pending<T>(object, future));
+      } else {
+        update.merge(object, future, merge);
+        merged.incrementAndGet();
+      }
+      if (pending.size() >= maxPending) {
+        full = true;
+      } else if (!scheduled) {
+        scheduled = true;
+        timer.schedule(this::endWindow, windowMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+    if (full) {
+      flush();
+    }
+    return future;
+  }
+
+  /**
+   * End the current window on the timer and write the pending updates.
+   */
+  private void endWindow() {
+    synchronized (lock) {
+      scheduled = false;
+    }
+    flush();
+  }
+
+  /**
+   * Take the pending updates and write them on a write thread without waiting
+   * for the window to end. Each write starts after the previous write
+   * finishes, so a later update to a key never commits before an earlier one.
+   */
+  public void flush() {
+    synchronized (lock) {
+      if (pending.isEmpty()) {
+        return;
+      }
+      final List<Pending<T>> batch =
+        new ArrayList<Pending<T>>(pending.values());
+      pending = new LinkedHashMap<String, Pending<T>>();
+      lastWrite = lastWrite.handleAsync((result, e) -> {
+        write(batch);
+        return null;
+      }, this::execute);
+    }
+  }
+
+  /**
+   * Run a write on the write executor, or in the calling thread if the
+   * executor rejects it, so no caller waits forever for a write that never
+   * runs.
+   *
+   * @param write the write to run
+   */
+  private void execute(Runnable write) {
+    try {
+      writeExecutor.execute(write);
+    } catch (RejectedExecutionException e) {
+      write.run();
+    }
+  }
+
+  /**
+   * Write a batch of pending updates in one transaction and complete the
+   * futures.
+   *
+   * @param batch the pending updates
+   */
+  private void write(List<Pending<T>> batch) {
+    List<T> list = new ArrayList<T>(batch.size());
+    for (Pending<T> update : batch) {
+      list.add(update.object);
+    }
+    writes.incrementAndGet();
+    try {
+      writer.accept(list);
+    } catch (Throwable e) {
+      for (Pending<T> update : batch) {
+        for (CompletableFuture<Void> future : update.futures) {
+          future.completeExceptionally(e);
+        }
+      }
+      return;
+    }
+    for (Pending<T> update : batch) {
+      for (T object : update.superseded) {
+        object.toDto().setExisting();
+        object.clearChangedProperties();
+      }
+      for (CompletableFuture<Void> future : update.futures) {
+        future.complete(null);
+      }
+    }
+  }
+
+  /**
+   * Get the number of objects submitted.
+   *
+   * @return the number of submitted objects
+   */
+  public long getSubmitted() {
+    return submitted.get();
+  }
+
+  /**
+   * Get the number of objects merged into a pending object rather than written
+   * separately.
+   *
+   * @return the number of merged objects
+   */
+  public long getMerged() {
+    return merged.get();
+  }
+
+  /**
+   * Get the number of write transactions.
+   *
+   * @return the number of writes
+   */
+  public long getWrites() {
+    return writes.get();
+  }
+}
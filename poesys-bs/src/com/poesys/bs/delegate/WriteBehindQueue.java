@@ -0,0 +1,719 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+
+import com.poesys.bs.dto.IDto;
+import com.poesys.db.Message;
+import com.poesys.db.pk.IPrimaryKey;
+
+
+/**
+ * <p>
+ * A bounded queue of business objects that a data delegate writes to the
+ * database in the background (write-behind). The delegate's process() method
+ * puts the objects into the queue and returns, and a background writer thread
+ * takes the queued objects in batches of up to a maximum size and writes each
+ * batch in one process() transaction, so many small process() calls become a
+ * few large JDBC batches. The writer waits up to a linger time after the first
+ * object arrives to fill a batch.
+ * </p>
+ * <p>
+ * The queue coalesces writes of the same object: if a caller processes an
+ * object that is still in the queue, the queue keeps the one entry, and the
+ * writer writes the object's state at the time of the write. Different
+ * objects with the same primary key, such as a new object and a deleted
+ * object for the same row, stay separate entries in queue order, and an
+ * object processed again after another object with its key moves behind that
+ * object. A process() transaction writes all its deletes before its inserts,
+ * so the writer ends a batch before an object whose primary key is already in
+ * the batch; with the single writer thread, the writes of each key happen in
+ * queue order.
+ * </p>
+ * <p>
+ * Write-behind trades durability for latency: a process() call returns before
+ * the database commits, a failed batch is logged and counted but not reported
+ * to the caller, and objects still in the queue are lost if the JVM halts
+ * without running its shutdown hooks. The queue flushes itself in a shutdown
+ * hook, and flush() waits for all queued objects to be written. When the queue
+ * is full, the backpressure policy either blocks the caller until there is
+ * room, makes the caller write its own objects synchronously, or rejects the
+ * objects with an exception. A caller whose objects share a primary key with
+ * a queued object or an object being written blocks rather than writing its
+ * objects itself, so its write never overtakes an earlier write of the key.
+ * </p>
+ * <p>
+ * Delegates for tables with identity keys always process synchronously,
+ * because the caller needs the key that the insert generates.
+ * </p>
+ * <p>
+ * The delegate builds its queue from the subsystem properties in the database
+ * properties file; write-behind is off unless you turn it on:
+ * </p>
+ *
+ * <pre>
+ * com.poesys.db.poesystest.mysql.write_behind=true
+ * com.poesys.db.poesystest.mysql.write_behind_capacity=10000
+ * com.poesys.db.poesystest.mysql.write_behind_batch=1000
+ * com.poesys.db.poesystest.mysql.write_behind_linger_millis=50
+ * com.poesys.db.poesystest.mysql.write_behind_backpressure=BLOCK
+ * com.poesys.db.poesystest.mysql.write_behind_block_millis=60000
+ * </pre>
+ *
+ * @author Robert J. Muller
+ * @param <T> the business DTO type
+ */
+public class WriteBehindQueue<T extends IDto<?>> {
+  /** Logger for this class */
+  private static final Logger logger =
+    Logger.getLogger(WriteBehindQueue.class);
+
+  static {
+    List<String> names = new ArrayList<String>(1);
+    names.add("com.poesys.bs.PoesysBsBundle");
+    Message.initializePropertiesFiles(names);
+  }
+
+  /** What process() does when the queue is full */
+  public enum Backpressure {
+    /** Block the caller until there is room or the block time runs out */
+    BLOCK,
+    /**
+     * Write the caller's objects synchronously in the calling thread, or block
+     * if an object has the key of an object in the queue or being written
+     */
+    CALLER_RUNS,
+    /** Reject the objects with a DelegateException */
+    REJECT
+  }
+
+  /** The default maximum number of queued objects */
+  public static final int DEFAULT_CAPACITY = 10000;
+  /** The default maximum number of objects in one background write */
+  public static final int DEFAULT_BATCH = 1000;
+  /** The default time in milliseconds to wait to fill a batch */
+  public static final long DEFAULT_LINGER_MILLIS = 50L;
+  /** The default time in milliseconds to block a caller on a full queue */
+  public static final long DEFAULT_BLOCK_MILLIS = 60000L;
+
+  /** Property suffix for the write-behind flag */
+  private static final String WRITE_BEHIND = "write_behind";
+  /** Property suffix for the capacity */
+  private static final String CAPACITY = "write_behind_capacity";
+  /** Property suffix for the batch size */
+  private static final String BATCH = "write_behind_batch";
+  /** Property suffix for the linger time */
+  private static final String LINGER = "write_behind_linger_millis";
+  /** Property suffix for the backpressure policy */
+  private static final String BACKPRESSURE = "write_behind_backpressure";
+  /** Property suffix for the block time */
+  private static final String BLOCK_MILLIS = "write_behind_block_millis";
+
+  /** Error message when the queue is full */
+  private static final String FULL_ERROR =
+    "com.poesys.bs.delegate.msg.writeBehindFull";
+  /** Error message when the queue is closed */
+  private static final String CLOSED_ERROR =
+    "com.poesys.bs.delegate.msg.writeBehindClosed";
+
+  /** The shared queues by name */
+  private static final ConcurrentMap<String, WriteBehindQueue<?>> queues =
+    new ConcurrentHashMap<String, WriteBehindQueue<?>>();
+
+  /** The name of the queue for threads and messages */
+  private final String name;
+  /** Writes a batch of objects synchronously */
+  private final Consumer<List<T>> writer;
+  /** The maximum number of queued objects */
+  private final int capacity;
+  /** The maximum number of objects in one write */
+  private final int batchSize;
+  /** The time in nanoseconds to wait to fill a batch */
+  private final long lingerNanos;
+  /** What to do when the queue is full */
+  private final Backpressure backpressure;
+  /** The time in nanoseconds to block a caller on a full queue */
+  private final long blockNanos;
+
+  /** Guards the queue state and signals changes to it */
+  private final Object lock = new Object();
+  /** The queued objects by identity in queue order, guarded by lock */
+  private final LinkedHashMap<Identity, T> pending =
+    new LinkedHashMap<Identity, T>();
+  /** The last queued object for each primary key, guarded by lock */
+  private final HashMap<String, Identity> lastByKey =
+    new HashMap<String, Identity>();
+  /** The System.nanoTime() the oldest queued object arrived, guarded by lock */
+  private long oldest = 0L;
+  /** Whether the writer is writing a batch, guarded by lock */
+  private boolean writing = false;
+  /** The primary keys of the batch being written, guarded by lock */
+  private Set<String> writingKeys = new HashSet<String>();
+  /** Number of callers waiting for a flush, guarded by lock */
+  private int flushWaiters = 0;
+  /** Whether the queue is closed, guarded by lock */
+  private boolean closed = false;
+
+  /** The background writer thread */
+  private final Thread writerThread;
+  /** The shutdown hook that flushes the queue */
+  private final Thread shutdownHook;
+
+  /** Number of objects queued, not counting coalesced objects */
+  private final AtomicLong enqueued = new AtomicLong();
+  /** Number of objects coalesced into an object already in the queue */
+  private final AtomicLong coalesced = new AtomicLong();
+  /** Number of objects the caller wrote or had rejected on a full queue */
+  private final AtomicLong overflowed = new AtomicLong();
+  /** Number of background writes */
+  private final AtomicLong flushes = new AtomicLong();
+  /** Number of objects written in the background */
+  private final AtomicLong written = new AtomicLong();
+  /** Number of objects in background writes that failed */
+  private final AtomicLong failed = new AtomicLong();
+  /** Total time in nanoseconds of the background writes */
+  private final AtomicLong flushNanos = new AtomicLong();
+  /** Longest time in nanoseconds of a background write */
+  private final AtomicLong maxFlushNanos = new AtomicLong();
+
+  /**
+   * A key that compares queued objects by identity
+   */
+  private static final class Identity {
+    /** The queued object */
+    private final Object object;
+
+    /**
+     * Create an Identity object.
+     *
+     * @param object the queued object
+     */
+    Identity(Object object) {
+      this.object = object;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(object);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Identity && ((Identity)obj).object == object;
+    }
+  }
+
+  /**
+   * Create a WriteBehindQueue object and start its writer thread.
+   *
+   * @param name the name of the queue for the writer thread and messages
+   * @param writer writes a batch of objects synchronously, typically the
+   *          delegate's synchronous process method
+   * @param capacity the maximum number of queued objects
+   * @param batchSize the maximum number of objects in one write
+   * @param lingerMillis the time in milliseconds to wait to fill a batch
+   * @param backpressure what to do when the queue is full
+   * @param blockMillis the time in milliseconds to block a caller on a full
+   *          queue with the BLOCK policy
+   */
+  public WriteBehindQueue(String name,
+                          Consumer<List<T>> writer,
+                          int capacity,
+                          int batchSize,
+                          long lingerMillis,
+                          Backpressure backpressure,
+                          long blockMillis) {
+    this.name = name;
+    this.writer = writer;
+    this.capacity = Math.max(1, capacity);
+    this.batchSize = Math.max(1, batchSize);
+    this.lingerNanos = Math.max(0L, lingerMillis) * 1000000L;
+    this.backpressure =
+      backpressure == null ? Backpressure.BLOCK : backpressure;
+    this.blockNanos = Math.max(0L, blockMillis) * 1000000L;
+
+    writerThread = new Thread(this::writeLoop, "poesys-write-behind-" + name);
+    writerThread.setDaemon(true);
+    writerThread.start();
+
+    shutdownHook = new Thread(this::close, "poesys-write-behind-flush-" + name);
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+  }
+
+  /**
+   * Get the shared write-behind queue with a name, creating it from the
+   * properties for a subsystem if it does not yet exist. Delegates of the same
+   * class share one queue and one writer thread, so name the queue after the
+   * subsystem and the delegate class; the first delegate's writer writes the
+   * objects for all of them.
+   *
+   * @param <T> the business DTO type
+   * @param subsystem the subsystem
+   * @param name the name of the queue for the writer thread and messages
+   * @param writer writes a batch of objects synchronously
+   * @return the queue, or null if write-behind is off for the subsystem
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends IDto<?>> WriteBehindQueue<T> getInstance(String subsystem,
+                                                                    String name,
+                                                                    Consumer<List<T>> writer) {
+    if (!DelegateProperties.getBoolean(subsystem, WRITE_BEHIND, false)) {
+      return null;
+    }
+    return (WriteBehindQueue<T>)queues.computeIfAbsent(name,
+                                                       n -> create(subsystem,
+                                                                   n,
+                                                                   writer));
+  }
+
+  /**
+   * Create a write-behind queue from the properties for a subsystem.
+   *
+   * @param <T> the business DTO type
+   * @param subsystem the subsystem
+   * @param name the name of the queue
+   * @param writer writes a batch of objects synchronously
+   * @return the new queue
+   */
+  private static <T extends IDto<?>> WriteBehindQueue<T> create(String subsystem,
+                                                                String name,
+                                                                Consumer<List<T>> writer) {
+    int capacity =
+      DelegateProperties.getInt(subsystem, CAPACITY, DEFAULT_CAPACITY);
+    int batch = DelegateProperties.getInt(subsystem, BATCH, DEFAULT_BATCH);
+    long linger =
+      DelegateProperties.getLong(subsystem, LINGER, DEFAULT_LINGER_MILLIS);
+    Backpressure policy = Backpressure.BLOCK;
+    String string = DelegateProperties.getString(subsystem, BACKPRESSURE);
+    if (string != null && !string.isEmpty()) {
+      try {
+        policy = Backpressure.valueOf(string.toUpperCase());
+      } catch (IllegalArgumentException e) {
+        logger.warn("Invalid backpressure policy " + string + " for property "
+                    + subsystem + "." + BACKPRESSURE + ", using " + policy);
+      }
+    }
+    long block =
+      DelegateProperties.getLong(subsystem, BLOCK_MILLIS, DEFAULT_BLOCK_MILLIS);
+    return new WriteBehindQueue<T>(name,
+                                   writer,
+                                   capacity,
+                                   batch,
+                                   linger,
+                                   policy,
+                                   block);
+  }
+
+  /**
+   * Queue a list of objects for writing. If the queue is full, the method
+   * applies the backpressure policy. A list larger than the capacity goes into
+   * an empty queue as a whole rather than blocking forever.
+   * Under CALLER_RUNS, a list with the key of a queued object or of an object
+   * being written waits as under BLOCK.
+   *
+   * @param list the objects to write
+   * @throws DelegateException when the queue is closed, or when the queue is
+   *           full and the policy is REJECT or the BLOCK time runs out
+   */
+  public void enqueue(List<T> list) throws DelegateException {
+    boolean callerRuns = false;
+    synchronized (lock) {
+      checkOpen();
+      int added = countNew(list);
+      long deadline = System.nanoTime() + blockNanos;
+      while (!pending.isEmpty() && pending.size() + added > capacity) {
+        if (backpressure == Backpressure.CALLER_RUNS && !hasPendingKey(list)) {
+          callerRuns = true;
+          break;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (backpressure == Backpressure.REJECT || remaining <= 0) {
+          overflowed.addAndGet(list.size());
+          Object[] args = { name };
+          throw new DelegateException(Message.getMessage(FULL_ERROR, args));
+        }
+        waitOn(remaining);
+        checkOpen();
+        added = countNew(list);
+      }
+
+      if (!callerRuns) {
+        if (pending.isEmpty()) {
+          oldest = System.nanoTime();
+        }
+        for (T object : list) {
+          put(object);
+        }
+        lock.notifyAll();
+        return;
+      }
+    }
+
+    // CALLER_RUNS: write the objects in the calling thread.
+    overflowed.addAndGet(list.size());
+    writer.accept(list);
+  }
+
+  /**
+   * Wait until the writer has written all the objects in the queue, including
+   * objects that other callers queue while this method waits.
+   */
+  public void flush() {
+    synchronized (lock) {
+      flushWaiters++;
+      try {
+        lock.notifyAll();
+        while (!pending.isEmpty() || writing) {
+          if (!writerThread.isAlive()) {
+            break;
+          }
+          waitOn(lingerNanos > 0 ? lingerNanos : 1000000L);
+        }
+      } finally {
+        flushWaiters--;
+      }
+    }
+  }
+
+  /**
+   * Close the queue: reject further objects, write the queued objects, and
+   * stop the writer thread. Closing more than once does nothing. A closed
+   * shared queue is no longer shared, so the next getInstance() call creates
+   * a new queue.
+   */
+  public void close() {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      lock.notifyAll();
+    }
+    queues.remove(name, this);
+    try {
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (Thread.currentThread() != shutdownHook) {
+      try {
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+      } catch (IllegalStateException e) {
+        // The JVM is already shutting down; the hook has nothing to do.
+      }
+    }
+  }
+
+  /**
+   * The writer thread's loop: wait for objects, linger to fill a batch, take
+   * a batch out of the queue, and write it, until the queue is closed and
+   * empty.
+   */
+  private void writeLoop() {
+    while (true) {
+      List<T> batch = null;
+      synchronized (lock) {
+        while (!closed && !isBatchReady()) {
+          if (pending.isEmpty()) {
+            waitOn(0L);
+          } else {
+            waitOn(Math.max(1L, oldest + lingerNanos - System.nanoTime()));
+          }
+        }
+        if (pending.isEmpty()) {
+          // Closed and fully written
+          lock.notifyAll();
+          return;
+        }
+        batch = new ArrayList<T>(Math.min(batchSize, pending.size()));
+        Iterator<Map.Entry<Identity, T>> i = pending.entrySet().iterator();
+        Set<String> keys = new HashSet<String>();
+        boolean cut = false;
+        while (i.hasNext() && batch.size() < batchSize) {
+          Map.Entry<Identity, T> entry = i.next();
+          String key = getKey(entry.getValue());
+          if (key != null && !keys.add(key)) {
+            // Write the later object for the key in the next batch.
+            cut = true;
+            break;
+          }
+          batch.add(entry.getValue());
+          i.remove();
+          if (key != null) {
+            lastByKey.remove(key, entry.getKey());
+          }
+        }
+        if (!cut) {
+          oldest = System.nanoTime();
+        }
+        writing = true;
+        writingKeys = keys;
+        // Wake callers blocked on a full queue.
+        lock.notifyAll();
+      }
+
+      long start = System.nanoTime();
+      try {
+        writer.accept(batch);
+        written.addAndGet(batch.size());
+      } catch (Throwable e) {
+        failed.addAndGet(batch.size());
+        logger.error("Write-behind batch of " + batch.size()
+                     + " objects failed for " + name, e);
+      } finally {
+        long nanos = System.nanoTime() - start;
+        flushes.incrementAndGet();
+        flushNanos.addAndGet(nanos);
+        long max = maxFlushNanos.get();
+        while (nanos > max && !maxFlushNanos.compareAndSet(max, nanos)) {
+          max = maxFlushNanos.get();
+        }
+        synchronized (lock) {
+          writing = false;
+          writingKeys = new HashSet<String>();
+          lock.notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Put an object into the queue. An object already in the queue keeps its
+   * place unless another object with its primary key is queued after it, in
+   * which case it moves to the end of the queue. Call with the lock held.
+   *
+   * @param object the object to queue
+   */
+  private void put(T object) {
+    Identity identity = new Identity(object);
+    String key = getKey(object);
+    if (pending.containsKey(identity)) {
+      coalesced.incrementAndGet();
+      if (key == null || lastByKey.get(key) == identity) {
+        return;
+      }
+      pending.remove(identity);
+    } else {
+      enqueued.incrementAndGet();
+    }
+    pending.put(identity, object);
+    if (key != null) {
+      lastByKey.put(key, identity);
+    }
+  }
+
+  /**
+   * Get the string form of the primary key of an object.
+   *
+   * @param object the object
+   * @return the key, or null if the object has no primary key yet
+   */
+  private static String getKey(IDto<?> object) {
+    IPrimaryKey key = object.getPrimaryKey();
+    return key != null ? key.getStringKey() : null;
+  }
+
+  /**
+   * Is there a batch to write now? There is if the queue has a full batch, if
+   * the oldest object has waited the linger time, or if a caller is waiting
+   * for a flush. Call with the lock held.
+   *
+   * @return true if the writer should write a batch now
+   */
+  private boolean isBatchReady() {
+    if (pending.isEmpty()) {
+      return false;
+    }
+    return pending.size() >= batchSize || flushWaiters > 0
+           || System.nanoTime() - oldest >= lingerNanos;
+  }
+
+  /**
+   * Count the objects in a list that are not already in the queue. Call with
+   * the lock held.
+   *
+   * @param list the objects
+   * @return the number of objects the list would add to the queue
+   */
+  private int countNew(List<T> list) {
+    int added = 0;
+    for (T object : list) {
+      if (!pending.containsKey(new Identity(object))) {
+        added++;
+      }
+    }
+    return added;
+  }
+
+  /**
+   * Does a list have an object with the primary key of a queued object or of
+   * an object being written? Call with the lock held.
+   *
+   * @param list the objects
+   * @return true if the caller must not write the list ahead of the queue
+   */
+  private boolean hasPendingKey(List<T> list) {
+    for (T object : list) {
+      String key = getKey(object);
+      if (key != null
+          && (lastByKey.containsKey(key) || writingKeys.contains(key))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Throw an exception if the queue is closed. Call with the lock held.
+   *
+   * @throws DelegateException when the queue is closed
+   */
+  private void checkOpen() throws DelegateException {
+    if (closed) {
+      Object[] args = { name };
+      throw new DelegateException(Message.getMessage(CLOSED_ERROR, args));
+    }
+  }
+
+  /**
+   * Wait on the lock for a time, restoring the interrupt status if the thread
+   * is interrupted. Call with the lock held.
+   *
+   * @param nanos the time to wait in nanoseconds, 0 to wait for a signal
+   */
+  private void waitOn(long nanos) {
+    try {
+      if (nanos <= 0) {
+        lock.wait();
+      } else {
+        lock.wait(nanos / 1000000L, (int)(nanos % 1000000L));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Get the number of objects waiting in the queue.
+   *
+   * @return the queue depth
+   */
+  public int getDepth() {
+    synchronized (lock) {
+      return pending.size();
+    }
+  }
+
+  /**
+   * Get the maximum number of queued objects.
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Get the number of objects queued, not counting coalesced objects.
+   *
+   * @return the number of queued objects
+   */
+  public long getEnqueued() {
+    return enqueued.get();
+  }
+
+  /**
+   * Get the number of objects coalesced into an object already in the queue.
+   *
+   * @return the number of coalesced objects
+   */
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  /**
+   * Get the number of objects that found the queue full and that the caller
+   * wrote synchronously or had rejected.
+   *
+   * @return the number of overflowed objects
+   */
+  public long getOverflowed() {
+    return overflowed.get();
+  }
+
+  /**
+   * Get the number of background writes.
+   *
+   * @return the number of writes
+   */
+  public long getFlushes() {
+    return flushes.get();
+  }
+
+  /**
+   * Get the number of objects written in the background.
+   *
+   * @return the number of written objects
+   */
+  public long getWritten() {
+    return written.get();
+  }
+
+  /**
+   * Get the number of objects in background writes that failed.
+   *
+   * @return the number of failed objects
+   */
+  public long getFailed() {
+    return failed.get();
+  }
+
+  /**
+   * Get the average time of a background write.
+   *
+   * @return the average time in nanoseconds, 0 if there have been no writes
+   */
+  public long getAverageFlushNanos() {
+    long count = flushes.get();
+    return count == 0 ? 0L : flushNanos.get() / count;
+  }
+
+  /**
+   * Get the longest time of a background write.
+   *
+   * @return the maximum time in nanoseconds
+   */
+  public long getMaxFlushNanos() {
+    return maxFlushNanos.get();
+  }
+}
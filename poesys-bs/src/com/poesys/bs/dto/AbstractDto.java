@@ -18,6 +18,9 @@
 package com.poesys.bs.dto;
 
 
+import java.util.Arrays;
+import java.util.Set;
+
 import com.poesys.bs.delegate.DelegateException;
 import com.poesys.db.Message;
 import com.poesys.db.dto.IDbDto;
@@ -79,6 +82,7 @@ import com.poesys.db.pk.IPrimaryKey;
  * 
  *    public void setCol1(BigDecimal col1) {
  *        dto.setCol1(col1);
+ *        setChanged("col1");
  *    }
  * 
  *    public IPrimaryKey getPrimaryKey() {
@@ -98,6 +102,11 @@ public abstract class AbstractDto<T extends IDbDto> implements IDto<T> {
   /** Internal data-access-layer DTO; package access for list building */
   protected T dto;
 
+  /** Column values at the last snapshot, null for none, guarded by this */
+  private Object[] snapshot = null;
+  /** Hash codes of the snapshot values, guarded by this */
+  private int[] snapshotHashes = null;
+
   /** Error message when no object supplied to constructor */
   static protected final String NO_OBJECT =
     "com.poesys.bs.delegate.msg.noObject";
@@ -179,6 +188,93 @@ public abstract class AbstractDto<T extends IDbDto> implements IDto<T> {
     dto.markChildrenDeleted();
   }
 
+  /**
+   * Record that a mutator set a property, so the delegate can update only the
+   * changed columns. Call this in each set method after setting the value in
+   * the embedded data-access DTO. Use the property name that the delegate's
+   * getUpdateSql(Set) method expects, usually the column name. The embedded
+   * DTO keeps the names, so all the business DTOs that wrap it see the same
+   * changes.
+   * 
+   * @param property the name of the property
+   */
+  protected void setChanged(String property) {
+    ChangedProperties.add(dto, property);
+  }
+
+  @Override
+  public Set<String> getChangedProperties() {
+    return ChangedProperties.get(dto);
+  }
+
+  @Override
+  public void clearChangedProperties() {
+    ChangedProperties.clear(dto);
+  }
+
+  /**
+   * Get the current values of the updatable columns for snapshot comparison.
+   * Return the values in a fixed order, and return immutable values or copies
+   * (a Date or array that the application changes in place would otherwise
+   * match its own snapshot). The default implementation returns null, which
+   * turns off snapshot comparison for the DTO.
+   * 
+   * @return the column values, or null for no snapshot comparison
+   */
+  protected Object[] getColumnValues() {
+    return null;
+  }
+
+  @Override
+  public synchronized void takeSnapshot() {
+    Object[] values = getColumnValues();
+    if (values == null) {
+      snapshot = null;
+      snapshotHashes = null;
+      return;
+    }
+    int[] hashes = new int[values.length];
+    for (int i = 0; i < values.length; i++) {
+      hashes[i] = hash(values[i]);
+    }
+    snapshot = values;
+    snapshotHashes = hashes;
+  }
+
+  @Override
+  public synchronized boolean matchesSnapshot() {
+    if (snapshot == null) {
+      return false;
+    }
+    Object[] values = getColumnValues();
+    if (values == null || values.length != snapshot.length) {
+      return false;
+    }
+    // Compare the hashes first, which rejects most changed values without an
+    // equals() call, then confirm the equal hashes with equals().
+    for (int i = 0; i < values.length; i++) {
+      if (hash(values[i]) != snapshotHashes[i]) {
+        return false;
+      }
+    }
+    return Arrays.deepEquals(values, snapshot);
+  }
+
+  /**
+   * Hash a column value, hashing the contents of an array.
+   * 
+   * @param value the value
+   * @return the hash code
+   */
+  private static int hash(Object value) {
+    if (value instanceof Object[]) {
+      return Arrays.deepHashCode((Object[])value);
+    } else if (value instanceof byte[]) {
+      return Arrays.hashCode((byte[])value);
+    }
+    return value == null ? 0 : value.hashCode();
+  }
+
   /**
    * Convert the delegate DTO to a data-access layer DTO. Use this method to
    * extract the DTO to pass into data access methods.
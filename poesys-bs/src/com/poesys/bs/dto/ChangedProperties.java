@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.dto;
+
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * <p>
+ * The names of the properties set since the last write, kept for each
+ * data-access DTO rather than for each business DTO. The values live in the
+ * data-access DTO, which several business DTOs may wrap when the DTO comes
+ * from a cache, so the changed properties must live with it too: a business
+ * DTO that wrote just the properties that it set would otherwise drop the
+ * properties that another business DTO set on the same data-access DTO.
+ * </p>
+ * <p>
+ * The registry compares the data-access DTOs by identity, because two DTOs
+ * with the same key may hold different values, and holds them weakly, so it
+ * forgets a DTO that nothing else references. The registry is thread safe.
+ * </p>
+ *
+ * @author Robert J. Muller
+ */
+final class ChangedProperties {
+  /** Changed properties by data-access DTO, guarded by the class */
+  private static final Map<DtoReference, Set<String>> properties =
+    new HashMap<DtoReference, Set<String>>();
+  /** Queue of the references to the collected DTOs */
+  private static final ReferenceQueue<Object> queue =
+    new ReferenceQueue<Object>();
+
+  /**
+   * A weak reference to a data-access DTO that compares the DTO by identity.
+   */
+  private static final class DtoReference extends WeakReference<Object> {
+    /** The identity hash code of the DTO */
+    private final int hash;
+
+    /**
+     * Create a reference to a DTO.
+     *
+     * @param dto the DTO
+     * @param queue the queue for the reference when the DTO is collected, or
+     *          null for a reference that looks up an entry
+     */
+    DtoReference(Object dto, ReferenceQueue<Object> queue) {
+      super(dto, queue);
+      hash = System.identityHashCode(dto);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof DtoReference)) {
+        return false;
+      }
+      Object dto = get();
+      return dto != null && dto == ((DtoReference)obj).get();
+    }
+  }
+
+  /**
+   * Static registry, no instances
+   */
+  private ChangedProperties() {
+  }
+
+  /**
+   * Record that a property of a data-access DTO changed.
+   *
+   * @param dto the data-access DTO
+   * @param property the name of the property
+   */
+  static synchronized void add(Object dto, String property) {
+    purge();
+    DtoReference key = new DtoReference(dto, null);
+    Set<String> set = properties.get(key);
+    if (set == null) {
+      set = new HashSet<String>(4);
+      properties.put(new DtoReference(dto, queue), set);
+    }
+    set.add(property);
+  }
+
+  /**
+   * Get the properties of a data-access DTO changed since the last clear.
+   *
+   * @param dto the data-access DTO
+   * @return a copy of the property names, empty if none changed
+   */
+  static synchronized Set<String> get(Object dto) {
+    Set<String> set = properties.get(new DtoReference(dto, null));
+    if (set == null) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableSet(new HashSet<String>(set));
+  }
+
+  /**
+   * Forget the changed properties of a data-access DTO.
+   *
+   * @param dto the data-access DTO
+   */
+  static synchronized void clear(Object dto) {
+    purge();
+    properties.remove(new DtoReference(dto, null));
+  }
+
+  /**
+   * Remove the entries for the DTOs that the garbage collector has collected.
+   * A collected reference equals only itself, which is the map key.
+   */
+  private static void purge() {
+    Reference<?> reference;
+    while ((reference = queue.poll()) != null) {
+      properties.remove(reference);
+    }
+  }
+}
@@ -29,7 +29,11 @@ import org.apache.log4j.Logger;
  * An abstract utility command class that generically builds a collection of
  * objects of type B from a collection of objects of type T, given a conversion
  * operation implemented in the concrete implementation of the abstract class.
- * The output collection is a threadsafe object such as a CopyOnWriteArrayList.
+ * The output collection is an ArrayList sized to the input collection, so
+ * building a collection copies each element once. If several threads will
+ * modify the output collection, construct the builder with the threadSafe flag
+ * set to get a CopyOnWriteArrayList instead, made with one copy of the
+ * completed collection.
  * 
  * @author Robert J. Muller
  * @param <T> the input object type (DB DTO)
@@ -39,6 +43,27 @@ public abstract class CollectionBuilder<T, B> {
   private static final Logger logger =
     Logger.getLogger(CollectionBuilder.class);
 
+  /** Whether to return a thread-safe collection */
+  private final boolean threadSafe;
+
+  /**
+   * Create a CollectionBuilder that returns an ArrayList.
+   */
+  public CollectionBuilder() {
+    this(false);
+  }
+
+  /**
+   * Create a CollectionBuilder, specifying whether the output collection must
+   * be thread-safe for concurrent modification.
+   * 
+   * @param threadSafe true to return a CopyOnWriteArrayList, false to return
+   *          an ArrayList
+   */
+  public CollectionBuilder(boolean threadSafe) {
+    this.threadSafe = threadSafe;
+  }
+
   /**
    * Get a collection containing objects of type B based on the objects in a
    * collection of objects of type T.
@@ -47,7 +72,8 @@ public abstract class CollectionBuilder<T, B> {
    * @return the collection of output objects
    */
   public Collection<B> getCollection(Collection<T> collection) {
-    Collection<B> newCollection = new ArrayList<B>();
+    Collection<B> newCollection =
+      new ArrayList<B>(collection != null ? collection.size() : 0);
     // Test for null collection, return empty new one if null.
     if (collection != null) {
       for (T dto : collection) {
@@ -67,8 +93,8 @@ public abstract class CollectionBuilder<T, B> {
         }
       }
     }
-    // Return a typesafe collection.
-    return new CopyOnWriteArrayList<B>(newCollection);
+    return threadSafe ? new CopyOnWriteArrayList<B>(newCollection)
+        : newCollection;
   }
 
   /**
@@ -41,7 +41,7 @@ public class DataAccessDtoListBuilder<T extends com.poesys.db.dto.AbstractDto, B
    * @return the list of data-access-layer DTOs
    */
   public List<T> getList(List<B> list) {
-    List<T> dataList = new ArrayList<T>();
+    List<T> dataList = new ArrayList<T>(list != null ? list.size() : 0);
     // Test for null input list, return empty list if null
     if (list != null) {
       for (B dto : list) {
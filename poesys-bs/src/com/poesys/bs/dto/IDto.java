@@ -19,6 +19,8 @@
 package com.poesys.bs.dto;
 
 
+import java.util.Set;
+
 import com.poesys.bs.delegate.DelegateException;
 import com.poesys.db.dto.IDbDto;
 import com.poesys.db.pk.IPrimaryKey;
@@ -123,4 +125,44 @@ public interface IDto<T extends IDbDto> extends Comparable<IDto<T>> {
    * @return the data-access DTO
    */
   T toDto();
+
+  /**
+   * Get the names of the properties set since the object was created, queried,
+   * or last written. The delegate uses the names to update only the changed
+   * columns of a CHANGED object. By default, the DTO does not track its
+   * properties, and the delegate updates all the columns.
+   * 
+   * @return the property names, or null if the DTO does not track them
+   */
+  default Set<String> getChangedProperties() {
+    return null;
+  }
+
+  /**
+   * Forget the changed properties after the delegate writes the object. By
+   * default, the method does nothing.
+   */
+  default void clearChangedProperties() {
+  }
+
+  /**
+   * Record the current column values as the snapshot against which
+   * matchesSnapshot() compares them. The delegate takes the snapshot when it
+   * wraps a queried DTO and after it writes the object. By default, the method
+   * does nothing.
+   */
+  default void takeSnapshot() {
+  }
+
+  /**
+   * Do the column values equal the values in the snapshot? The delegate uses
+   * this to skip the UPDATE of a CHANGED object whose mutators set the same
+   * values it already had.
+   * 
+   * @return true if there is a snapshot and the values equal it, false by
+   *         default
+   */
+  default boolean matchesSnapshot() {
+    return false;
+  }
 }
@@ -29,7 +29,10 @@ import org.apache.log4j.Logger;
  * An abstract utility command class that generically builds a list of objects
  * of type B from a list of objects of type T, given a conversion operation
  * implemented in the concrete implementation of the abstract class. The output
- * list is a threadsafe list such as a CopyOnWriteArrayList.
+ * list is an ArrayList sized to the input list, so building a list copies each
+ * element once. If several threads will modify the output list, construct the
+ * builder with the threadSafe flag set to get a CopyOnWriteArrayList instead,
+ * made with one copy of the completed list.
  * 
  * @author Robert J. Muller
  * @param <T> the input data-access transfer object type
@@ -39,17 +42,37 @@ public abstract class ListBuilder<T, B> {
   /** Logger for this class */
   private static Logger logger = Logger.getLogger(ListBuilder.class);
 
+  /** Whether to return a thread-safe list */
+  private final boolean threadSafe;
+
+  /**
+   * Create a ListBuilder that returns an ArrayList.
+   */
+  public ListBuilder() {
+    this(false);
+  }
+
+  /**
+   * Create a ListBuilder, specifying whether the output list must be
+   * thread-safe for concurrent modification.
+   * 
+   * @param threadSafe true to return a CopyOnWriteArrayList, false to return
+   *          an ArrayList
+   */
+  public ListBuilder(boolean threadSafe) {
+    this.threadSafe = threadSafe;
+  }
+
   /**
    * Get a list containing objects of type B based on the objects in a list of
    * objects of type T.
    * 
    * @param list the list of input objects
-   * @return the list of output objects or null if the input list is null
+   * @return the list of output objects, empty if the input list is null
    */
   public List<B> getList(List<T> list) {
-    List<B> newList = null;
+    List<B> newList = new ArrayList<B>(list != null ? list.size() : 0);
     if (list != null) {
-      List<B> tempList = new ArrayList<B>(list.size());
       int counter = 0;
       for (T dto : list) {
         // Check for null, although this shouldn't be possible.
@@ -60,14 +83,12 @@ public abstract class ListBuilder<T, B> {
           break; // stop looping and return the list constructed so far
         }
         // Call an abstract method to get the new B DTO and add it to the list.
-        tempList.add(get(dto));
+        newList.add(get(dto));
         counter++;
       }
-      newList = tempList;
     }
 
-    return newList != null ? new CopyOnWriteArrayList<B>(newList)
-        : new CopyOnWriteArrayList<B>();
+    return threadSafe ? new CopyOnWriteArrayList<B>(newList) : newList;
   }
 
   /**
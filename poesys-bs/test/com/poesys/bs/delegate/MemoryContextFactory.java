@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2026 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys-BS.
+ *
+ * Poesys-BS is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys-BS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys-BS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.bs.delegate;
+
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Hashtable;
+
+import javax.naming.Context;
+import javax.naming.spi.InitialContextFactory;
+import javax.sql.DataSource;
+
+
+/**
+ * <p>
+ * A JNDI initial context factory whose context returns a data source of
+ * connections that do nothing, so delegates that use a MemoryDaoManager can run
+ * transactions without a database. The tracking thread of each transaction
+ * still opens, commits, and closes a connection; with this factory those calls
+ * cost a method call each. Install the factory before the first transaction
+ * with install() and configure the memory subsystem as a JNDI subsystem in the
+ * database properties file:
+ * </p>
+ *
+ * <pre>
+ * com.poesys.db.memory.name=memory
+ * com.poesys.db.memory.dbms=JNDI
+ * com.poesys.db.memory.pooled=false
+ * com.poesys.db.memory.max_pool_size=1
+ * </pre>
+ *
+ * @author Robert J. Muller
+ */
+public class MemoryContextFactory implements InitialContextFactory {
+  /** The name of the in-memory subsystem */
+  public static final String SUBSYSTEM = "com.poesys.db.memory";
+
+  /** The data source that every lookup returns */
+  private static final DataSource dataSource =
+    proxy(DataSource.class, (proxy, method, args) -> {
+      if (method.getName().equals("getConnection")) {
+        return proxy(Connection.class, MemoryContextFactory::noop);
+      }
+      return noop(proxy, method, args);
+    });
+
+  /** The context that every initial context delegates to */
+  private static final Context context =
+    proxy(Context.class, (proxy, method, args) -> {
+      if (method.getName().equals("lookup")) {
+        return dataSource;
+      }
+      return noop(proxy, method, args);
+    });
+
+  /**
+   * Make this class the JNDI initial context factory for the JVM.
+   */
+  public static void install() {
+    System.setProperty(Context.INITIAL_CONTEXT_FACTORY,
+                       MemoryContextFactory.class.getName());
+  }
+
+  @Override
+  public Context getInitialContext(Hashtable<?, ?> environment) {
+    return context;
+  }
+
+  /**
+   * Create a proxy for an interface.
+   *
+   * @param <I> the interface type
+   * @param type the interface class
+   * @param handler the invocation handler
+   * @return the proxy
+   */
+  private static <I> I proxy(Class<I> type, InvocationHandler handler) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+                                            new Class<?>[] { type },
+                                            handler));
+  }
+
+  /**
+   * Handle a call that does nothing, returning the default value of the
+   * method's return type; Object methods use the identity of the proxy.
+   *
+   * @param proxy the proxy
+   * @param method the called method
+   * @param args the arguments
+   * @return the default value
+   */
+  private static Object noop(Object proxy, Method method, Object[] args) {
+    switch (method.getName()) {
+    case "hashCode":
+      return System.identityHashCode(proxy);
+    case "equals":
+      return proxy == args[0];
+    case "toString":
+      return proxy.getClass().getInterfaces()[0].getSimpleName() + "@"
+             + Integer.toHexString(System.identityHashCode(proxy));
+    default:
+      break;
+    }
+    Class<?> type = method.getReturnType();
+    if (type == boolean.class) {
+      return Boolean.FALSE;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    }
+    return null;
+  }
+}
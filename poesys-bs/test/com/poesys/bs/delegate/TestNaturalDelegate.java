@@ -19,19 +19,34 @@
 package com.poesys.bs.delegate;
 
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
 import com.poesys.bs.dto.BsTestNatural;
 import com.poesys.db.connection.IConnectionFactory.DBMS;
+import com.poesys.db.dao.IDaoManager;
 import com.poesys.db.dao.delete.DeleteSqlTestNatural;
 import com.poesys.db.dao.delete.IDeleteSql;
 import com.poesys.db.dao.insert.IInsertSql;
 import com.poesys.db.dao.insert.InsertSqlTestNatural;
+import com.poesys.db.dao.query.IKeyListQuerySql;
 import com.poesys.db.dao.query.IKeyQuerySql;
+import com.poesys.db.dao.query.IParameterizedCountSql;
+import com.poesys.db.dao.query.IParameterizedQuerySql;
 import com.poesys.db.dao.query.IQuerySql;
 import com.poesys.db.dao.query.TestNaturalAllQuerySql;
 import com.poesys.db.dao.query.TestNaturalKeyQuerySql;
 import com.poesys.db.dao.update.IUpdateSql;
 import com.poesys.db.dao.update.UpdateSqlTestNatural;
+import com.poesys.db.dto.IDbDto;
 import com.poesys.db.dto.TestNatural;
+import com.poesys.db.pk.IPrimaryKey;
 import com.poesys.db.pk.NaturalPrimaryKey;
 
 
@@ -55,6 +70,17 @@ public class TestNaturalDelegate extends
     super("com.poesys.db.poesystest.mysql", DBMS.MYSQL, 100*1000);
   }
 
+  /**
+   * Create a TestNaturalDelegate object that accesses a subsystem through a
+   * specific DAO manager, such as an in-memory manager.
+   * 
+   * @param subsystem the JNDI subsystem for the transaction connections
+   * @param manager the DAO manager
+   */
+  public TestNaturalDelegate(String subsystem, IDaoManager manager) {
+    super(subsystem, manager, 100*1000);
+  }
+
   @Override
   protected IDeleteSql<TestNatural> getDeleteSql() {
     return new DeleteSqlTestNatural();
@@ -70,16 +96,196 @@ public class TestNaturalDelegate extends
     return new TestNaturalKeyQuerySql();
   }
 
+  @Override
+  protected IKeyListQuerySql<TestNatural> getQueryByKeyListSql() {
+    return new IKeyListQuerySql<TestNatural>() {
+      private final IQuerySql<TestNatural> all = new TestNaturalAllQuerySql();
+      private List<IPrimaryKey> keys = new ArrayList<IPrimaryKey>();
+
+      @Override
+      public String getSql() {
+        StringBuilder builder =
+          new StringBuilder("SELECT key1, key2, col1 FROM TestNatural WHERE ");
+        String separator = "";
+        for (IPrimaryKey key : keys) {
+          builder.append(separator);
+          builder.append("(");
+          builder.append(key.getSqlWhereExpression(""));
+          builder.append(")");
+          separator = " OR ";
+        }
+        return builder.toString();
+      }
+
+      @Override
+      public List<IPrimaryKey> getKeys() {
+        return keys;
+      }
+
+      @Override
+      public void setKeys(List<IPrimaryKey> keys) {
+        this.keys = keys;
+      }
+
+      @Override
+      public void bindKeys(PreparedStatement stmt) {
+        int index = 1;
+        for (IPrimaryKey key : keys) {
+          index = key.setParams(stmt, index);
+        }
+      }
+
+      @Override
+      public IPrimaryKey getPrimaryKey(ResultSet rs) {
+        return all.getPrimaryKey(rs);
+      }
+
+      @Override
+      public String getKeyValues() {
+        StringBuilder builder = new StringBuilder();
+        for (IPrimaryKey key : keys) {
+          if (builder.length() > 0) {
+            builder.append(", ");
+          }
+          builder.append(key.getStringKey());
+        }
+        return builder.toString();
+      }
+
+      @Override
+      public TestNatural getData(ResultSet rs) {
+        return all.getData(rs);
+      }
+    };
+  }
+
   @Override
   protected IQuerySql<TestNatural> getQueryListSql() {
     return new TestNaturalAllQuerySql();
   }
 
+  @Override
+  protected IParameterizedCountSql<IDbDto> getCountSql() {
+    return new IParameterizedCountSql<IDbDto>() {
+      @Override
+      public String getSql() {
+        return "SELECT COUNT(*) FROM TestNatural";
+      }
+
+      @Override
+      public void bindParameters(PreparedStatement stmt, IDbDto parameters) {
+        // No parameters
+      }
+    };
+  }
+
+  @Override
+  protected IKeysetQuerySql<TestNatural> getPageSql() {
+    return new IKeysetQuerySql<TestNatural>() {
+      private final IQuerySql<TestNatural> all = new TestNaturalAllQuerySql();
+
+      @Override
+      public String getSql() {
+        return "SELECT key1, key2, col1 FROM TestNatural";
+      }
+
+      @Override
+      public List<String> getKeyColumns() {
+        return Arrays.asList("key1", "key2");
+      }
+
+      @Override
+      public TestNatural getData(ResultSet rs) {
+        return all.getData(rs);
+      }
+
+      @Override
+      public IPrimaryKey getPrimaryKey(ResultSet rs) {
+        return all.getPrimaryKey(rs);
+      }
+    };
+  }
+
+  /**
+   * Get a parameterized query for the objects with the key1 value of a
+   * TestNatural parameter DTO, in key2 order.
+   * 
+   * @return the query
+   */
+  public IParameterizedQuerySql<TestNatural, TestNatural> getQueryByKey1Sql() {
+    return new IParameterizedQuerySql<TestNatural, TestNatural>() {
+      private final IQuerySql<TestNatural> all = new TestNaturalAllQuerySql();
+
+      @Override
+      public String getSql() {
+        return "SELECT key1, key2, col1 FROM TestNatural WHERE key1 = ? "
+               + "ORDER BY key2";
+      }
+
+      @Override
+      public void bindParameters(PreparedStatement stmt,
+                                 TestNatural parameters) {
+        try {
+          stmt.setString(1, parameters.getKey1());
+        } catch (SQLException e) {
+          throw new DelegateException(e.getMessage(), e);
+        }
+      }
+
+      @Override
+      public String getParameterValues(TestNatural parameters) {
+        return "key1: " + parameters.getKey1();
+      }
+
+      @Override
+      public TestNatural getData(ResultSet rs) {
+        return all.getData(rs);
+      }
+
+      @Override
+      public IPrimaryKey getPrimaryKey(ResultSet rs) {
+        return all.getPrimaryKey(rs);
+      }
+    };
+  }
+
   @Override
   protected IUpdateSql<TestNatural> getUpdateSql() {
     return new UpdateSqlTestNatural();
   }
 
+  @Override
+  protected IUpdateSql<TestNatural> getUpdateSql(Set<String> properties) {
+    if (!properties.equals(Collections.singleton("col1"))) {
+      return null;
+    }
+    // Update just the changed column.
+    return new IUpdateSql<TestNatural>() {
+      @Override
+      public String getSql(IPrimaryKey key) {
+        return "UPDATE TestNatural SET col1 = ? WHERE "
+               + key.getSqlWhereExpression("");
+      }
+
+      @Override
+      public int setParams(PreparedStatement stmt,
+                           int index,
+                           TestNatural dto) {
+        try {
+          stmt.setBigDecimal(index, dto.getCol1());
+        } catch (SQLException e) {
+          throw new DelegateException(e.getMessage(), e);
+        }
+        return dto.getPrimaryKey().setParams(stmt, index + 1);
+      }
+
+      @Override
+      public String getParamString(TestNatural dto) {
+        return "col1: " + dto.getCol1();
+      }
+    };
+  }
+
   @Override
   protected BsTestNatural wrapData(TestNatural dto) {
     return new BsTestNatural(dto);
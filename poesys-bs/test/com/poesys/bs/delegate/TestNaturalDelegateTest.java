@@ -19,11 +19,20 @@ package com.poesys.bs.delegate;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import com.poesys.bs.dto.IDto;
 import com.poesys.db.pk.IPrimaryKey;
@@ -31,10 +40,16 @@ import org.apache.log4j.Logger;
 import org.junit.Test;
 
 import com.poesys.bs.dto.BsTestNatural;
+import com.poesys.db.ConstraintViolationException;
 import com.poesys.db.col.AbstractColumnValue;
 import com.poesys.db.col.StringColumnValue;
 import com.poesys.db.dao.ConnectionTest;
+import com.poesys.db.dao.IDaoFactory;
+import com.poesys.db.dao.query.IKeyListQuerySql;
+import com.poesys.db.dto.IDbDto;
+import com.poesys.db.dto.TestNatural;
 import com.poesys.db.pk.NaturalPrimaryKey;
+import com.poesys.db.pk.PrimaryKeyFactory;
 
 import static junit.framework.TestCase.assertTrue;
 
@@ -147,6 +162,203 @@ public class TestNaturalDelegateTest extends ConnectionTest {
     assertTrue("No object retrieved", object != null);
   }
 
+  /**
+   * Test method for
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#getObjects(java.util.Collection)}.
+   */
+  @Test
+  public void testGetObjects() {
+    DELEGATE.truncateTable("TestNatural");
+
+    List<BsTestNatural> list = new ArrayList<>(3);
+    list.add(new BsTestNatural("a", "b", N2));
+    list.add(new BsTestNatural("b", "c", N2));
+    list.add(new BsTestNatural("c", "d", N2));
+    DELEGATE.process(list);
+
+    // KEY4 matches no object; KEY1 is requested twice.
+    List<NaturalPrimaryKey> keys = new ArrayList<>(5);
+    keys.add(KEY3);
+    keys.add(KEY4);
+    keys.add(KEY1);
+    keys.add(KEY2);
+    keys.add(KEY1);
+    List<BsTestNatural> objects = DELEGATE.getObjects(keys);
+    assertTrue("Wrong number of objects", objects.size() == 4);
+    assertTrue("Wrong first object",
+               objects.get(0).getPrimaryKey().equals(KEY3));
+    assertTrue("Wrong second object",
+               objects.get(1).getPrimaryKey().equals(KEY1));
+    assertTrue("Wrong third object",
+               objects.get(2).getPrimaryKey().equals(KEY2));
+    assertTrue("Wrong fourth object",
+               objects.get(3).getPrimaryKey().equals(KEY1));
+  }
+
+  /**
+   * Test method for
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#getObjects(java.util.Collection)}
+   * with more keys than fit in one key-list query, including duplicate and
+   * missing keys.
+   */
+  @Test
+  public void testGetObjectsKeyList() {
+    final AtomicInteger queries = new AtomicInteger();
+    TestNaturalDelegate delegate = new TestNaturalDelegate() {
+      @Override
+      protected IKeyListQuerySql<TestNatural> getQueryByKeyListSql() {
+        queries.incrementAndGet();
+        return super.getQueryByKeyListSql();
+      }
+    };
+    delegate.truncateTable("TestNatural");
+    delegate.setNearCache(null);
+    delegate.setKeyListSize(2);
+
+    List<BsTestNatural> list = new ArrayList<>(5);
+    for (int i = 1; i <= 5; i++) {
+      list.add(new BsTestNatural("k", Integer.toString(i), N2));
+    }
+    delegate.process(list);
+    delegate.manager.clearCache(TestNatural.class.getName());
+
+    // Five distinct keys, one of them missing, in three key-list queries
+    List<NaturalPrimaryKey> keys = new ArrayList<>(7);
+    keys.add(createKey("k", "1"));
+    keys.add(createKey("k", "2"));
+    keys.add(createKey("k", "3"));
+    keys.add(createKey("k", "2"));
+    keys.add(createKey("k", "9"));
+    keys.add(createKey("k", "5"));
+    keys.add(createKey("k", "1"));
+    List<BsTestNatural> objects = delegate.getObjects(keys);
+    assertTrue("Wrong number of key-list queries: " + queries.get(),
+               queries.get() == 3);
+    assertTrue("Wrong number of objects: " + objects.size(),
+               objects.size() == 6);
+    String[] expected = { "1", "2", "3", "2", "5", "1" };
+    for (int i = 0; i < expected.length; i++) {
+      assertTrue("Wrong object " + i,
+                 objects.get(i).getPrimaryKey().equals(createKey("k",
+                                                                 expected[i])));
+    }
+    assertTrue("Duplicate key not the same object",
+               objects.get(1).toDto() == objects.get(3).toDto());
+  }
+
+  /**
+   * Test the near cache: a second query hits the cache, and processing the
+   * object evicts it.
+   */
+  @Test
+  public void testNearCache() {
+    TestNaturalDelegate delegate = new TestNaturalDelegate();
+    NearCache<BsTestNatural> cache = new NearCache<>(100, 60000L);
+    delegate.setNearCache(cache);
+    delegate.truncateTable("TestNatural");
+    delegate.insert(new BsTestNatural("a", "b", N2));
+
+    BsTestNatural first = delegate.getObject(KEY1);
+    BsTestNatural second = delegate.getObject(KEY1);
+    assertTrue("No object retrieved", first != null);
+    assertTrue("Near cache did not return the cached object", first == second);
+    assertTrue("Wrong hit count", cache.getHits() == 1);
+
+    second.setCol1(N2.add(N2));
+    delegate.process(second);
+    assertTrue("Processed object not evicted", cache.size() == 0);
+    BsTestNatural third = delegate.getObject(KEY1);
+    assertTrue("Wrong updated value",
+               third.getCol1().compareTo(N2.add(N2)) == 0);
+  }
+
+  /**
+   * Test the shared near cache: two delegates for the class share the cache,
+   * so a write through one delegate evicts the object that the other cached.
+   */
+  @Test
+  public void testSharedNearCache() {
+    TestNaturalDelegate writer = new TestNaturalDelegate();
+    TestNaturalDelegate reader = new TestNaturalDelegate();
+    assertTrue("Delegates do not share the near cache",
+               writer.getNearCache() == reader.getNearCache());
+    NearCache<BsTestNatural> cache = writer.getNearCache();
+    if (cache == null) {
+      // The subsystem has no near cache size, so share one explicitly.
+      cache = new NearCache<>(100, 60000L);
+      writer.setNearCache(cache);
+      reader.setNearCache(cache);
+    }
+    writer.truncateTable("TestNatural");
+    writer.insert(new BsTestNatural("a", "b", N2));
+
+    BsTestNatural cached = reader.getObject(KEY1);
+    assertTrue("No object retrieved", cached != null);
+    assertTrue("Writer did not hit the reader's cached object",
+               writer.getObject(KEY1) == cached);
+
+    BsTestNatural changed = writer.getObject(KEY1);
+    changed.setCol1(N2.add(N2));
+    writer.process(changed);
+    BsTestNatural read = reader.getObject(KEY1);
+    assertTrue("Write did not evict the reader's cached object",
+               read != changed);
+    assertTrue("Wrong updated value",
+               read.getCol1().compareTo(N2.add(N2)) == 0);
+  }
+
+  /**
+   * Test method for
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#getObjectsWithParameters(com.poesys.db.dao.query.IParameterizedQuerySql, IDbDto, int)}
+   * and
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#streamObjectsWithParameters(com.poesys.db.dao.query.IParameterizedQuerySql, IDbDto, int)}.
+   */
+  @Test
+  public void testGetObjectsWithParameters() {
+    TestNaturalDelegate delegate = new TestNaturalDelegate();
+    delegate.truncateTable("TestNatural");
+    List<BsTestNatural> list = new ArrayList<>(4);
+    list.add(new BsTestNatural("q", "2", N2));
+    list.add(new BsTestNatural("q", "1", N1));
+    list.add(new BsTestNatural("r", "1", N1));
+    list.add(new BsTestNatural("q", "3", N3));
+    delegate.process(list);
+
+    TestNatural parameters = new TestNatural("q", "0", N1);
+    List<BsTestNatural> objects =
+      delegate.getObjectsWithParameters(delegate.getQueryByKey1Sql(),
+                                        parameters,
+                                        10);
+    assertTrue("Wrong number of objects: " + objects.size(),
+               objects.size() == 3);
+    for (int i = 0; i < objects.size(); i++) {
+      BsTestNatural object = objects.get(i);
+      assertTrue("Wrong object " + object.getPrimaryKey().getStringKey(),
+                 object.getPrimaryKey().equals(createKey("q",
+                                                         Integer.toString(i + 1))));
+      if (delegate.manager.isCached(TestNatural.class.getName())) {
+        assertTrue("Queried object not cached",
+                   delegate.manager.getCachedObject(object.getPrimaryKey(),
+                                                    "com.poesys.db.poesystest.mysql") != null);
+      }
+    }
+    assertTrue("Wrong value", objects.get(2).getCol1().compareTo(N3) == 0);
+
+    try (Stream<BsTestNatural> stream =
+      delegate.streamObjectsWithParameters(delegate.getQueryByKey1Sql(),
+                                           parameters,
+                                           2)) {
+      List<IPrimaryKey> keys = new ArrayList<>();
+      stream.forEach(object -> keys.add(object.getPrimaryKey()));
+      assertTrue("Wrong number of streamed objects: " + keys.size(),
+                 keys.size() == 3);
+      for (int i = 0; i < keys.size(); i++) {
+        assertTrue("Wrong streamed object",
+                   keys.get(i).equals(objects.get(i).getPrimaryKey()));
+      }
+    }
+  }
+
   /**
    * Test method for
    * {@link com.poesys.bs.delegate.TestNaturalDelegate#getAllObjects(int)}.
@@ -187,6 +399,665 @@ public class TestNaturalDelegateTest extends ConnectionTest {
     assertTrue("List of objects has no objects", list.size() > 0);
   }
 
+  /**
+   * Test method for
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#streamAllObjects(int)}.
+   */
+  @Test
+  public void testStreamAllObjects() {
+    DELEGATE.truncateTable("TestNatural");
+
+    List<BsTestNatural> list = new ArrayList<>(3);
+    list.add(new BsTestNatural("s", "1", N2));
+    list.add(new BsTestNatural("s", "2", N2));
+    list.add(new BsTestNatural("s", "3", N2));
+    DELEGATE.process(list);
+
+    try (Stream<BsTestNatural> objects = DELEGATE.streamAllObjects(2)) {
+      assertTrue("Wrong number of streamed objects", objects.count() == 3);
+    }
+
+    // Stop early and close the stream.
+    try (Stream<BsTestNatural> objects = DELEGATE.streamAllObjects(1)) {
+      assertTrue("No streamed object", objects.findFirst().isPresent());
+    }
+  }
+
+  /**
+   * Test method for {@link com.poesys.bs.delegate.TestNaturalDelegate#count()}.
+   */
+  @Test
+  public void testCount() {
+    DELEGATE.truncateTable("TestNatural");
+    assertTrue("Empty table count not 0", DELEGATE.count().intValue() == 0);
+
+    List<BsTestNatural> list = new ArrayList<>(2);
+    list.add(new BsTestNatural("c", "1", N2));
+    list.add(new BsTestNatural("c", "2", N2));
+    DELEGATE.process(list);
+
+    // Processing must invalidate any cached count.
+    assertTrue("Wrong count", DELEGATE.count().intValue() == 2);
+  }
+
+  /**
+   * Test method for
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#getPage(IPrimaryKey, int)}.
+   */
+  @Test
+  public void testGetPage() {
+    DELEGATE.truncateTable("TestNatural");
+
+    List<BsTestNatural> list = new ArrayList<>(5);
+    for (int i = 1; i <= 5; i++) {
+      list.add(new BsTestNatural("p", Integer.toString(i), N2));
+    }
+    DELEGATE.process(list);
+
+    Page<BsTestNatural> page = DELEGATE.getPage(null, 2);
+    int pages = 1;
+    int objects = page.getObjects().size();
+    assertTrue("First page not full", objects == 2);
+    while (page.hasNext()) {
+      page = DELEGATE.getPage(page.getNextKey(), 2);
+      pages++;
+      objects += page.getObjects().size();
+    }
+    assertTrue("Wrong number of pages: " + pages, pages == 3);
+    assertTrue("Wrong number of paged objects: " + objects, objects == 5);
+  }
+
+  /**
+   * Test write-behind processing with
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#flushWrites()}.
+   */
+  @Test
+  public void testWriteBehind() {
+    TestNaturalDelegate delegate = new TestNaturalDelegate();
+    delegate.truncateTable("TestNatural");
+    WriteBehindQueue<BsTestNatural> queue =
+      new WriteBehindQueue<>("test",
+                             delegate::writeQueued,
+                             100,
+                             10,
+                             10L,
+                             WriteBehindQueue.Backpressure.BLOCK,
+                             1000L);
+    delegate.setWriteBehindQueue(queue);
+    try {
+      BsTestNatural object = new BsTestNatural("w", "1", N2);
+      delegate.process(object);
+      // Process the same object again to coalesce it.
+      delegate.process(object);
+      delegate.flushWrites();
+      assertTrue("Queue not empty after flush", queue.getDepth() == 0);
+      assertTrue("Object not written", queue.getWritten() >= 1);
+      assertTrue("Object not in database",
+                 delegate.getDatabaseObject(createKey("w", "1")) != null);
+
+      // A failed batch, here a duplicate insert, leaves nothing in the cache.
+      long failed = queue.getFailed();
+      delegate.process(new BsTestNatural("w", "1", N3));
+      delegate.flushWrites();
+      assertTrue("Duplicate insert not failed", queue.getFailed() > failed);
+      assertTrue("Failed object still cached",
+                 delegate.manager.getCachedObject(createKey("w", "1"),
+                                                  "com.poesys.db.poesystest.mysql") == null);
+    } finally {
+      delegate.setWriteBehindQueue(null);
+      queue.close();
+    }
+  }
+
+  /**
+   * Test write-behind processing of an insert and a delete of the same key
+   * within one linger time: the delete must follow the insert.
+   */
+  @Test
+  public void testWriteBehindSameKey() {
+    TestNaturalDelegate delegate = new TestNaturalDelegate();
+    delegate.truncateTable("TestNatural");
+    WriteBehindQueue<BsTestNatural> queue =
+      new WriteBehindQueue<>("test-same-key",
+                             delegate::writeQueued,
+                             100,
+                             10,
+                             1000L,
+                             WriteBehindQueue.Backpressure.BLOCK,
+                             1000L);
+    delegate.setWriteBehindQueue(queue);
+    try {
+      BsTestNatural inserted = new BsTestNatural("w", "2", N2);
+      BsTestNatural deleted = new BsTestNatural("w", "2", N2);
+      deleted.toDto().setExisting();
+      deleted.delete();
+      delegate.process(inserted);
+      delegate.process(deleted);
+      assertTrue("Objects not queued separately", queue.getDepth() == 2);
+      delegate.flushWrites();
+      assertTrue("Same-key objects written in one batch",
+                 queue.getFlushes() == 2);
+      assertTrue("Deleted object still in database",
+                 delegate.getDatabaseObject(createKey("w", "2")) == null);
+    } finally {
+      delegate.setWriteBehindQueue(null);
+      queue.close();
+    }
+  }
+
+  /**
+   * Test a parallel write with
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#process(List)}.
+   */
+  @Test
+  public void testParallelProcess() {
+    TestNaturalDelegate delegate = new TestNaturalDelegate();
+    delegate.truncateTable("TestNatural");
+    delegate.setParallelism(4, 2);
+    List<BsTestNatural> list = new ArrayList<BsTestNatural>();
+    for (int i = 0; i < 10; i++) {
+      list.add(new BsTestNatural("p", Integer.toString(i), N2));
+    }
+    delegate.process(list);
+    for (int i = 0; i < 10; i++) {
+      BsTestNatural object =
+        delegate.getDatabaseObject(createKey("p", Integer.toString(i)));
+      assertTrue("Object " + i + " not in database", object != null);
+    }
+  }
+
+  /**
+   * Test an update of the changed columns only with
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#process(IDto)}.
+   */
+  @Test
+  public void testChangedColumnUpdate() {
+    TestNaturalDelegate delegate = new TestNaturalDelegate();
+    delegate.truncateTable("TestNatural");
+    BsTestNatural object = new BsTestNatural("c", "1", N2);
+    delegate.insert(object);
+    assertTrue("Changed properties not cleared after insert",
+               object.getChangedProperties().isEmpty());
+
+    BigDecimal value = new BigDecimal("6.543");
+    object.setCol1(value);
+    assertTrue("col1 not tracked",
+               object.getChangedProperties().contains("col1"));
+    delegate.process(object);
+    assertTrue("Changed properties not cleared after update",
+               object.getChangedProperties().isEmpty());
+    delegate.flush(object.toDto());
+    BsTestNatural updated = delegate.getDatabaseObject(createKey("c", "1"));
+    assertTrue("col1 not updated", updated.getCol1().compareTo(value) == 0);
+
+    // Two wrappers of the cached DTO share its changed properties, so the
+    // wrapper that did not set col1 still writes it.
+    delegate.setNearCache(null);
+    BsTestNatural setter = delegate.getObject(createKey("c", "1"));
+    BsTestNatural writer = delegate.getObject(createKey("c", "1"));
+    assertTrue("Wrappers do not share the cached DTO",
+               setter.toDto() == writer.toDto());
+    BigDecimal other = new BigDecimal("7.654");
+    setter.setCol1(other);
+    assertTrue("col1 not tracked for the other wrapper",
+               writer.getChangedProperties().contains("col1"));
+    delegate.process(writer);
+    assertTrue("Changed properties not cleared for the setting wrapper",
+               setter.getChangedProperties().isEmpty());
+    delegate.flush(writer.toDto());
+    updated = delegate.getDatabaseObject(createKey("c", "1"));
+    assertTrue("col1 not updated through the other wrapper",
+               updated.getCol1().compareTo(other) == 0);
+  }
+
+  /**
+   * Test skipping an update that changes nothing with
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#process(IDto)}.
+   */
+  @Test
+  public void testSkipUnchangedUpdate() {
+    TestNaturalDelegate delegate = new TestNaturalDelegate();
+    delegate.truncateTable("TestNatural");
+    delegate.setSnapshotUpdates(true);
+    delegate.insert(new BsTestNatural("s", "1", N2));
+    BsTestNatural object = delegate.getDatabaseObject(createKey("s", "1"));
+    long skipped = delegate.getSkippedUpdates();
+
+    // Set the same value, which changes the status but not the data.
+    object.setCol1(object.getCol1());
+    delegate.process(object);
+    assertTrue("Unchanged update not skipped",
+               delegate.getSkippedUpdates() == skipped + 1);
+
+    // Set a different value, which the delegate must write.
+    BigDecimal value = new BigDecimal("7.654");
+    object.setCol1(value);
+    delegate.process(object);
+    assertTrue("Changed update skipped",
+               delegate.getSkippedUpdates() == skipped + 1);
+    delegate.flush(object.toDto());
+    BsTestNatural updated = delegate.getDatabaseObject(createKey("s", "1"));
+    assertTrue("col1 not updated", updated.getCol1().compareTo(value) == 0);
+
+    // A second query wraps the cached DTO while another caller has changed
+    // it; the new wrapper must not snapshot the unwritten value.
+    delegate.setNearCache(null);
+    BsTestNatural changed = delegate.getObject(createKey("s", "1"));
+    BigDecimal other = new BigDecimal("8.765");
+    changed.setCol1(other);
+    BsTestNatural shared = delegate.getObject(createKey("s", "1"));
+    delegate.process(shared);
+    assertTrue("Shared changed update skipped",
+               delegate.getSkippedUpdates() == skipped + 1);
+    delegate.flush(shared.toDto());
+    updated = delegate.getDatabaseObject(createKey("s", "1"));
+    assertTrue("Shared changed value not written",
+               updated.getCol1().compareTo(other) == 0);
+  }
+
+  /**
+   * Test the numeric key index of the near cache with
+   * {@link com.poesys.bs.delegate.NearCache#get(long)}.
+   */
+  @Test
+  public void testNearCacheById() {
+    NearCache<IDto<TestNatural>> cache =
+      new NearCache<IDto<TestNatural>>(100, 0L);
+    for (long id = 1; id <= 200; id++) {
+      cache.put(new IdDto(id), 0L, cache.getStamp());
+    }
+    // The cache holds the last 100 objects.
+    assertTrue("Evicted object found by id", cache.get(50L) == null);
+    assertTrue("Object not found by id", cache.get(150L) != null);
+    assertTrue("Wrong object found by id",
+               NearCache.getId(cache.get(150L).getPrimaryKey()) == 150L);
+    cache.remove(cache.get(150L).getPrimaryKey());
+    assertTrue("Removed object found by id", cache.get(150L) == null);
+    // A removal rejects a stale put for its key only.
+    long stamp = cache.getStamp();
+    cache.remove(new IdDto(300L).getPrimaryKey());
+    cache.put(new IdDto(300L), 0L, stamp);
+    cache.put(new IdDto(301L), 0L, stamp);
+    assertTrue("Stale object cached", cache.get(300L) == null);
+    assertTrue("Object of another key rejected", cache.get(301L) != null);
+    cache.clear();
+    assertTrue("Cleared object found by id", cache.get(200L) == null);
+  }
+
+  /**
+   * Test the operation counts and latency percentiles of
+   * {@link com.poesys.bs.delegate.DelegateMetrics}.
+   */
+  @Test
+  public void testMetrics() {
+    DelegateMetrics metrics = new DelegateMetrics("test");
+    for (long micros = 1; micros <= 1000; micros++) {
+      metrics.record(DelegateMetrics.Operation.GET_OBJECT,
+                     micros * 1000L,
+                     1,
+                     micros % 100 == 0);
+    }
+    metrics.recordCache(true);
+    metrics.recordCache(false);
+    String op = DelegateMetrics.Operation.GET_OBJECT.name();
+    assertTrue("Wrong count", metrics.getCount(op) == 1000L);
+    assertTrue("Wrong errors", metrics.getErrors(op) == 10L);
+    assertTrue("Wrong rows", metrics.getRows(op) == 1000L);
+    assertTrue("Wrong hit ratio", metrics.getCacheHitRatio() == 0.5);
+    // The histogram buckets are within about 6% of the latency.
+    double p99 = metrics.getPercentileMillis(op, 99.0);
+    assertTrue("Wrong 99th percentile " + p99, p99 > 0.93 && p99 < 1.06);
+    double p50 = metrics.getPercentileMillis(op, 50.0);
+    assertTrue("Wrong median " + p50, p50 > 0.47 && p50 < 0.53);
+    metrics.reset();
+    assertTrue("Count not reset", metrics.getCount(op) == 0L);
+  }
+
+  /**
+   * Test method for
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#process(java.util.List, long)}
+   * with a transaction that waits for a row lock past its deadline.
+   */
+  @Test
+  public void testProcessTimeout() {
+    BsTestNatural test = new BsTestNatural("t", "o", N1);
+    List<BsTestNatural> list = new ArrayList<>(1);
+    list.add(test);
+    Connection conn = null;
+    try {
+      conn = getConnection();
+      Statement stmt = conn.createStatement();
+      stmt.execute("DELETE FROM TestNatural WHERE key1 = 't'");
+      conn.commit();
+      DELEGATE.process(list);
+
+      // Lock the row so the update blocks until the deadline.
+      stmt.executeQuery("SELECT col1 FROM TestNatural WHERE key1 = 't' FOR UPDATE");
+      test.setCol1(N2);
+      long start = System.currentTimeMillis();
+      try {
+        DELEGATE.process(list, 500L);
+        assertTrue("Blocked update did not time out", false);
+      } catch (DelegateTimeoutException e) {
+        // expected
+      }
+      long elapsed = System.currentTimeMillis() - start;
+      assertTrue("Timeout took " + elapsed + " ms", elapsed < 5000L);
+      conn.rollback();
+    } catch (SQLException | IOException e) {
+      logger.error("Error", e);
+    } finally {
+      if (conn != null) {
+        try {
+          conn.close();
+        } catch (SQLException e) {
+          // ignore
+        }
+      }
+    }
+
+    // The cancelled transaction rolled back.
+    BsTestNatural queried =
+      DELEGATE.getDatabaseObject((NaturalPrimaryKey)test.getPrimaryKey());
+    assertTrue("Cancelled update committed",
+               queried != null && N1.compareTo(queried.getCol1()) == 0);
+  }
+
+  /**
+   * Test method for
+   * {@link com.poesys.bs.delegate.TransactionContext#execute(String, long, Callable)}
+   * with inline process() calls that commit and roll back together.
+   */
+  @Test
+  public void testTransactionContext() {
+    String subsystem = "com.poesys.db.poesystest.mysql";
+    BsTestNatural test1 = new BsTestNatural("u", "1", N1);
+    BsTestNatural test2 = new BsTestNatural("u", "2", N1);
+    List<BsTestNatural> list1 = new ArrayList<>(1);
+    list1.add(test1);
+    List<BsTestNatural> list2 = new ArrayList<>(1);
+    list2.add(test2);
+    DELEGATE.truncateTable("TestNatural");
+
+    String name =
+      TransactionContext.execute(subsystem, 10000L, () -> {
+        DELEGATE.process(list1);
+        DELEGATE.process(list2);
+        return Thread.currentThread().getName();
+      });
+    assertTrue("Unit of work ran on the caller",
+               !name.equals(Thread.currentThread().getName()));
+    assertTrue("First object not committed",
+               DELEGATE.getDatabaseObject((NaturalPrimaryKey)test1.getPrimaryKey()) != null);
+    assertTrue("Second object not committed",
+               DELEGATE.getDatabaseObject((NaturalPrimaryKey)test2.getPrimaryKey()) != null);
+
+    // A failure after the first write rolls back both writes.
+    test1.setCol1(N2);
+    test2.setCol1(N2);
+    try {
+      TransactionContext.execute(subsystem, 10000L, () -> {
+        DELEGATE.process(list1);
+        DELEGATE.process(list2);
+        throw new IllegalStateException("rollback");
+      });
+      assertTrue("Failed unit of work did not throw", false);
+    } catch (DelegateException e) {
+      // expected
+    }
+    BsTestNatural queried =
+      DELEGATE.getDatabaseObject((NaturalPrimaryKey)test1.getPrimaryKey());
+    assertTrue("Rolled back update committed",
+               N1.compareTo(queried.getCol1()) == 0);
+
+    // An update inside the unit of work bypasses the coalescer and rolls back.
+    TestNaturalDelegate delegate = new TestNaturalDelegate();
+    UpdateCoalescer<BsTestNatural> coalescer =
+      new UpdateCoalescer<>(delegate::write,
+                            null,
+                            1000L,
+                            100);
+    delegate.setUpdateCoalescer(coalescer);
+    BsTestNatural test3 =
+      delegate.getDatabaseObject((NaturalPrimaryKey)test1.getPrimaryKey());
+    test3.setCol1(N3);
+    try {
+      TransactionContext.execute(subsystem, 10000L, () -> {
+        delegate.update(test3);
+        throw new IllegalStateException("rollback");
+      });
+      assertTrue("Failed unit of work did not throw", false);
+    } catch (DelegateException e) {
+      // expected
+    } finally {
+      delegate.setUpdateCoalescer(null);
+    }
+    assertTrue("Update went through the coalescer", coalescer.getWrites() == 0);
+    queried = delegate.getDatabaseObject((NaturalPrimaryKey)test1.getPrimaryKey());
+    assertTrue("Rolled back coalescer update committed",
+               N1.compareTo(queried.getCol1()) == 0);
+  }
+
+  /**
+   * Test the parallel cache warm-up of {@link com.poesys.bs.delegate.DelegateWarmUp}
+   * with delegates over in-memory DAOs.
+   */
+  @Test
+  public void testWarmUp() throws InterruptedException {
+    MemoryDaoManager manager = new MemoryDaoManager();
+    IDaoFactory<TestNatural> factory =
+      manager.getFactory(TestNatural.class.getName(), "test", 0);
+    List<TestNatural> dtos = new ArrayList<TestNatural>();
+    for (int i = 0; i < 100; i++) {
+      dtos.add(new TestNatural("warm", Integer.toString(i), N1));
+    }
+    factory.getInsertCollection(null, false).insert(dtos);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      DelegateWarmUp warmUp = new DelegateWarmUp(2, executor);
+      for (int i = 0; i < 5; i++) {
+        warmUp.add(new TestNaturalDelegate("test", manager));
+      }
+      assertTrue("Ready before start", !warmUp.isReady());
+      assertTrue("Warm-up did not complete",
+                 warmUp.await(10, TimeUnit.SECONDS));
+      assertTrue("Not ready after warm-up", warmUp.isReady());
+      assertTrue("Warm-up failed: " + warmUp.getFailures(),
+                 warmUp.getFailures().isEmpty());
+      assertTrue("Wrong number of objects " + warmUp.getObjectCount(),
+                 warmUp.getObjectCount() == 500);
+    } finally {
+      executor.shutdown();
+    }
+
+    // Warm-up through a throwaway delegate fills the shared near cache that a
+    // delegate created later serves from.
+    String subsystem = "test-warm";
+    String className = TestNatural.class.getName();
+    NearCache<BsTestNatural> cache = new NearCache<>(1000, 60000L);
+    NearCache.setInstance(subsystem, className, cache);
+    try {
+      new TestNaturalDelegate(subsystem, manager).warmUp();
+      TestNaturalDelegate delegate = new TestNaturalDelegate(subsystem, manager);
+      assertTrue("Delegate does not use the shared near cache",
+                 delegate.getNearCache() == cache);
+      long hits = cache.getHits();
+      assertTrue("No warmed object",
+                 delegate.getObject(createKey("warm", "5")) != null);
+      assertTrue("Warmed object not in the near cache",
+                 cache.getHits() == hits + 1);
+    } finally {
+      NearCache.setInstance(subsystem, className, null);
+    }
+  }
+
+  /**
+   * Test the DAOs of {@link com.poesys.bs.delegate.MemoryDaoFactory} without a
+   * database or a transaction.
+   */
+  @Test
+  public void testMemoryDao() {
+    MemoryDaoManager manager = new MemoryDaoManager();
+    IDaoFactory<TestNatural> factory =
+      manager.getFactory(TestNatural.class.getName(), "test", 0);
+    List<TestNatural> dtos = new ArrayList<TestNatural>();
+    for (int i = 0; i < 3; i++) {
+      dtos.add(new TestNatural("memory", Integer.toString(i), N1));
+    }
+    factory.getInsertCollection(null, false).insert(dtos);
+    for (TestNatural dto : dtos) {
+      assertTrue("Inserted object not existing",
+                 dto.getStatus() == IDbDto.Status.EXISTING);
+      assertTrue("Inserted object not found",
+                 factory.getQueryByKey(null, "test")
+                   .queryByKey(dto.getPrimaryKey()) == dto);
+    }
+    assertTrue("Wrong number of objects",
+               factory.getQueryList(null, "test", 10).query().size() == 3);
+    try {
+      factory.getInsert(null, false).insert(new TestNatural("memory", "0", N1));
+      assertTrue("Duplicate key inserted", false);
+    } catch (ConstraintViolationException e) {
+      // expected
+    }
+    dtos.get(1).delete();
+    factory.getDelete(null).delete(dtos.get(1));
+    assertTrue("Deleted object found",
+               factory.getQueryByKey(null, "test")
+                 .queryByKey(dtos.get(1).getPrimaryKey()) == null);
+    try {
+      factory.<TestNatural> getDeleteWithParameters(null).delete(dtos.get(0));
+      assertTrue("Parameterized delete ran with no filter", false);
+    } catch (DelegateException e) {
+      // expected
+    }
+    // Each DAO call waits for the latency once.
+    manager.setLatency(5L, TimeUnit.MILLISECONDS);
+    long start = System.nanoTime();
+    factory.getQueryList(null, "test", 10).query();
+    assertTrue("No latency",
+               System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(5L));
+    manager.clear();
+    assertTrue("Objects not cleared",
+               factory.getQueryList(null, "test", 10).query().isEmpty());
+  }
+
+  /**
+   * Test a delegate over a {@link com.poesys.bs.delegate.MemoryDaoManager}:
+   * process() and getObject() round trips with no database. The memory
+   * subsystem must be a JNDI subsystem in the database properties file.
+   */
+  @Test
+  public void testMemoryDelegate() {
+    MemoryContextFactory.install();
+    MemoryDaoManager manager = new MemoryDaoManager();
+    TestNaturalDelegate delegate =
+      new TestNaturalDelegate(MemoryContextFactory.SUBSYSTEM, manager);
+    IDaoFactory<TestNatural> daos =
+      manager.getFactory(TestNatural.class.getName(),
+                         MemoryContextFactory.SUBSYSTEM,
+                         0);
+    MemoryDaoFactory<TestNatural> factory = (MemoryDaoFactory<TestNatural>)daos;
+    NaturalPrimaryKey key = createKey("round", "1");
+
+    delegate.process(new BsTestNatural("round", "1", N1));
+    assertTrue("Inserted object not in memory", factory.size() == 1);
+    BsTestNatural object = delegate.getObject(key);
+    assertTrue("Inserted object not found", object != null);
+    assertTrue("Wrong inserted value", object.getCol1().compareTo(N1) == 0);
+
+    object.setCol1(N2);
+    delegate.process(object);
+    assertTrue("Updated value not in memory",
+               factory.get(key).getCol1().compareTo(N2) == 0);
+    assertTrue("Wrong updated value",
+               delegate.getObject(key).getCol1().compareTo(N2) == 0);
+
+    object = delegate.getObject(key);
+    object.delete();
+    delegate.process(object);
+    assertTrue("Deleted object in memory", factory.size() == 0);
+    assertTrue("Deleted object found", delegate.getObject(key) == null);
+  }
+
+  /**
+   * A business DTO with an identity key and no data, for testing the near
+   * cache
+   */
+  private static class IdDto implements IDto<TestNatural> {
+    /** The identity key */
+    private final IPrimaryKey key;
+
+    /**
+     * Create an IdDto object.
+     * 
+     * @param id the identity key value
+     */
+    IdDto(long id) {
+      key =
+        PrimaryKeyFactory.createIdentityKey("id",
+                                            BigInteger.valueOf(id),
+                                            "IdDto");
+    }
+
+    @Override
+    public int compareTo(IDto<TestNatural> o) {
+      return key.compareTo(o.getPrimaryKey());
+    }
+
+    @Override
+    public IPrimaryKey getPrimaryKey() {
+      return key;
+    }
+
+    @Override
+    public void delete() {
+    }
+
+    @Override
+    public TestNatural toDto() {
+      return null;
+    }
+  }
+
+  /**
+   * Test coalesced updates with
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#updateAsync(IDto)}.
+   */
+  @Test
+  public void testCoalescedUpdate() {
+    TestNaturalDelegate delegate = new TestNaturalDelegate();
+    delegate.truncateTable("TestNatural");
+    BsTestNatural object = new BsTestNatural("u", "1", N2);
+    delegate.insert(object);
+
+    UpdateCoalescer<BsTestNatural> coalescer =
+      new UpdateCoalescer<>(delegate::write,
+                            null,
+                            1000L,
+                            100);
+    delegate.setUpdateCoalescer(coalescer);
+    try {
+      BigDecimal last = new BigDecimal("9.876");
+      object.setCol1(new BigDecimal("5.678"));
+      CompletableFuture<Void> first = delegate.updateAsync(object);
+      object.setCol1(last);
+      CompletableFuture<Void> second = delegate.updateAsync(object);
+      coalescer.flush();
+      CompletableFuture.allOf(first, second).join();
+
+      assertTrue("Updates not merged", coalescer.getMerged() == 1);
+      assertTrue("Updates not in one write", coalescer.getWrites() == 1);
+      delegate.flush(object.toDto());
+      BsTestNatural updated = delegate.getDatabaseObject(createKey("u", "1"));
+      assertTrue("Last update not written",
+                 updated.getCol1().compareTo(last) == 0);
+    } finally {
+      delegate.setUpdateCoalescer(null);
+    }
+  }
+
   /**
    * Test method for
    * {@link com.poesys.bs.delegate.TestNaturalDelegate#update(IDto)}.
@@ -346,4 +1217,97 @@ public class TestNaturalDelegateTest extends ConnectionTest {
     // Test the value with compareTo because of precision issues.
     assertTrue("Object found in database, not deleted", test1a == null);
   }
+
+  /**
+   * Stress test for concurrent calls to
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#process(java.util.List)}
+   * on a single shared delegate instance. Each thread inserts its own batches
+   * of objects; every object from every batch must end up in the database.
+   *
+   * @throws Exception when a thread fails or the test times out
+   */
+  @Test
+  public void testConcurrentProcess() throws Exception {
+    final int threads = 16;
+    final int batches = 10;
+    final int batchSize = 5;
+
+    Connection conn = null;
+    try {
+      conn = getConnection();
+      Statement stmt = conn.createStatement();
+      stmt.execute("TRUNCATE TABLE TestNatural");
+      conn.commit();
+    } catch (SQLException | IOException e) {
+      logger.error("Error", e);
+    }
+    finally {
+      if (conn != null) {
+        try {
+          logger.debug("Closing connection " + conn.hashCode());
+          conn.close();
+        } catch (SQLException e) {
+          // ignore
+        }
+      }
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<Void>> futures = new ArrayList<>(threads);
+    for (int t = 0; t < threads; t++) {
+      final String key1 = "t" + t;
+      futures.add(pool.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for (int b = 0; b < batches; b++) {
+            List<BsTestNatural> list = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+              list.add(new BsTestNatural(key1, b + "-" + i, N1));
+            }
+            DELEGATE.process(list);
+          }
+          return null;
+        }
+      }));
+    }
+    pool.shutdown();
+    assertTrue("Concurrent processing timed out",
+               pool.awaitTermination(5, TimeUnit.MINUTES));
+    for (Future<Void> future : futures) {
+      // Rethrows any exception from the processing thread.
+      future.get();
+    }
+
+    // Check that every object from every thread was inserted.
+    for (int t = 0; t < threads; t++) {
+      for (int b = 0; b < batches; b++) {
+        for (int i = 0; i < batchSize; i++) {
+          NaturalPrimaryKey key = createKey("t" + t, b + "-" + i);
+          assertTrue("Missing object " + key.getStringKey(),
+                     DELEGATE.getDatabaseObject(key) != null);
+        }
+      }
+    }
+  }
+
+  /**
+   * Test method for
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#insertAsync(IDto)} and
+   * {@link com.poesys.bs.delegate.TestNaturalDelegate#getObjectAsync(IPrimaryKey)}.
+   */
+  @Test
+  public void testAsync() {
+    DELEGATE.truncateTableAsync("TestNatural").join();
+
+    // Fan out three inserts and wait for all of them.
+    CompletableFuture.allOf(DELEGATE.insertAsync(new BsTestNatural("a", "b", N1)),
+                            DELEGATE.insertAsync(new BsTestNatural("b", "c", N2)),
+                            DELEGATE.insertAsync(new BsTestNatural("c", "d", N3))).join();
+
+    // Compose two queries.
+    CompletableFuture<BsTestNatural> first = DELEGATE.getObjectAsync(KEY1);
+    CompletableFuture<BsTestNatural> second = DELEGATE.getObjectAsync(KEY3);
+    boolean found = first.thenCombine(second, (o1, o2) -> o1 != null && o2 != null).join();
+    assertTrue("Couldn't query inserted objects asynchronously", found);
+  }
 }
@@ -100,6 +100,12 @@ public class BsTestNatural extends AbstractDto<TestNatural> {
    */
   public void setCol1(BigDecimal col1) {
     dto.setCol1(col1);
+    setChanged("col1");
+  }
+
+  @Override
+  protected Object[] getColumnValues() {
+    return new Object[] { dto.getCol1() };
   }
 
   @Override